@@ -6,14 +6,14 @@ Chang Ding - 5275821
 import android.app.AlertDialog;
 import android.content.DialogInterface;
 import android.content.Intent;
-import android.media.AudioManager;
-import android.media.SoundPool;
+import android.database.sqlite.SQLiteDatabase;
 import android.os.Bundle;
-import android.os.Environment;
 import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
 import android.view.View;
 import android.widget.Button;
 import android.widget.ProgressBar;
+import android.widget.SeekBar;
 import android.widget.TextView;
 import android.widget.Toast;
 
@@ -23,17 +23,23 @@ public class AdjustAudioLevel extends AppCompatActivity {
     private String record_filename; //for intent
     private String record_note; //for intent
     private String filePath;
-    private SoundPool soundpool;
+    private SoundFile mSoundFile;   //decoded audio, from the cache
+    private StretchPlayer player;   //plays at any speed, keeping the pitch
     boolean isPlaying = false;
     boolean isLoaded = false;
     private Button _level_play;
-    private int soundID;
-    private int playingID;
     private float soundRate = 1;
     private Button level_up;
     private Button level_down;
     private TextView level_audioname;
     private ProgressBar speedBar;
+    private SeekBar gainBar;
+    private TextView level_gain_text;
+    private Button level_save;
+    private float soundGain = 0;    //in dB
+    //the speed and gain are saved as edits of the recording, see EditDecisionList
+    private MyDatabaseHelper dbHelper;
+    private EditDecisionList mEdits;
 
 
     @Override
@@ -56,9 +62,31 @@ public class AdjustAudioLevel extends AppCompatActivity {
         //set file path
         level_audioname = (TextView) findViewById(R.id.level_filename);
         level_audioname.setText(record_filename);
-        filePath = Environment.getExternalStorageDirectory().getAbsolutePath() + "/VoiceMemos/" + record_filename + ".3gp";
+        filePath = RecordingFiles.getPath(record_filename);
+        //start from the saved speed and gain
+        dbHelper = VoiceMemosApplication.getDatabaseHelper(this);
+        mEdits = EditStore.read(dbHelper.getReadableDatabase(), record_id);
+        soundRate = mEdits.getSpeed();
+        soundGain = mEdits.getGainDb();
+        speedBar.setProgress(Math.round((soundRate - TimeStretcher.MIN_RATE) * 10));
         //play button
         iniPlayButtons();
+        //gain bar and save button
+        iniGain();
+        //decode the file, or take it from the cache
+        loadAudio();
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (player != null) {
+            player.stop();
+        }
+        if (mSoundFile != null) {
+            SoundFileCache.get().release(mSoundFile);
+            mSoundFile = null;
+        }
     }
 
     //on back key pressed
@@ -70,45 +98,124 @@ public class AdjustAudioLevel extends AppCompatActivity {
                     @Override
                     public void onClick(DialogInterface dialog, int which) {
                         if (isPlaying) {
-                            soundpool.stop(playingID);
-                            soundpool.release();
+                            player.stop();
                         }
                         finish();
                     }
                 }).create().show();
     }
 
-    //initialize play, up, down buttons
-    private void iniPlayButtons() {
-        soundpool = new SoundPool(10, AudioManager.STREAM_MUSIC, 0);
-        soundpool.setOnLoadCompleteListener(new SoundPool.OnLoadCompleteListener() {
+    //load the decoded audio in the background, play is enabled once it is ready
+    private void loadAudio() {
+        _level_play.setEnabled(false);
+        VoiceMemosApplication.runInBackground(new Runnable() {
             @Override
-            public void onLoadComplete(SoundPool soundPool, int sampleId, int status) {
-                isLoaded = true;
+            public void run() {
+                try {
+                    final SoundFile soundFile = SoundFileCache.get().acquire(filePath);
+                    runOnUiThread(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (isFinishing()) {
+                                SoundFileCache.get().release(soundFile);
+                                return;
+                            }
+                            onAudioLoaded(soundFile);
+                        }
+                    });
+                } catch (Exception e) {
+                    Log.d("test1", "exception when reading file");
+                }
             }
         });
-        soundID = soundpool.load(filePath, 1);
+    }
+
+    private void onAudioLoaded(SoundFile soundFile) {
+        mSoundFile = soundFile;
+        player = new StretchPlayer(mSoundFile);
+        player.setGain(soundGain);
+        player.setOnCompletionListener(new StretchPlayer.OnCompletionListener() {
+            @Override
+            public void onCompletion(StretchPlayer p) {
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        stopPlaying();
+                    }
+                });
+            }
+        });
+        isLoaded = true;
+        _level_play.setEnabled(true);
+    }
+
+    private void stopPlaying() {
+        player.stop();
+        isPlaying = false;
+        level_up.setEnabled(false);
+        level_down.setEnabled(false);
+        //the speed stays as it is, so that it can be saved
+        _level_play.setText("PLAY");
+    }
+
+    //initialize gain bar, -12dB to +12dB, and the save button
+    private void iniGain() {
+        gainBar = (SeekBar) findViewById(R.id.level_gain);
+        level_gain_text = (TextView) findViewById(R.id.level_gain_text);
+        level_save = (Button) findViewById(R.id.level_save);
+        gainBar.setProgress(Math.round(soundGain) + 12);
+        level_gain_text.setText(String.format("Volume: %+d dB", Math.round(soundGain)));
+        gainBar.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
+            @Override
+            public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
+                soundGain = progress - 12;
+                level_gain_text.setText(String.format("Volume: %+d dB", progress - 12));
+                if (player != null) {
+                    player.setGain(soundGain);
+                }
+            }
+
+            @Override
+            public void onStartTrackingTouch(SeekBar seekBar) {
+            }
+
+            @Override
+            public void onStopTrackingTouch(SeekBar seekBar) {
+            }
+        });
+        //save the speed and gain as edits: playback applies them, the file is left as it is
+        level_save.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                mEdits.setSpeed(Math.round(soundRate * 10) / 10f);
+                mEdits.setGainDb(soundGain);
+                SQLiteDatabase db = dbHelper.getWritableDatabase();
+                EditStore.write(db, record_id, mEdits);
+                Toast.makeText(AdjustAudioLevel.this, "Saved", Toast.LENGTH_SHORT).show();
+            }
+        });
+    }
+
+    //initialize play, up, down buttons
+    private void iniPlayButtons() {
         level_up.setEnabled(false);
         level_down.setEnabled(false);
         //play Button
         _level_play.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
+                if (!isLoaded) {
+                    return;
+                }
                 if (!isPlaying) {
-                    playingID = soundpool.play(soundID, 1, 1, 1, 0, soundRate);
+                    player.setRate(soundRate);
+                    player.start();
                     isPlaying = true;
                     level_up.setEnabled(true);
                     level_down.setEnabled(true);
                     _level_play.setText("STOP");
-                    speedBar.setProgress(5);
                 } else {
-                    soundpool.stop(playingID);
-                    isPlaying = false;
-                    level_up.setEnabled(false);
-                    level_down.setEnabled(false);
-                    soundRate = 1;
-                    _level_play.setText("PLAY");
-
+                    stopPlaying();
                 }
             }
         });
@@ -116,31 +223,27 @@ public class AdjustAudioLevel extends AppCompatActivity {
         level_up.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                if (soundRate <= 1.9) {
+                if (soundRate <= TimeStretcher.MAX_RATE - 0.1) {
                     soundRate += 0.1;
                     speedBar.setProgress(speedBar.getProgress() + 1);
                 } else {
                     Toast.makeText(AdjustAudioLevel.this, "Reach the Maximum", Toast.LENGTH_SHORT).show();
                 }
-                soundpool.pause(playingID);
-                soundpool.setRate( playingID, soundRate);
-                soundpool.resume(playingID);
+                //applies from the next block, no need to pause
+                player.setRate(soundRate);
             }
         });
         //speed down button
         level_down.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                if (soundRate >= 0.6) {
+                if (soundRate >= TimeStretcher.MIN_RATE + 0.1) {
                     soundRate -= 0.1;
                     speedBar.setProgress(speedBar.getProgress() - 1);
                 } else {
                     Toast.makeText(AdjustAudioLevel.this, "Reach the Minimum", Toast.LENGTH_SHORT).show();
                 }
-
-                soundpool.pause(playingID);
-                soundpool.setRate( playingID, soundRate);
-                soundpool.resume(playingID);
+                player.setRate(soundRate);
             }
         });
     }
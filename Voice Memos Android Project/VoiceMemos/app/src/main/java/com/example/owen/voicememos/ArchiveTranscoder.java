@@ -0,0 +1,243 @@
+package com.example.owen.voicememos;
+/*
+Owen Brown - 4838488
+Chang Ding - 5275821
+ */
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.os.Process;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * converts the AMR recordings RecordVoice makes to AAC, in the background
+ * scanLibrary() walks the RECORDINGS table and re-encodes every recording that is not AAC yet
+ * (decoded by SoundFile, written by WriteFile and MP4Header) on a few worker threads, one codec
+ * session each. each file is swapped in once RecordingFiles.isComplete() checked it, and
+ * checkpointed (done or failed) in the TRANSCODE table with its new file time, so a scan that is
+ * stopped half way carries on where it was. failed is only for a new file that did not pass the
+ * check, an error on the way (no codec free, out of memory) is left for the next scan.
+ * everything waits while pause() is on, e.g. while RecordVoice is recording
+ */
+public class ArchiveTranscoder {
+    private static final String TAG = "ArchiveTranscoder";
+    //every worker holds a decoded recording and an encoder, like BatchExporter
+    private static final int MAX_WORKERS = 4;
+    private static final String AAC = "audio/mp4a-latm";
+
+    //checkpoint states
+    public static final int STATE_DONE = 1;
+    public static final int STATE_FAILED = 2;
+
+    private static final Object sPauseLock = new Object();
+    private static boolean sPaused = false;
+
+    //convert all the recordings not converted yet, in the background. does nothing if a scan
+    //is already running
+    public static void scanLibrary(Context context) {
+        final Context appContext = context.getApplicationContext();
+        VoiceMemosApplication.runOnce(TAG, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    scan(appContext);
+                } catch (InterruptedException e) {
+                    Log.w(TAG, "scan interrupted");
+                }
+            }
+        });
+    }
+
+    //hold the workers before their next file or frame, until resume()
+    public static void pause() {
+        synchronized (sPauseLock) {
+            sPaused = true;
+        }
+    }
+
+    public static void resume() {
+        synchronized (sPauseLock) {
+            sPaused = false;
+            sPauseLock.notifyAll();
+        }
+    }
+
+    //also used by StorageTierService
+    static void waitWhilePaused() throws InterruptedException {
+        synchronized (sPauseLock) {
+            while (sPaused) {
+                sPauseLock.wait();
+            }
+        }
+    }
+
+    //forget the checkpoint of a deleted recording
+    public static void delete(SQLiteDatabase db, int recordingId) {
+        db.delete("TRANSCODE", "recording_id = " + recordingId, null);
+    }
+
+    private static void scan(Context context) throws InterruptedException {
+        final MyDatabaseHelper dbHelper = VoiceMemosApplication.getDatabaseHelper(context);
+        ExecutorService workers = null;
+        try {
+            //the recordings and the file time they were checkpointed for, if they were
+            List<Integer> ids = new ArrayList<Integer>();
+            List<String> filenames = new ArrayList<String>();
+            List<Long> checked = new ArrayList<Long>();
+            Cursor cursor = dbHelper.getReadableDatabase().rawQuery(
+                    "SELECT RECORDINGS.id, RECORDINGS.filename, TRANSCODE.file_mtime "
+                            + "FROM RECORDINGS LEFT JOIN TRANSCODE "
+                            + "ON TRANSCODE.recording_id = RECORDINGS.id", null);
+            try {
+                while (cursor.moveToNext()) {
+                    ids.add(cursor.getInt(0));
+                    filenames.add(cursor.getString(1));
+                    checked.add(cursor.isNull(2) ? -1 : cursor.getLong(2));
+                }
+            } finally {
+                cursor.close();
+            }
+            int numWorkers = Math.max(1,
+                    Math.min(MAX_WORKERS, Runtime.getRuntime().availableProcessors()));
+            workers = Executors.newFixedThreadPool(numWorkers, new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable r) {
+                    return new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            r.run();
+                        }
+                    }, TAG);
+                }
+            });
+            for (int i = 0; i < ids.size(); i++) {
+                final File file = RecordingFiles.getFile(filenames.get(i));
+                if (!file.exists() || file.lastModified() == checked.get(i)) {
+                    continue;
+                }
+                final int recordingId = ids.get(i);
+                workers.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            waitWhilePaused();
+                            transcode(dbHelper.getWritableDatabase(), recordingId, file);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                });
+            }
+            workers.shutdown();
+            //the recordings are done one by one, there is no deadline
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } finally {
+            if (workers != null) {
+                workers.shutdownNow();
+            }
+        }
+    }
+
+    //convert one recording if it is not AAC, and checkpoint it
+    private static void transcode(SQLiteDatabase db, int recordingId, File file)
+            throws InterruptedException {
+        long mtime = file.lastModified();
+        File temp = new File(file.getPath() + ".aac.tmp");
+        try {
+            if (isAac(file)) {
+                checkpoint(db, recordingId, mtime, STATE_DONE);
+                return;
+            }
+            //not through SoundFileCache, a scan must not evict what the screens use
+            SoundFile soundFile = SoundFile.create(file.getPath());
+            waitWhilePaused();
+            //the whole recording, at its own rate, with nothing moved or faded
+            ExportSettings settings = new ExportSettings()
+                    .setZeroCrossingSearch(0)
+                    .setCutFade(0);
+            EditList all = new EditList().keep(0, soundFile.getNumSamples());
+            final InterruptedException[] interrupted = new InterruptedException[1];
+            soundFile.WriteFile(temp, all, settings, new SoundFile.ProgressListener() {
+                @Override
+                public boolean reportProgress(double fractionComplete) {
+                    try {
+                        waitWhilePaused();
+                        return true;
+                    } catch (InterruptedException e) {
+                        interrupted[0] = e;
+                        return false;
+                    }
+                }
+            });
+            if (interrupted[0] != null) {
+                temp.delete();
+                throw interrupted[0];
+            }
+            //this is the only copy of the recording, the new file must hold all of it
+            long durationUs = (long) soundFile.getNumSamples() * 1000000 / soundFile.getSampleRate();
+            if (!RecordingFiles.isComplete(temp, durationUs,
+                    settings.getSampleRate(soundFile.getSampleRate()), 0)) {
+                temp.delete();
+                checkpoint(db, recordingId, mtime, STATE_FAILED);
+                return;
+            }
+            //the file may have been edited meanwhile, then it is for the next scan
+            if (file.lastModified() != mtime || !temp.renameTo(file)) {
+                temp.delete();
+                return;
+            }
+            SoundFileCache.get().invalidate(file.getPath());
+            //the AAC file starts with the priming of the encoder, AMR has none
+            int rate = soundFile.getSampleRate();
+            EditStore.remapKept(db, recordingId, rate, rate, SoundFile.ENCODER_DELAY);
+            checkpoint(db, recordingId, file.lastModified(), STATE_DONE);
+        } catch (InterruptedException e) {
+            throw e;
+        } catch (Exception e) {
+            //not checkpointed, the next scan tries again
+            Log.w(TAG, "could not convert " + file, e);
+            temp.delete();
+        } catch (OutOfMemoryError e) {
+            //a long recording, while the screens hold others. the next scan tries again
+            Log.w(TAG, "no memory to convert " + file);
+            temp.delete();
+        }
+    }
+
+    private static boolean isAac(File file) throws IOException {
+        MediaExtractor extractor = new MediaExtractor();
+        try {
+            extractor.setDataSource(file.getPath());
+            for (int i = 0; i < extractor.getTrackCount(); i++) {
+                String mime = extractor.getTrackFormat(i).getString(MediaFormat.KEY_MIME);
+                if (mime.startsWith("audio/")) {
+                    return mime.equals(AAC);
+                }
+            }
+            throw new IOException("No audio track found in " + file);
+        } finally {
+            extractor.release();
+        }
+    }
+
+    private static void checkpoint(SQLiteDatabase db, int recordingId, long mtime, int state) {
+        ContentValues values = new ContentValues();
+        values.put("recording_id", recordingId);
+        values.put("file_mtime", mtime);
+        values.put("state", state);
+        db.replace("TRANSCODE", null, values);
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.owen.voicememos;
+/*
+Owen Brown - 4838488
+Chang Ding - 5275821
+ */
+
+/**
+ * one stage of the effects WriteFile applies between the decoded samples and the encoder
+ * blocks are interleaved floats, full scale is 1.0, processed in place. a processor allocates
+ * what it needs when it is created, never per block
+ */
+public interface AudioProcessor {
+    //process numFrames frames. position is the index of the first one from the start of the
+    //render, frames at or past the end of the render are padding
+    void process(float[] samples, int numFrames, long position);
+
+    //processors keep state (filters, envelopes), so each render creates its own
+    interface Factory {
+        AudioProcessor create(int sampleRate, int channels, long numFrames);
+    }
+}
@@ -0,0 +1,740 @@
+package com.example.owen.voicememos;
+/*
+Owen Brown - 4838488
+Chang Ding - 5275821
+ */
+import android.content.Context;
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioTrack;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.HashMap;
+
+/**
+ * plays a recording through a streaming AudioTrack, in place of MediaPlayer
+ * openAsync() reads the seek index and sets up the decoder in the background, like
+ * MediaPlayer.prepareAsync(), and calls the OnOpenListener on the main thread when it is done.
+ * a StreamDecoder decodes ahead into a ring buffer, and an output thread moves the samples from
+ * the ring to the track. the output thread only writes what fits in the track buffer, so it never
+ * blocks in write() and always sees pause and seek requests right away. seeks work while paused,
+ * and the position comes from the playback head, so it is exact to the sample.
+ * a next recording can be queued with prepareNext(): it is opened and starts decoding right
+ * away, and when it has the same format as the current one its samples go into the track right
+ * after the last ones of the current recording, with no gap.
+ * with skip silence on, the silent spans of the SilenceMap of the recording are never written to
+ * the track. every jump in the source (seek, skipped span, next recording) is kept as a mark, so
+ * the position stays exact. with normalize on, the samples are scaled by the normalization gain
+ * of the recording on their way to the track, nothing is re-encoded.
+ * the edits of a recording (EditDecisionList) are applied the same way: the parts cut are
+ * skipped, the gain is applied with the normalization gain, and a speed other than 1 goes
+ * through a TimeStretcher. a stretched frame stands for speed source frames, so each mark has
+ * its rate, and the position is exact to the stretcher segment (20ms)
+ */
+public class AudioTrackPlayer {
+    private static final String TAG = "AudioTrackPlayer";
+    private static final int BLOCK_FRAMES = 1024;
+    private static final long IDLE_WAIT_MS = 5;
+    //if the head does not move for this long while draining, the track is done
+    private static final long DRAIN_TIMEOUT_MS = 500;
+    private static final int MAX_MARKS = 32;
+
+    private final Context mContext;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Object mLock = new Object();
+    private StreamDecoder mSource;
+    private AudioTrack mTrack;
+    private int mTrackFrames;       //size of the track buffer, in frames
+    private Thread mThread;
+    private OnCompletionListener mOnCompletionListener;
+    private OnItemChangeListener mOnItemChangeListener;
+    private OnOpenListener mOnOpenListener;
+
+    //state shared with the output thread, guarded by mLock
+    private boolean mPlaying = false;
+    private boolean mReleased = false;
+    private boolean mCompleted = false;
+    private long mSeekFrame = -1;   //seek asked for, not done yet
+    private long mHeadBase = 0;     //playback head when mWritten was 0
+    private long mWritten = 0;      //frames written to the track since mHeadBase
+    //the frame written at mMarkWritten[i] (counted like mWritten) is the source frame
+    //mMarkSource[i], and the frames after it follow on until the next mark. oldest first
+    private final long[] mMarkWritten = new long[MAX_MARKS];
+    private final long[] mMarkSource = new long[MAX_MARKS];
+    private int mMarks = 0;
+    private boolean mSkipSilence = false;
+    private final HashMap<String, SilenceMap> mSilenceMaps = new HashMap<String, SilenceMap>();
+    private boolean mNormalize = false;
+    private final HashMap<String, Float> mGains = new HashMap<String, Float>();   //linear
+    private final HashMap<String, EditDecisionList> mEdits =
+            new HashMap<String, EditDecisionList>();
+    //marks also have the speed the frames after them were played at
+    private final float[] mMarkRate = new float[MAX_MARKS];
+    //time-stretch of the recordings with a speed, for the format of the current one
+    private TimeStretcher mStretcher;
+    private short[] mStretchInput;
+    private long mStretchBase;      //source frame of the stretcher input frame 0
+    private long mStretchFrames;    //frames put in the stretcher since it was reset
+    private long mStretchSource;    //source frame of the first frame of the last stretched block
+    private int mSampleRate;        //of the recording being heard
+    private long mDurationFrames;
+    private int mOpenCount = 0;     //open() calls, so that a late prepareNext() can tell
+    private int mOpenRequests = 0;  //openAsync() and release() calls, so a late open can tell
+
+    //the queued recording, and the one still being heard after a gapless switch to the next
+    private StreamDecoder mNext;
+    private String mNextPath;
+    private StreamDecoder mPrevious;
+    private long mSwitchAt = -1;    //value of mWritten where mSource starts, while mPrevious plays
+
+    //called on the main thread once the end of the recording has been played
+    public interface OnCompletionListener {
+        void onCompletion(AudioTrackPlayer player);
+    }
+
+    //called on the main thread when the queued recording starts being heard
+    public interface OnItemChangeListener {
+        void onItemChange(AudioTrackPlayer player, String path);
+    }
+
+    //called on the main thread once openAsync() is done, opened is false if the file could not
+    //be read
+    public interface OnOpenListener {
+        void onOpen(AudioTrackPlayer player, String path, boolean opened);
+    }
+
+    public AudioTrackPlayer(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    public void setOnCompletionListener(OnCompletionListener listener) {
+        mOnCompletionListener = listener;
+    }
+
+    public void setOnItemChangeListener(OnItemChangeListener listener) {
+        mOnItemChangeListener = listener;
+    }
+
+    public void setOnOpenListener(OnOpenListener listener) {
+        mOnOpenListener = listener;
+    }
+
+    //open a recording, paused at its beginning. the seek index (built the first time) and the
+    //decoder are made in the background, the recording playing until then is released once the
+    //new one is ready. call from the main thread, a later openAsync() or release() wins
+    public void openAsync(final String path) {
+        final int request;
+        synchronized (mLock) {
+            request = ++mOpenRequests;
+        }
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                StreamDecoder source;
+                try {
+                    source = new StreamDecoder(SeekIndex.get(mContext, path), path);
+                } catch (IOException e) {
+                    Log.w(TAG, "could not open " + path, e);
+                    source = null;
+                }
+                final StreamDecoder opened = source;
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        synchronized (mLock) {
+                            if (request != mOpenRequests) {
+                                //not wanted anymore
+                                if (opened != null) {
+                                    opened.release();
+                                }
+                                return;
+                            }
+                        }
+                        if (opened != null) {
+                            open(opened);
+                        }
+                        if (mOnOpenListener != null) {
+                            mOnOpenListener.onOpen(AudioTrackPlayer.this, path, opened != null);
+                        }
+                    }
+                });
+            }
+        }, TAG).start();
+    }
+
+    //make source the recording played, paused at its beginning
+    private void open(StreamDecoder source) {
+        close();
+        synchronized (mLock) {
+            mOpenCount++;
+            setSourceLocked(source);
+            mPlaying = false;
+            mReleased = false;
+            mCompleted = false;
+            mSeekFrame = -1;
+        }
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                output();
+            }
+        }, TAG);
+        mThread.start();
+    }
+
+    //open the recording to play after the current one, in the background
+    //null clears the queued recording
+    public void prepareNext(final String path) {
+        final int openCount;
+        synchronized (mLock) {
+            if (mNext != null) {
+                mNext.release();
+                mNext = null;
+            }
+            mNextPath = path;
+            openCount = mOpenCount;
+        }
+        if (path == null) {
+            return;
+        }
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                StreamDecoder next;
+                try {
+                    next = new StreamDecoder(SeekIndex.get(mContext, path), path);
+                } catch (IOException e) {
+                    Log.w(TAG, "could not open " + path, e);
+                    return;
+                }
+                synchronized (mLock) {
+                    if (!mReleased && openCount == mOpenCount && path.equals(mNextPath)
+                            && mNext == null) {
+                        mNext = next;
+                        mLock.notifyAll();
+                        return;
+                    }
+                }
+                //not wanted anymore
+                next.release();
+            }
+        }, TAG).start();
+    }
+
+    //skip the silent spans of the recordings that have a silence map
+    public void setSkipSilence(boolean skipSilence) {
+        synchronized (mLock) {
+            mSkipSilence = skipSilence;
+        }
+    }
+
+    //the map can be set before the recording is opened, e.g. for the next one in the queue
+    public void setSilenceMap(String path, SilenceMap map) {
+        synchronized (mLock) {
+            mSilenceMaps.put(path, map);
+        }
+    }
+
+    //scale the recordings that have a normalization gain
+    public void setNormalize(boolean normalize) {
+        synchronized (mLock) {
+            mNormalize = normalize;
+        }
+    }
+
+    //can be set before the recording is opened, like the silence map
+    public void setNormalizationGain(String path, double gainDb) {
+        synchronized (mLock) {
+            mGains.put(path, (float) Math.pow(10.0, gainDb / 20.0));
+        }
+    }
+
+    //the cuts, gain and speed to play a recording with. like the silence map, they can be set
+    //before the recording is opened, and changing them applies from the next block
+    public void setEdits(String path, EditDecisionList edits) {
+        synchronized (mLock) {
+            mEdits.put(path, new EditDecisionList(edits));
+        }
+    }
+
+    //start or resume. after the end of the recording, play starts over
+    public void play() {
+        synchronized (mLock) {
+            if (mSource == null) {
+                return;
+            }
+            if (mCompleted && mSeekFrame < 0) {
+                mSeekFrame = 0;
+            }
+            mPlaying = true;
+            mLock.notifyAll();
+        }
+    }
+
+    public void pause() {
+        synchronized (mLock) {
+            mPlaying = false;
+            mLock.notifyAll();
+        }
+    }
+
+    public boolean isPlaying() {
+        synchronized (mLock) {
+            return mPlaying;
+        }
+    }
+
+    //works while paused too
+    public void seekTo(int msec) {
+        synchronized (mLock) {
+            if (mSource == null) {
+                return;
+            }
+            mSeekFrame = (long) msec * mSampleRate / 1000;
+            mCompleted = false;
+            mLock.notifyAll();
+        }
+    }
+
+    //in ms, exact to the frame the speaker is playing
+    public int getCurrentPosition() {
+        synchronized (mLock) {
+            if (mSource == null) {
+                return 0;
+            }
+            return (int) (getPositionFramesLocked() * 1000 / mSampleRate);
+        }
+    }
+
+    //of the recording being heard
+    public int getSampleRate() {
+        synchronized (mLock) {
+            return mSampleRate;
+        }
+    }
+
+    public int getDuration() {
+        synchronized (mLock) {
+            if (mSource == null) {
+                return 0;
+            }
+            return (int) (mDurationFrames * 1000 / mSampleRate);
+        }
+    }
+
+    //stop playing and free the track and the decoder. the player can be opened again
+    public void release() {
+        synchronized (mLock) {
+            //an openAsync() not done yet is dropped
+            mOpenRequests++;
+        }
+        close();
+    }
+
+    private void close() {
+        Thread thread;
+        synchronized (mLock) {
+            mReleased = true;
+            mPlaying = false;
+            mLock.notifyAll();
+            thread = mThread;
+            mThread = null;
+        }
+        if (thread != null) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (mLock) {
+            if (mTrack != null) {
+                mTrack.release();
+                mTrack = null;
+            }
+            if (mSource != null) {
+                mSource.release();
+                mSource = null;
+            }
+            if (mPrevious != null) {
+                mPrevious.release();
+                mPrevious = null;
+            }
+            if (mNext != null) {
+                mNext.release();
+                mNext = null;
+            }
+            mNextPath = null;
+            mSwitchAt = -1;
+        }
+    }
+
+    //make source the current recording, with a new track if the format changed
+    private void setSourceLocked(StreamDecoder source) {
+        if (mTrack == null || mSource == null || !isSameFormat(mSource, source)) {
+            if (mTrack != null) {
+                mTrack.release();
+            }
+            int channelConfig = (source.getChannels() == 1)
+                    ? AudioFormat.CHANNEL_OUT_MONO : AudioFormat.CHANNEL_OUT_STEREO;
+            int bufferSize = Math.max(
+                    AudioTrack.getMinBufferSize(source.getSampleRate(), channelConfig,
+                            AudioFormat.ENCODING_PCM_16BIT),
+                    BLOCK_FRAMES * source.getChannels() * 2 * 2);
+            mTrack = new AudioTrack(AudioManager.STREAM_MUSIC, source.getSampleRate(),
+                    channelConfig, AudioFormat.ENCODING_PCM_16BIT, bufferSize,
+                    AudioTrack.MODE_STREAM);
+            mTrackFrames = bufferSize / (2 * source.getChannels());
+        }
+        mSource = source;
+        mSampleRate = source.getSampleRate();
+        mDurationFrames = source.getDurationFrames();
+        mHeadBase = getHeadLocked();
+        mWritten = 0;
+        resetMarksLocked(source.getPosition());
+        resetStretcherLocked();
+    }
+
+    private void resetMarksLocked(long sourceFrame) {
+        mMarkWritten[0] = 0;
+        mMarkSource[0] = sourceFrame;
+        mMarkRate[0] = getSpeedLocked();
+        mMarks = 1;
+    }
+
+    private void addMarkLocked(long written, long sourceFrame, float rate) {
+        if (mMarks == MAX_MARKS) {
+            removeMarksLocked(1);
+        }
+        mMarkWritten[mMarks] = written;
+        mMarkSource[mMarks] = sourceFrame;
+        mMarkRate[mMarks] = rate;
+        mMarks++;
+    }
+
+    private void removeMarksLocked(int count) {
+        System.arraycopy(mMarkWritten, count, mMarkWritten, 0, mMarks - count);
+        System.arraycopy(mMarkSource, count, mMarkSource, 0, mMarks - count);
+        System.arraycopy(mMarkRate, count, mMarkRate, 0, mMarks - count);
+        mMarks -= count;
+    }
+
+    //the source frame heard when played frames have been played
+    private long sourceFrameLocked(long played) {
+        int i = mMarks - 1;
+        while (i > 0 && mMarkWritten[i] > played) {
+            i--;
+        }
+        return mMarkSource[i] + (long) ((played - mMarkWritten[i]) * mMarkRate[i]);
+    }
+
+    //drop the marks the playback head is past
+    private void dropOldMarksLocked(long played) {
+        int i = 0;
+        while (i + 1 < mMarks && mMarkWritten[i + 1] <= played) {
+            i++;
+        }
+        if (i > 0) {
+            removeMarksLocked(i);
+        }
+    }
+
+    private static boolean isSameFormat(StreamDecoder a, StreamDecoder b) {
+        return a.getSampleRate() == b.getSampleRate() && a.getChannels() == b.getChannels();
+    }
+
+    //the previous recording has been heard to its end, the current one is now playing
+    private void finishSwitchLocked() {
+        mPrevious.release();
+        mPrevious = null;
+        //the marks of the previous recording are of no use anymore
+        int first = 0;
+        while (first < mMarks && mMarkWritten[first] < mSwitchAt) {
+            first++;
+        }
+        removeMarksLocked(first);
+        for (int i = 0; i < mMarks; i++) {
+            mMarkWritten[i] -= mSwitchAt;
+        }
+        if (mMarks == 0 || mMarkWritten[0] > 0) {
+            addMarkLocked(0, 0, getSpeedLocked());
+        }
+        mHeadBase += mSwitchAt;
+        mWritten -= mSwitchAt;
+        mSwitchAt = -1;
+        mDurationFrames = mSource.getDurationFrames();
+        notifyItemChange(mSource.getPath());
+    }
+
+    private long getPositionFramesLocked() {
+        if (mSeekFrame >= 0) {
+            return mSeekFrame;
+        }
+        long played = Math.min(getHeadLocked() - mHeadBase, mWritten);
+        if (mSwitchAt >= 0) {
+            //still hearing the end of the previous recording
+            played = Math.min(played, mSwitchAt - 1);
+        }
+        return sourceFrameLocked(Math.max(0, played));
+    }
+
+    //the playback head is an unsigned 32 bit counter
+    private long getHeadLocked() {
+        return mTrack.getPlaybackHeadPosition() & 0xffffffffL;
+    }
+
+    private void output() {
+        short[] block = new short[BLOCK_FRAMES * 2];
+        boolean trackPlaying = false;
+        boolean draining = false;
+        long lastHead = -1;
+        long lastHeadTime = 0;
+        try {
+            synchronized (mLock) {
+                while (!mReleased) {
+                    if (mSwitchAt >= 0 && (mSeekFrame >= 0
+                            || getHeadLocked() - mHeadBase >= mSwitchAt)) {
+                        finishSwitchLocked();
+                    }
+                    if (mSeekFrame >= 0) {
+                        //drop what the track still holds and restart from the new position
+                        mTrack.pause();
+                        mTrack.flush();
+                        trackPlaying = false;
+                        draining = false;
+                        mSource.seekTo(mSeekFrame);
+                        mHeadBase = getHeadLocked();
+                        mWritten = 0;
+                        resetMarksLocked(mSeekFrame);
+                        mSeekFrame = -1;
+                        resetStretcherLocked();
+                    }
+                    if (mPlaying != trackPlaying) {
+                        if (mPlaying) {
+                            mTrack.play();
+                        } else {
+                            mTrack.pause();
+                        }
+                        trackPlaying = mPlaying;
+                    }
+                    if (!mPlaying) {
+                        mLock.wait();
+                        continue;
+                    }
+
+                    long head = getHeadLocked();
+                    long queued = mWritten - (head - mHeadBase);
+                    int space = (int) Math.min(BLOCK_FRAMES, mTrackFrames - queued);
+                    dropOldMarksLocked(head - mHeadBase);
+                    if (!draining && space > 0) {
+                        long position = mSource.getPosition();
+                        EditDecisionList edits = mEdits.get(mSource.getPath());
+                        EditList kept = (edits != null) ? edits.getKept() : null;
+                        SilenceMap silenceMap = mSkipSilence
+                                ? mSilenceMaps.get(mSource.getPath()) : null;
+                        //the parts cut first, then the silence in what is left
+                        long skipTo = position;
+                        if (kept != null) {
+                            skipTo = Math.min(kept.skip(position), mSource.getDurationFrames());
+                        }
+                        if (silenceMap != null && skipTo == position) {
+                            skipTo = silenceMap.skip(position);
+                        }
+                        if (skipTo > position) {
+                            if (skipTo - position > mSampleRate) {
+                                //long pause or cut, don't decode it at all
+                                mSource.seekTo(skipTo);
+                                continue;
+                            }
+                            if (mSource.read(block,
+                                    (int) Math.min(BLOCK_FRAMES, skipTo - position)) > 0) {
+                                continue;
+                            }
+                        }
+                        if (kept != null) {
+                            space = (int) Math.min(space, kept.audibleFrames(position));
+                        }
+                        if (silenceMap != null) {
+                            space = (int) Math.min(space, silenceMap.audibleFrames(position));
+                        }
+                        float speed = getSpeedLocked();
+                        int frames;
+                        if (speed != 1 && space > 0) {
+                            frames = readStretchedLocked(block, space, position, speed);
+                            if (frames < 0) {
+                                continue;
+                            }
+                            position = mStretchSource;
+                        } else {
+                            frames = (space > 0) ? mSource.read(block, space) : 0;
+                        }
+                        if (frames > 0) {
+                            //stretched blocks are only marked when they drift from the rate
+                            long drift = Math.abs(position - nextSourceFrameLocked());
+                            if (mMarks == 0 || drift > ((speed != 1) ? mSampleRate / 20 : 0)
+                                    || mMarkRate[mMarks - 1] != speed) {
+                                addMarkLocked(mWritten, position, speed);
+                            }
+                            float gain = getGainLocked(edits);
+                            if (gain != 1) {
+                                PcmUtils.applyGain(block, frames * mSource.getChannels(), gain);
+                            }
+                            mTrack.write(block, 0, frames * mSource.getChannels());
+                            mWritten += frames;
+                            continue;
+                        }
+                        if (mSource.isFinished() && mNext != null && mSwitchAt < 0
+                                && isSameFormat(mSource, mNext)) {
+                            //gapless: the next recording goes into the track right behind
+                            mPrevious = mSource;
+                            mSource = mNext;
+                            mNext = null;
+                            mNextPath = null;
+                            mSwitchAt = mWritten;
+                            resetStretcherLocked();
+                            continue;
+                        }
+                        if (mSource.isFinished() && mSwitchAt < 0) {
+                            //the track may not start on a partly filled buffer, stop() plays it out
+                            mTrack.stop();
+                            draining = true;
+                            lastHead = -1;
+                        }
+                    }
+                    if (draining) {
+                        long now = System.currentTimeMillis();
+                        if (head != lastHead) {
+                            lastHead = head;
+                            lastHeadTime = now;
+                        }
+                        if (head - mHeadBase >= mWritten || now - lastHeadTime > DRAIN_TIMEOUT_MS) {
+                            mTrack.flush();
+                            trackPlaying = false;
+                            draining = false;
+                            if (mNext != null) {
+                                //a different format, go on with a new track
+                                mSource.release();
+                                StreamDecoder next = mNext;
+                                mNext = null;
+                                mNextPath = null;
+                                mSource = null;
+                                setSourceLocked(next);
+                                notifyItemChange(next.getPath());
+                                continue;
+                            }
+                            resetMarksLocked(sourceFrameLocked(mWritten));
+                            mHeadBase = getHeadLocked();
+                            mWritten = 0;
+                            mPlaying = false;
+                            mCompleted = true;
+                            notifyCompletion();
+                            continue;
+                        }
+                    }
+                    mLock.wait(IDLE_WAIT_MS);
+                }
+                mTrack.pause();
+                mTrack.flush();
+            }
+        } catch (InterruptedException e) {
+            //released
+        }
+    }
+
+    //stretch the current recording into block, at most space frames. returns the frames to
+    //write (mStretchSource is the source frame of the first), 0 if the recording has no more
+    //to give right now, or -1 if the stretcher was given more input and can be asked again
+    private int readStretchedLocked(short[] block, int space, long position, float speed) {
+        int channels = mSource.getChannels();
+        if (mStretcher == null || mStretchInput.length != BLOCK_FRAMES * channels) {
+            mStretcher = new TimeStretcher(mSampleRate, channels, BLOCK_FRAMES);
+            mStretchInput = new short[BLOCK_FRAMES * channels];
+            resetStretcherLocked();
+        }
+        mStretcher.setRate(speed);
+        long source = mStretchBase + mStretcher.getOutputPosition();
+        int frames = mStretcher.getOutput(block, space);
+        if (frames > 0) {
+            mStretchSource = source;
+            return frames;
+        }
+        int read = mSource.read(mStretchInput,
+                Math.min(space, Math.min(BLOCK_FRAMES, mStretcher.getInputSpace())));
+        if (read <= 0) {
+            if (mSource.isFinished() && !mStretcher.isFlushed()) {
+                //the last segments need the stretcher to know there is no more input
+                mStretcher.flush();
+                return -1;
+            }
+            return 0;
+        }
+        //a skipped part: the input goes on from the new position
+        if (position != mStretchBase + mStretchFrames) {
+            mStretchBase = position - mStretchFrames;
+        }
+        mStretcher.putInput(mStretchInput, read);
+        mStretchFrames += read;
+        return -1;
+    }
+
+    //drop what the stretcher holds, after a seek or a change of recording
+    private void resetStretcherLocked() {
+        if (mStretcher != null) {
+            mStretcher.reset();
+        }
+        mStretchBase = (mSource != null) ? mSource.getPosition() : 0;
+        mStretchFrames = 0;
+    }
+
+    private float getSpeedLocked() {
+        EditDecisionList edits = (mSource != null) ? mEdits.get(mSource.getPath()) : null;
+        return (edits != null) ? edits.getSpeed() : 1;
+    }
+
+    //the normalization gain times the gain of the edits, linear
+    private float getGainLocked(EditDecisionList edits) {
+        float gain = 1;
+        Float normalization = mNormalize ? mGains.get(mSource.getPath()) : null;
+        if (normalization != null) {
+            gain *= normalization;
+        }
+        if (edits != null && edits.getGainDb() != 0) {
+            gain *= (float) Math.pow(10.0, edits.getGainDb() / 20.0);
+        }
+        return gain;
+    }
+
+    //the source frame the next frame written follows on from, -1 if unknown
+    private long nextSourceFrameLocked() {
+        if (mMarks == 0) {
+            return -1;
+        }
+        return mMarkSource[mMarks - 1]
+                + (long) ((mWritten - mMarkWritten[mMarks - 1]) * mMarkRate[mMarks - 1]);
+    }
+
+    private void notifyItemChange(final String path) {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (mOnItemChangeListener != null) {
+                    mOnItemChangeListener.onItemChange(AudioTrackPlayer.this, path);
+                }
+            }
+        });
+    }
+
+    private void notifyCompletion() {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (mOnCompletionListener != null) {
+                    mOnCompletionListener.onCompletion(AudioTrackPlayer.this);
+                }
+            }
+        });
+    }
+}
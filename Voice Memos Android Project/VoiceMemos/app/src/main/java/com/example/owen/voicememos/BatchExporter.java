@@ -0,0 +1,194 @@
+package com.example.owen.voicememos;
+/*
+Owen Brown - 4838488
+Chang Ding - 5275821
+ */
+import android.util.Log;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * exports many ranges of many recordings in one job
+ * each source file is decoded once, then all of its ranges are encoded in parallel on a bounded
+ * pool of worker threads. exporting 50 clips of one long recording costs one decode, not 50.
+ * the pool is shared by all the exports, so two of them at once don't hold twice the encoders
+ */
+public class BatchExporter {
+    private static final String TAG = "BatchExporter";
+    //every worker holds an encoder, and devices only have a handful of them
+    private static final int MAX_WORKERS = 4;
+
+    private static ThreadPoolExecutor sWorkers;
+
+    private final ExportSettings mSettings;
+    private final Listener mListener;
+    private volatile boolean mCancelled = false;
+
+    //one range of one recording to export
+    public static class Job {
+        private final String _sourcePath;
+        private final float _startTime;     //in seconds
+        private final float _endTime;       //in seconds
+        private final File _output;
+
+        public Job(String sourcePath, float startTime, float endTime, File output) {
+            _sourcePath = sourcePath;
+            _startTime = startTime;
+            _endTime = endTime;
+            _output = output;
+        }
+
+        public String getSourcePath() {
+            return _sourcePath;
+        }
+
+        public float getStartTime() {
+            return _startTime;
+        }
+
+        public float getEndTime() {
+            return _endTime;
+        }
+
+        public File getOutput() {
+            return _output;
+        }
+    }
+
+    //called from the export threads, not from the UI thread
+    public interface Listener {
+        //fractionComplete goes from 0.0 to 1.0
+        void onJobProgress(Job job, double fractionComplete);
+
+        void onJobFinished(Job job, boolean success);
+
+        void onAllFinished();
+    }
+
+    public BatchExporter(ExportSettings settings, Listener listener) {
+        mSettings = settings;
+        mListener = listener;
+    }
+
+    private static synchronized ExecutorService getWorkers() {
+        if (sWorkers == null) {
+            int numWorkers = Math.max(1,
+                    Math.min(MAX_WORKERS, Runtime.getRuntime().availableProcessors()));
+            sWorkers = new ThreadPoolExecutor(numWorkers, numWorkers, 30, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>());
+            //no encode threads kept between exports
+            sWorkers.allowCoreThreadTimeOut(true);
+        }
+        return sWorkers;
+    }
+
+    //start exporting in the background, returns immediately
+    public void start(final List<Job> jobs) {
+        VoiceMemosApplication.runInBackground(new Runnable() {
+            @Override
+            public void run() {
+                exportAll(jobs);
+            }
+        });
+    }
+
+    //stop as soon as possible, the jobs not finished yet are reported as failed
+    public void cancel() {
+        mCancelled = true;
+    }
+
+    //run all the jobs, blocks until they are done
+    public void exportAll(List<Job> jobs) {
+        //group the jobs by source, keeping their order
+        Map<String, List<Job>> bySource = new LinkedHashMap<String, List<Job>>();
+        for (Job job : jobs) {
+            List<Job> sourceJobs = bySource.get(job.getSourcePath());
+            if (sourceJobs == null) {
+                sourceJobs = new ArrayList<Job>();
+                bySource.put(job.getSourcePath(), sourceJobs);
+            }
+            sourceJobs.add(job);
+        }
+
+        ExecutorService workers = getWorkers();
+        for (Map.Entry<String, List<Job>> entry : bySource.entrySet()) {
+            exportSource(workers, entry.getKey(), entry.getValue());
+        }
+        mListener.onAllFinished();
+    }
+
+    //decode one source (or take it from the cache) and fan its ranges out to the workers
+    //only one decoded source is in use at a time
+    private void exportSource(ExecutorService workers, String sourcePath, List<Job> jobs) {
+        SoundFile soundFile = null;
+        if (!mCancelled) {
+            try {
+                soundFile = SoundFileCache.get().acquire(sourcePath);
+            } catch (Exception e) {
+                Log.e(TAG, "could not decode " + sourcePath, e);
+            }
+        }
+        if (soundFile == null) {
+            for (Job job : jobs) {
+                mListener.onJobFinished(job, false);
+            }
+            return;
+        }
+        List<Future<?>> pending = new ArrayList<Future<?>>();
+        for (Job job : jobs) {
+            pending.add(workers.submit(newExportTask(soundFile, job)));
+        }
+        //wait for this source to be done before decoding the next one
+        for (Future<?> future : pending) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                mCancelled = true;
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                Log.e(TAG, "export task failed", e);
+            }
+        }
+        SoundFileCache.get().release(soundFile);
+    }
+
+    private Runnable newExportTask(final SoundFile soundFile, final Job job) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                if (mCancelled) {
+                    mListener.onJobFinished(job, false);
+                    return;
+                }
+                boolean success = false;
+                try {
+                    soundFile.WriteFile(job.getOutput(), job.getStartTime(), job.getEndTime(),
+                            mSettings, new SoundFile.ProgressListener() {
+                                @Override
+                                public boolean reportProgress(double fractionComplete) {
+                                    mListener.onJobProgress(job, fractionComplete);
+                                    return !mCancelled;
+                                }
+                            });
+                    success = !mCancelled;
+                    SoundFileCache.get().invalidate(job.getOutput().getAbsolutePath());
+                } catch (Exception e) {
+                    Log.e(TAG, "could not export " + job.getOutput(), e);
+                    //don't leave half a file behind
+                    job.getOutput().delete();
+                }
+                mListener.onJobFinished(job, success);
+            }
+        };
+    }
+}
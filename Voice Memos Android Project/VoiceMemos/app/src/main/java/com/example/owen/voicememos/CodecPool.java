@@ -0,0 +1,209 @@
+package com.example.owen.voicememos;
+/*
+Owen Brown - 4838488
+Chang Ding - 5275821
+ */
+import android.content.ComponentCallbacks2;
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+import android.util.Log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+
+/**
+ * a small pool of started MediaCodec decoders and encoders
+ * creating, configuring and starting a codec takes tens to hundreds of ms, so codecs are kept
+ * per format (mime, sample rate, channels...) once an operation is done with them, and reused
+ * after a flush(). idle codecs are released under memory pressure (see VoiceMemosApplication)
+ */
+public class CodecPool {
+    private static final String TAG = "CodecPool";
+    //codecs hold native and hardware resources, don't keep many of them
+    private static final int MAX_IDLE_CODECS = 4;
+
+    private static CodecPool sInstance;
+
+    //idle codecs, the least recently used first
+    private final LinkedList<PooledCodec> mIdle = new LinkedList<PooledCodec>();
+    //key of each codec handed out
+    private final IdentityHashMap<MediaCodec, String> mInUse =
+            new IdentityHashMap<MediaCodec, String>();
+
+    private static class PooledCodec {
+        final String key;
+        final MediaCodec codec;
+
+        PooledCodec(String key, MediaCodec codec) {
+            this.key = key;
+            this.codec = codec;
+        }
+    }
+
+    public static synchronized CodecPool get() {
+        if (sInstance == null) {
+            sInstance = new CodecPool();
+        }
+        return sInstance;
+    }
+
+    private CodecPool() {
+    }
+
+    //get a started decoder for the given track format
+    public MediaCodec acquireDecoder(MediaFormat format) throws IOException {
+        String key = getKey(format, false);
+        MediaCodec codec = takeIdle(key);
+        if (codec == null) {
+            codec = MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME));
+            codec.configure(format, null, null, 0);
+            codec.start();
+        }
+        markInUse(codec, key);
+        return codec;
+    }
+
+    //get a started encoder for the given output format
+    public MediaCodec acquireEncoder(MediaFormat format) throws IOException {
+        String key = getKey(format, true);
+        MediaCodec codec = takeIdle(key);
+        if (codec == null) {
+            codec = MediaCodec.createEncoderByType(format.getString(MediaFormat.KEY_MIME));
+            codec.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+            codec.start();
+        }
+        markInUse(codec, key);
+        return codec;
+    }
+
+    //give back a codec once the operation is done with it, even if it stopped half way
+    public void release(MediaCodec codec) {
+        String key;
+        synchronized (this) {
+            key = mInUse.remove(codec);
+        }
+        if (key == null) {
+            destroy(codec);
+            return;
+        }
+        try {
+            //flush() drops any pending buffer and makes the codec ready for a new stream
+            codec.flush();
+        } catch (IllegalStateException e) {
+            Log.w(TAG, "could not flush " + key + ", dropping it");
+            destroy(codec);
+            return;
+        }
+        addIdle(new PooledCodec(key, codec));
+    }
+
+    //drop a codec that failed, instead of putting it back into the pool
+    public void discard(MediaCodec codec) {
+        synchronized (this) {
+            mInUse.remove(codec);
+        }
+        destroy(codec);
+    }
+
+    //create the decoder an upcoming operation will need, so that it can start immediately
+    //not encoders: the flush would drop the codec config they send once started
+    //must not be called from the UI thread
+    public void prewarm(MediaFormat decoderFormat) {
+        try {
+            if (!hasIdle(getKey(decoderFormat, false))) {
+                release(acquireDecoder(decoderFormat));
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "prewarm failed", e);
+        } catch (RuntimeException e) {
+            //unsupported format, or no codec left on this device
+            Log.w(TAG, "prewarm failed", e);
+        }
+    }
+
+    //called from VoiceMemosApplication.onTrimMemory
+    public void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            releaseIdle(0);
+        } else {
+            releaseIdle(MAX_IDLE_CODECS / 2);
+        }
+    }
+
+    //release idle codecs until at most maxIdle are left
+    public void releaseIdle(int maxIdle) {
+        LinkedList<PooledCodec> evicted = new LinkedList<PooledCodec>();
+        synchronized (this) {
+            while (mIdle.size() > maxIdle) {
+                evicted.add(mIdle.removeFirst());
+            }
+        }
+        for (PooledCodec pooled : evicted) {
+            destroy(pooled.codec);
+        }
+    }
+
+    private synchronized MediaCodec takeIdle(String key) {
+        //most recently used first
+        Iterator<PooledCodec> it = mIdle.descendingIterator();
+        while (it.hasNext()) {
+            PooledCodec pooled = it.next();
+            if (pooled.key.equals(key)) {
+                it.remove();
+                return pooled.codec;
+            }
+        }
+        return null;
+    }
+
+    private synchronized boolean hasIdle(String key) {
+        for (PooledCodec pooled : mIdle) {
+            if (pooled.key.equals(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private synchronized void markInUse(MediaCodec codec, String key) {
+        mInUse.put(codec, key);
+    }
+
+    private void addIdle(PooledCodec pooled) {
+        synchronized (this) {
+            mIdle.addLast(pooled);
+        }
+        releaseIdle(MAX_IDLE_CODECS);
+    }
+
+    private static void destroy(MediaCodec codec) {
+        try {
+            codec.stop();
+        } catch (IllegalStateException e) {
+            //already stopped
+        }
+        codec.release();
+    }
+
+    //codecs can only be shared between streams of the same format
+    //for decoders, the codec specific data (e.g. the AAC AudioSpecificConfig) must match too
+    private static String getKey(MediaFormat format, boolean encoder) {
+        String key = (encoder ? "enc:" : "dec:") + format.getString(MediaFormat.KEY_MIME)
+                + "/" + format.getInteger(MediaFormat.KEY_SAMPLE_RATE)
+                + "/" + format.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+        if (encoder && format.containsKey(MediaFormat.KEY_BIT_RATE)) {
+            key += "/" + format.getInteger(MediaFormat.KEY_BIT_RATE);
+        }
+        if (!encoder && format.containsKey("csd-0")) {
+            ByteBuffer csd = format.getByteBuffer("csd-0").duplicate();
+            byte[] bytes = new byte[csd.remaining()];
+            csd.get(bytes);
+            key += "/" + Arrays.hashCode(bytes);
+        }
+        return key;
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.owen.voicememos;
+/*
+Owen Brown - 4838488
+Chang Ding - 5275821
+ */
+
+/**
+ * the edits of one recording, kept apart from its file: what is cut, a gain, a playback speed
+ * and the noise reduction to export with. the file is never changed by an edit, playback applies
+ * the cuts, gain and speed as it streams (AudioTrackPlayer), and only an explicit export renders
+ * them into the file (EditRenderer). so an edit is instant, and undoing it is forgetting it.
+ * stored in the EDITS table by EditStore
+ */
+public class EditDecisionList {
+    private EditList mKept = null;  //null keeps the whole recording
+    private float mGainDb = 0;
+    private float mSpeed = 1;
+    private float mNoiseReduction = 0;
+
+    public EditDecisionList() {
+    }
+
+    public EditDecisionList(EditDecisionList other) {
+        mKept = (other.mKept == null) ? null : new EditList(other.mKept);
+        mGainDb = other.mGainDb;
+        mSpeed = other.mSpeed;
+        mNoiseReduction = other.mNoiseReduction;
+    }
+
+    //the parts of the recording that are kept, in sample frames, null for all of it
+    public EditList getKept() {
+        return mKept;
+    }
+
+    public EditDecisionList setKept(EditList kept) {
+        mKept = (kept == null) ? null : new EditList(kept);
+        return this;
+    }
+
+    public float getGainDb() {
+        return mGainDb;
+    }
+
+    public EditDecisionList setGainDb(float gainDb) {
+        mGainDb = gainDb;
+        return this;
+    }
+
+    //playback speed, the pitch is kept. an export is not sped up, it is the speed to listen at
+    public float getSpeed() {
+        return mSpeed;
+    }
+
+    public EditDecisionList setSpeed(float speed) {
+        mSpeed = Math.max(TimeStretcher.MIN_RATE, Math.min(TimeStretcher.MAX_RATE, speed));
+        return this;
+    }
+
+    //in dB, 0 is off. applied by the export only: it needs the whole recording for its profile
+    public float getNoiseReduction() {
+        return mNoiseReduction;
+    }
+
+    public EditDecisionList setNoiseReduction(float reductionDb) {
+        mNoiseReduction = reductionDb;
+        return this;
+    }
+
+    //true if an export would change the file
+    public boolean changesAudio() {
+        return mKept != null || mGainDb != 0 || mNoiseReduction > 0;
+    }
+
+    //what is left once the audio edits are rendered into the file: the speed only
+    public EditDecisionList afterRender() {
+        return new EditDecisionList().setSpeed(mSpeed);
+    }
+}
@@ -0,0 +1,293 @@
+package com.example.owen.voicememos;
+/*
+Owen Brown - 4838488
+Chang Ding - 5275821
+ */
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+/**
+ * the parts of a recording an export keeps, as sorted ranges [start, end) of sample frames
+ * ranges can be kept or removed in any order, they are merged as they are added, so that e.g.
+ * three tangents can be removed from a memo and the rest written out in one pass by
+ * SoundFile.WriteFile. the Reader reads the kept frames one after the other, with short fades at
+ * the edges of each range so that the joins don't click
+ */
+public class EditList {
+    private long[] mStarts;
+    private long[] mEnds;
+    private int mCount = 0;
+
+    //nothing kept
+    public EditList() {
+        mStarts = new long[4];
+        mEnds = new long[4];
+    }
+
+    public EditList(EditList other) {
+        mStarts = Arrays.copyOf(other.mStarts, Math.max(4, other.mCount));
+        mEnds = Arrays.copyOf(other.mEnds, Math.max(4, other.mCount));
+        mCount = other.mCount;
+    }
+
+    //keep the frames from start to end as well, merged with the ranges they touch
+    public EditList keep(long start, long end) {
+        if (end <= start) {
+            return this;
+        }
+        long[] starts = new long[mCount + 1];
+        long[] ends = new long[mCount + 1];
+        int count = 0;
+        boolean added = false;
+        for (int i = 0; i < mCount; i++) {
+            if (mEnds[i] < start) {
+                starts[count] = mStarts[i];
+                ends[count++] = mEnds[i];
+            } else if (mStarts[i] > end) {
+                if (!added) {
+                    starts[count] = start;
+                    ends[count++] = end;
+                    added = true;
+                }
+                starts[count] = mStarts[i];
+                ends[count++] = mEnds[i];
+            } else {
+                start = Math.min(start, mStarts[i]);
+                end = Math.max(end, mEnds[i]);
+            }
+        }
+        if (!added) {
+            starts[count] = start;
+            ends[count++] = end;
+        }
+        set(starts, ends, count);
+        return this;
+    }
+
+    //drop the frames from start to end, a range they fall in the middle of is split in two
+    public EditList remove(long start, long end) {
+        if (end <= start) {
+            return this;
+        }
+        long[] starts = new long[mCount + 1];
+        long[] ends = new long[mCount + 1];
+        int count = 0;
+        for (int i = 0; i < mCount; i++) {
+            if (mEnds[i] <= start || mStarts[i] >= end) {
+                starts[count] = mStarts[i];
+                ends[count++] = mEnds[i];
+                continue;
+            }
+            if (mStarts[i] < start) {
+                starts[count] = mStarts[i];
+                ends[count++] = start;
+            }
+            if (mEnds[i] > end) {
+                starts[count] = end;
+                ends[count++] = mEnds[i];
+            }
+        }
+        set(starts, ends, count);
+        return this;
+    }
+
+    public int getNumRanges() {
+        return mCount;
+    }
+
+    public long getStart(int i) {
+        return mStarts[i];
+    }
+
+    public long getEnd(int i) {
+        return mEnds[i];
+    }
+
+    //length of the export, all the ranges put together
+    public long getKeptFrames() {
+        long frames = 0;
+        for (int i = 0; i < mCount; i++) {
+            frames += mEnds[i] - mStarts[i];
+        }
+        return frames;
+    }
+
+    //if position is not kept, the start of the next kept range (Long.MAX_VALUE if there is none),
+    //else position itself. for playback, like SilenceMap.skip
+    public long skip(long position) {
+        int i = Arrays.binarySearch(mStarts, 0, mCount, position);
+        if (i >= 0) {
+            return position;
+        }
+        i = -i - 2;     //last range starting before position
+        if (i >= 0 && position < mEnds[i]) {
+            return position;
+        }
+        return (i + 1 < mCount) ? mStarts[i + 1] : Long.MAX_VALUE;
+    }
+
+    //frames from position to the end of the range it is in, 0 if it is not kept
+    public long audibleFrames(long position) {
+        int i = Arrays.binarySearch(mStarts, 0, mCount, position);
+        if (i < 0) {
+            i = -i - 2;
+        }
+        return (i >= 0 && position < mEnds[i]) ? mEnds[i] - position : 0;
+    }
+
+    public byte[] toBytes() {
+        ByteBuffer buffer = ByteBuffer.allocate(mCount * 16);
+        for (int i = 0; i < mCount; i++) {
+            buffer.putLong(mStarts[i]);
+            buffer.putLong(mEnds[i]);
+        }
+        return buffer.array();
+    }
+
+    public static EditList fromBytes(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        EditList edits = new EditList();
+        for (int i = 0; i < bytes.length / 16; i++) {
+            long start = buffer.getLong();
+            edits.keep(start, buffer.getLong());
+        }
+        return edits;
+    }
+
+    private void set(long[] starts, long[] ends, int count) {
+        mStarts = starts;
+        mEnds = ends;
+        mCount = count;
+    }
+
+    /**
+     * reads the kept frames of an edit list as floats, range after range, then silence
+     * each range fades in and out over fadeFrames (less for short ranges), so a join is a quick
+     * dip instead of a step in the waveform. a processor can be run on the frames as they are read
+     */
+    public static class Reader {
+        private final EditList mEdits;
+        private final ShortBuffer mSamples;
+        private final long mFirstFrame;
+        private final int mChannels;
+        private final int mFadeFrames;
+        private short[] mScratch = new short[0];
+        private int mRange = 0;
+        private long mPosition;     //next frame to read, in mRange
+        private final long mKeptFrames;
+        private long mReturned = 0; //kept frames read() has given
+        private AudioProcessor mProcessor;
+        private float[] mLookahead;     //null once the processor is primed
+        private long mProcessed = 0;    //frames given to the processor
+
+        //samples holds the frames from firstFrame on, e.g. SoundFile.getSamples() and 0
+        public Reader(EditList edits, ShortBuffer samples, long firstFrame, int channels,
+                      int fadeFrames) {
+            mEdits = edits;
+            mSamples = samples.duplicate();
+            mFirstFrame = firstFrame;
+            mChannels = channels;
+            mFadeFrames = fadeFrames;
+            mPosition = (edits.mCount > 0) ? edits.mStarts[0] : 0;
+            mKeptFrames = edits.getKeptFrames();
+        }
+
+        //run the frames through processor before they are given. it gives its input back
+        //latency frames later, so the reader reads that far ahead and drops what comes out
+        //first: the frames given are still the kept frames, then silence. call before read()
+        public void setProcessor(AudioProcessor processor, int latency) {
+            mProcessor = processor;
+            mLookahead = new float[latency * mChannels];
+        }
+
+        //true once every kept frame has been read
+        public boolean isFinished() {
+            return mReturned >= mKeptFrames;
+        }
+
+        //read the next numFrames frames into dst, as interleaved floats (full scale is 1.0).
+        //returns how many of them were kept frames, the others are 0
+        public int read(float[] dst, int numFrames) {
+            if (mProcessor != null) {
+                if (mLookahead != null) {
+                    int latency = mLookahead.length / mChannels;
+                    readKept(mLookahead, latency);
+                    mProcessor.process(mLookahead, latency, 0);
+                    mProcessed = latency;
+                    mLookahead = null;
+                }
+                readKept(dst, numFrames);
+                mProcessor.process(dst, numFrames, mProcessed);
+                mProcessed += numFrames;
+            } else {
+                readKept(dst, numFrames);
+            }
+            int count = (int) Math.min(numFrames, mKeptFrames - mReturned);
+            mReturned += count;
+            Arrays.fill(dst, count * mChannels, numFrames * mChannels, 0f);
+            return count;
+        }
+
+        //the next numFrames kept frames into dst, 0 once there are no more
+        private void readKept(float[] dst, int numFrames) {
+            int count = 0;
+            while (count < numFrames && mRange < mEdits.mCount) {
+                long start = mEdits.mStarts[mRange];
+                long end = mEdits.mEnds[mRange];
+                int frames = (int) Math.min(numFrames - count, end - mPosition);
+                readRange(dst, count, frames, start, end);
+                count += frames;
+                mPosition += frames;
+                if (mPosition >= end) {
+                    mRange++;
+                    if (mRange < mEdits.mCount) {
+                        mPosition = mEdits.mStarts[mRange];
+                    }
+                }
+            }
+            Arrays.fill(dst, count * mChannels, numFrames * mChannels, 0f);
+        }
+
+        //frames frames from mPosition of the range [start, end) into dst from frame offset
+        private void readRange(float[] dst, int offset, int frames, long start, long end) {
+            int numSamples = frames * mChannels;
+            if (mScratch.length < numSamples) {
+                mScratch = new short[numSamples];
+            }
+            long index = (mPosition - mFirstFrame) * mChannels;
+            int available = (int) Math.max(0, Math.min(numSamples, mSamples.limit() - index));
+            if (available > 0) {
+                mSamples.position((int) index);
+                mSamples.get(mScratch, 0, available);
+            }
+            Arrays.fill(mScratch, available, numSamples, (short) 0);
+            int o = offset * mChannels;
+            for (int i = 0; i < numSamples; i++) {
+                dst[o + i] = mScratch[i] * (1.0f / 32768.0f);
+            }
+            //then the fades, on the few frames that are in one
+            long fade = Math.min(mFadeFrames, (end - start) / 2);
+            long fadeInEnd = Math.min(mPosition + frames, start + fade);
+            for (long frame = mPosition; frame < fadeInEnd; frame++) {
+                applyGain(dst, o, frame, rise((frame - start + 0.5) / fade));
+            }
+            long fadeOutStart = Math.max(mPosition, end - fade);
+            for (long frame = fadeOutStart; frame < mPosition + frames; frame++) {
+                applyGain(dst, o, frame, rise((end - frame - 0.5) / fade));
+            }
+        }
+
+        private void applyGain(float[] dst, int offset, long frame, float gain) {
+            int index = offset + (int) (frame - mPosition) * mChannels;
+            for (int c = 0; c < mChannels; c++) {
+                dst[index + c] *= gain;
+            }
+        }
+
+        //0 to 1 as x goes from 0 to 1, the same raised cosine as FadeProcessor
+        private static float rise(double x) {
+            return (float) (0.5 - 0.5 * Math.cos(Math.PI * x));
+        }
+    }
+}
@@ -3,11 +3,15 @@ package com.example.owen.voicememos;
 Owen Brown - 4838488
 Chang Ding - 5275821
  */
+import android.app.AlertDialog;
+import android.content.DialogInterface;
 import android.content.Intent;
+import android.database.sqlite.SQLiteDatabase;
 import android.os.Bundle;
 import android.support.v7.app.AppCompatActivity;
 import android.view.View;
 import android.widget.Button;
+import android.widget.Toast;
 
 public class EditRecording extends AppCompatActivity {
     private int record_id;      //for intent
@@ -16,6 +20,8 @@ public class EditRecording extends AppCompatActivity {
     private String record_note; //for intent
     private Button _edit_audioLevel;
     private Button _edit_trimAudio;
+    private Button _edit_export;
+    private Button _edit_undo;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -28,9 +34,13 @@ public class EditRecording extends AppCompatActivity {
         record_date = intent.getStringExtra("record_date");
         record_filename = intent.getStringExtra("record_filename");
         record_note = intent.getStringExtra("record_note");
+        //get the codecs and the decoded audio ready for editing
+        prepareEditing();
         //setup buttons
         _edit_audioLevel = (Button) findViewById(R.id.edit_audiolevel);
         _edit_trimAudio = (Button) findViewById(R.id.edit_trim);
+        _edit_export = (Button) findViewById(R.id.edit_export);
+        _edit_undo = (Button) findViewById(R.id.edit_undo);
         //listeners
         _edit_audioLevel.setOnClickListener(new View.OnClickListener() {
             @Override
@@ -55,5 +65,69 @@ public class EditRecording extends AppCompatActivity {
                 startActivity(intent);
             }
         });
+
+        _edit_export.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                exportEdits();
+            }
+        });
+
+        _edit_undo.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                undoEdits();
+            }
+        });
+    }
+
+    //the edits are only saved until now, render them into the file in the background
+    private void exportEdits() {
+        _edit_export.setEnabled(false);
+        Toast.makeText(this, "Exporting...", Toast.LENGTH_SHORT).show();
+        EditRenderer.render(this, record_id, getFilePath(), new EditRenderer.Callback() {
+            @Override
+            public void onRendered(int recordingId, boolean success) {
+                _edit_export.setEnabled(true);
+                Toast.makeText(EditRecording.this, success ? "Exported" : "Export failed",
+                        Toast.LENGTH_SHORT).show();
+            }
+        });
+    }
+
+    //forget all the edits not exported yet, the file has never been touched by them
+    private void undoEdits() {
+        new AlertDialog.Builder(this).setTitle("Undo?")
+                .setMessage("Undo the edits not exported yet?")
+                .setNegativeButton("Cancel", null)
+                .setPositiveButton("UNDO", new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        SQLiteDatabase db = VoiceMemosApplication
+                                .getDatabaseHelper(EditRecording.this).getWritableDatabase();
+                        EditStore.delete(db, record_id);
+                        Toast.makeText(EditRecording.this, "Edits Undone",
+                                Toast.LENGTH_SHORT).show();
+                    }
+                }).create().show();
+    }
+
+    private String getFilePath() {
+        return RecordingFiles.getPath(record_filename);
+    }
+
+    //create the decoder and encoder for this recording and decode it in the background,
+    //so that the editing screens find everything ready
+    private void prepareEditing() {
+        final String filePath = getFilePath();
+        //decodes in the background
+        SoundFileCache.get().prefetch(filePath);
+        //creating the decoder blocks
+        VoiceMemosApplication.runInBackground(new Runnable() {
+            @Override
+            public void run() {
+                SoundFile.prewarmCodecs(filePath);
+            }
+        });
     }
 }
@@ -0,0 +1,103 @@
+package com.example.owen.voicememos;
+/*
+Owen Brown - 4838488
+Chang Ding - 5275821
+ */
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+
+/**
+ * renders the edits of a recording into its file, only when the user exports them
+ * runs in the background: the kept parts are written in one pass with the gain and noise
+ * reduction of the edits (see SoundFile.WriteFile) to a temp file, which replaces the recording
+ * once RecordingFiles.isComplete() checked it. only then is the playback speed all that is left
+ * in the edit list, as the file now has the rest
+ */
+public class EditRenderer {
+    private static final String TAG = "EditRenderer";
+
+    //called on the main thread
+    public interface Callback {
+        void onRendered(int recordingId, boolean success);
+    }
+
+    public static void render(Context context, final int recordingId, final String path,
+                              final Callback callback) {
+        final Context appContext = context.getApplicationContext();
+        VoiceMemosApplication.runInBackground(new VoiceMemosApplication.Job<Boolean>() {
+            @Override
+            public Boolean run() {
+                return renderNow(appContext, recordingId, path);
+            }
+
+            @Override
+            public void done(Boolean success) {
+                callback.onRendered(recordingId, success);
+            }
+        });
+    }
+
+    private static boolean renderNow(Context context, int recordingId, String path) {
+        MyDatabaseHelper dbHelper = VoiceMemosApplication.getDatabaseHelper(context);
+        File file = new File(path);
+        File temp = new File(path + ".render.tmp");
+        try {
+            EditDecisionList edits = EditStore.read(dbHelper.getReadableDatabase(), recordingId);
+            if (!edits.changesAudio()) {
+                return true;
+            }
+            long mtime = file.lastModified();
+            //a memo does not need more than 16kHz, recordings above it are resampled
+            ExportSettings settings = new ExportSettings()
+                    .setSampleRate(ExportSettings.VOICE_SAMPLE_RATE)
+                    .setNoiseReduction(edits.getNoiseReduction());
+            if (edits.getGainDb() != 0) {
+                settings.addProcessor(GainProcessor.factory(edits.getGainDb()));
+            }
+            long contentUs;
+            int encodedRate;
+            EditList kept = edits.getKept();
+            SoundFile soundFile = SoundFileCache.get().acquire(path);
+            try {
+                int numSamples = soundFile.getNumSamples();
+                if (kept == null) {
+                    kept = new EditList().keep(0, numSamples);
+                }
+                //never over the recording itself, it is only replaced once the new file is right
+                soundFile.WriteFile(temp, kept, settings, null);
+                long keptFrames = 0;
+                for (int i = 0; i < kept.getNumRanges(); i++) {
+                    keptFrames += Math.min(kept.getEnd(i), numSamples)
+                            - Math.min(kept.getStart(i), numSamples);
+                }
+                contentUs = keptFrames * 1000000L / soundFile.getSampleRate();
+                encodedRate = settings.getSampleRate(soundFile.getSampleRate());
+            } finally {
+                SoundFileCache.get().release(soundFile);
+            }
+            //each end of a range may have moved to a zero crossing
+            long slackUs = (long) (2 * kept.getNumRanges() * settings.getZeroCrossingSearch()
+                    * 1000000);
+            if (!RecordingFiles.isComplete(temp, contentUs, encodedRate, slackUs)) {
+                temp.delete();
+                return false;
+            }
+            //the recording may have changed meanwhile, then the edits stay as they are
+            if (file.lastModified() != mtime || !temp.renameTo(file)) {
+                temp.delete();
+                return false;
+            }
+            //the cached decoded audio is out of date now
+            SoundFileCache.get().invalidate(path);
+            //only now that the file has them
+            EditStore.write(dbHelper.getWritableDatabase(), recordingId, edits.afterRender());
+            return true;
+        } catch (Exception e) {
+            Log.e(TAG, "could not render the edits of " + path, e);
+            temp.delete();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.owen.voicememos;
+/*
+Owen Brown - 4838488
+Chang Ding - 5275821
+ */
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * the edit decision lists of the recordings, in the EDITS table
+ * a recording without a row has no edits. the rows are a few bytes, so the edit screens read
+ * and write them right away, only playback loads them in the background like the silence maps
+ */
+public class EditStore {
+    //called on the main thread
+    public interface Callback {
+        void onEdits(String path, EditDecisionList edits);
+    }
+
+    //get the edits of one recording in the background, for the player
+    public static void load(Context context, final int recordingId, final String path,
+                            final Callback callback) {
+        final Context appContext = context.getApplicationContext();
+        VoiceMemosApplication.runInBackground(new VoiceMemosApplication.Job<EditDecisionList>() {
+            @Override
+            public EditDecisionList run() {
+                return read(VoiceMemosApplication.getDatabaseHelper(appContext)
+                        .getReadableDatabase(), recordingId);
+            }
+
+            @Override
+            public void done(EditDecisionList edits) {
+                callback.onEdits(path, edits);
+            }
+        });
+    }
+
+    //the edits of a recording, no edits if it has no row
+    public static EditDecisionList read(SQLiteDatabase db, int recordingId) {
+        EditDecisionList edits = new EditDecisionList();
+        Cursor cursor = db.query("EDITS",
+                new String[]{"kept", "gain_db", "speed", "noise_reduction"},
+                "recording_id = " + recordingId, null, null, null, null);
+        try {
+            if (cursor.moveToFirst()) {
+                if (!cursor.isNull(0)) {
+                    edits.setKept(EditList.fromBytes(cursor.getBlob(0)));
+                }
+                edits.setGainDb(cursor.getFloat(1));
+                edits.setSpeed(cursor.getFloat(2));
+                edits.setNoiseReduction(cursor.getFloat(3));
+            }
+        } finally {
+            cursor.close();
+        }
+        return edits;
+    }
+
+    //replace the edits of a recording. a recording left as it was loses its row
+    public static void write(SQLiteDatabase db, int recordingId, EditDecisionList edits) {
+        if (!edits.changesAudio() && edits.getSpeed() == 1) {
+            delete(db, recordingId);
+            return;
+        }
+        ContentValues values = new ContentValues();
+        values.put("recording_id", recordingId);
+        if (edits.getKept() == null) {
+            values.putNull("kept");
+        } else {
+            values.put("kept", edits.getKept().toBytes());
+        }
+        values.put("gain_db", edits.getGainDb());
+        values.put("speed", edits.getSpeed());
+        values.put("noise_reduction", edits.getNoiseReduction());
+        db.replace("EDITS", null, values);
+    }
+
+    //the recording was encoded again at toRate, and now starts with delayFrames (at toRate) of
+    //encoder priming: move the kept ranges of its edits to where the same audio is in the new file
+    public static void remapKept(SQLiteDatabase db, int recordingId, int fromRate, int toRate,
+                                 long delayFrames) {
+        EditDecisionList edits = read(db, recordingId);
+        EditList kept = edits.getKept();
+        if (kept == null) {
+            return;
+        }
+        EditList moved = new EditList();
+        for (int i = 0; i < kept.getNumRanges(); i++) {
+            moved.keep(kept.getStart(i) * toRate / fromRate + delayFrames,
+                    kept.getEnd(i) * toRate / fromRate + delayFrames);
+        }
+        write(db, recordingId, edits.setKept(moved));
+    }
+
+    //forget the edits of a deleted recording, or undo them all
+    public static void delete(SQLiteDatabase db, int recordingId) {
+        db.delete("EDITS", "recording_id = " + recordingId, null);
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.owen.voicememos;
+/*
+Owen Brown - 4838488
+Chang Ding - 5275821
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * how SoundFile.WriteFile should encode a recording
+ * the defaults are tuned for voice: mono stays mono, the bitrate follows the sample rate, and
+ * the ends of each part an export keeps are moved to zero crossings and faded, so that they
+ * don't click.
+ * effects (gain, fades, filters...) added here are applied to the samples before encoding
+ */
+public class ExportSettings {
+    //plenty for speech, and a third of the samples of a 48kHz recording to encode
+    public static final int VOICE_SAMPLE_RATE = 16000;
+
+    private boolean mForceStereo = false;
+    private int mBitrate = 0;   // 0 means pick a voice bitrate from the sample rate.
+    private int mSampleRate = 0;    //0 is the rate of the recording
+    //in seconds. a cut in the middle of a waveform clicks, so by default each end of an export
+    //moves to a zero crossing close by and fades for a few ms
+    private float mZeroCrossingSearch = 0.005f;
+    private float mCutFade = 0.005f;
+    private final List<AudioProcessor.Factory> mProcessors = new ArrayList<AudioProcessor.Factory>();
+    private float mNoiseReduction = 0;  //in dB, 0 is off
+    private boolean mCopyFrames = false;
+
+    public ExportSettings() {
+    }
+
+    //some devices (e.g. Samsung S3) have problems reading mono AAC files
+    //set this to duplicate mono sources into a stereo stream for them
+    public ExportSettings setForceStereo(boolean forceStereo) {
+        mForceStereo = forceStereo;
+        return this;
+    }
+
+    public boolean isForceStereo() {
+        return mForceStereo;
+    }
+
+    //total bitrate of the AAC stream in bits per second, 0 for the voice default
+    public ExportSettings setBitrate(int bitrate) {
+        mBitrate = bitrate;
+        return this;
+    }
+
+    //encode at most at sampleRate (one of the AAC rates, e.g. VOICE_SAMPLE_RATE), resampling
+    //recordings at a higher rate down to it. 0 keeps the rate of the recording
+    public ExportSettings setSampleRate(int sampleRate) {
+        mSampleRate = sampleRate;
+        return this;
+    }
+
+    //get the rate to encode a recording at sourceRate with. it is never raised
+    public int getSampleRate(int sourceRate) {
+        if (mSampleRate > 0 && mSampleRate < sourceRate) {
+            return mSampleRate;
+        }
+        return sourceRate;
+    }
+
+    //how far (in seconds) the start and end of an export may move to land on a zero crossing,
+    //0 to cut exactly where asked
+    public ExportSettings setZeroCrossingSearch(float seconds) {
+        mZeroCrossingSearch = seconds;
+        return this;
+    }
+
+    public float getZeroCrossingSearch() {
+        return mZeroCrossingSearch;
+    }
+
+    //length in seconds of the raised cosine fades at the start and end of an export, 0 for none
+    public ExportSettings setCutFade(float seconds) {
+        mCutFade = seconds;
+        return this;
+    }
+
+    public float getCutFade() {
+        return mCutFade;
+    }
+
+    //compressed domain mode: copy the AAC frames of the kept parts of a recording as they are,
+    //without decoding or encoding. lossless and quick, but cuts are to the nearest AAC frame and
+    //nothing else here (fades, effects, sample rate) applies. recordings that are not AAC are
+    //encoded as usual
+    public ExportSettings setCopyFrames(boolean copyFrames) {
+        mCopyFrames = copyFrames;
+        return this;
+    }
+
+    public boolean isCopyFrames() {
+        return mCopyFrames;
+    }
+
+    //add an effect after the ones already added, e.g. HighPassProcessor.factory(80)
+    public ExportSettings addProcessor(AudioProcessor.Factory processor) {
+        mProcessors.add(processor);
+        return this;
+    }
+
+    //turn the background noise down by reductionDb (e.g. 12) before the other effects, 0 for off
+    public ExportSettings setNoiseReduction(float reductionDb) {
+        mNoiseReduction = reductionDb;
+        return this;
+    }
+
+    public float getNoiseReduction() {
+        return mNoiseReduction;
+    }
+
+    //the effects for one render, null if there are none. the cut fades are not effects, they are
+    //applied to each kept range as it is read
+    public ProcessorChain createProcessorChain(int sampleRate, int channels, long numFrames) {
+        if (mProcessors.isEmpty()) {
+            return null;
+        }
+        return new ProcessorChain(mProcessors, sampleRate, channels, numFrames);
+    }
+
+    //get the bitrate to encode with
+    public int getBitrate(int sampleRate, int numChannels) {
+        if (mBitrate > 0) {
+            return mBitrate;
+        }
+        return getVoiceBitrate(sampleRate) * numChannels;
+    }
+
+    //speech does not need the 64kbps per channel a music track would
+    //these are per channel, for AAC LC
+    public static int getVoiceBitrate(int sampleRate) {
+        if (sampleRate <= 8000) {
+            return 24000;
+        } else if (sampleRate <= 16000) {
+            return 32000;
+        } else if (sampleRate <= 24000) {
+            return 40000;
+        }
+        return 48000;
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.owen.voicememos;
+/*
+Owen Brown - 4838488
+Chang Ding - 5275821
+ */
+
+/**
+ * raised cosine fade in at the start of the render and fade out at its end
+ * the frames between the two fades are left alone
+ */
+public class FadeProcessor implements AudioProcessor {
+    private final int mChannels;
+    private final long mNumFrames;
+    private final long mFadeIn;     //in frames
+    private final long mFadeOut;
+
+    public FadeProcessor(float fadeInSeconds, float fadeOutSeconds, int sampleRate, int channels,
+                         long numFrames) {
+        mChannels = channels;
+        mNumFrames = numFrames;
+        //fades can't overlap
+        mFadeIn = Math.min((long) (fadeInSeconds * sampleRate), numFrames / 2);
+        mFadeOut = Math.min((long) (fadeOutSeconds * sampleRate), numFrames - mFadeIn);
+    }
+
+    public static AudioProcessor.Factory factory(final float fadeInSeconds,
+                                                 final float fadeOutSeconds) {
+        return new AudioProcessor.Factory() {
+            @Override
+            public AudioProcessor create(int sampleRate, int channels, long numFrames) {
+                return new FadeProcessor(fadeInSeconds, fadeOutSeconds, sampleRate, channels,
+                        numFrames);
+            }
+        };
+    }
+
+    @Override
+    public void process(float[] samples, int numFrames, long position) {
+        long fadeOutStart = mNumFrames - mFadeOut;
+        if (position >= mFadeIn && position + numFrames <= fadeOutStart) {
+            return;
+        }
+        int o = 0;
+        for (int i = 0; i < numFrames; i++) {
+            long frame = position + i;
+            float gain = 1.0f;
+            if (frame >= mNumFrames) {
+                gain = 0.0f;
+            } else if (frame < mFadeIn) {
+                gain = rise((frame + 0.5) / mFadeIn);
+            } else if (frame >= fadeOutStart) {
+                gain = rise((mNumFrames - frame - 0.5) / mFadeOut);
+            }
+            for (int c = 0; c < mChannels; c++) {
+                samples[o++] *= gain;
+            }
+        }
+    }
+
+    //0 to 1 as x goes from 0 to 1
+    private static float rise(double x) {
+        return (float) (0.5 - 0.5 * Math.cos(Math.PI * x));
+    }
+}
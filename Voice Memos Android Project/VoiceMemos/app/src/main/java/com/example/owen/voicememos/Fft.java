@@ -0,0 +1,111 @@
+package com.example.owen.voicememos;
+/*
+Owen Brown - 4838488
+Chang Ding - 5275821
+ */
+import java.util.Arrays;
+
+/**
+ * in place radix-2 complex FFT of one fixed size
+ * the twiddle factors and the bit reversal order are computed once in the constructor, so a
+ * transform allocates nothing. an Fft holds no state while transforming and can be shared by
+ * several threads
+ */
+public class Fft {
+    private final int mSize;
+    private final float[] mCos;     //cos(2*pi*k/size), k < size/2
+    private final float[] mSin;
+    private final int[] mSwapFrom;  //pairs of indexes the bit reversal swaps
+    private final int[] mSwapTo;
+
+    public Fft(int size) {
+        if (size < 2 || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("FFT size must be a power of 2: " + size);
+        }
+        mSize = size;
+        mCos = new float[size / 2];
+        mSin = new float[size / 2];
+        for (int k = 0; k < size / 2; k++) {
+            mCos[k] = (float) Math.cos(2 * Math.PI * k / size);
+            mSin[k] = (float) Math.sin(2 * Math.PI * k / size);
+        }
+        int bits = Integer.numberOfTrailingZeros(size);
+        int count = 0;
+        int[] from = new int[size / 2];
+        int[] to = new int[size / 2];
+        for (int i = 0; i < size; i++) {
+            int j = Integer.reverse(i) >>> (32 - bits);
+            if (i < j) {
+                from[count] = i;
+                to[count] = j;
+                count++;
+            }
+        }
+        mSwapFrom = Arrays.copyOf(from, count);
+        mSwapTo = Arrays.copyOf(to, count);
+    }
+
+    public int getSize() {
+        return mSize;
+    }
+
+    //re and im hold size values each, replaced by their spectrum
+    public void forward(float[] re, float[] im) {
+        transform(re, im, -1f);
+    }
+
+    //the inverse of forward, scaled so that inverse(forward(x)) == x
+    public void inverse(float[] re, float[] im) {
+        transform(re, im, 1f);
+        float scale = 1f / mSize;
+        for (int i = 0; i < mSize; i++) {
+            re[i] *= scale;
+            im[i] *= scale;
+        }
+    }
+
+    //when re and im were two real frames x and y, get the power of the first powerX.length bins
+    //of each from their combined spectrum: X[k] = (Z[k] + conj(Z[N-k])) / 2 and
+    //Y[k] = (Z[k] - conj(Z[N-k])) / 2i. this way two real frames cost one complex transform
+    public void splitPowers(float[] re, float[] im, float[] powerX, float[] powerY) {
+        for (int k = 0; k < powerX.length; k++) {
+            int n = (mSize - k) & (mSize - 1);
+            float a = re[k];
+            float b = im[k];
+            float c = re[n];
+            float d = im[n];
+            powerX[k] = ((a + c) * (a + c) + (b - d) * (b - d)) * 0.25f;
+            powerY[k] = ((b + d) * (b + d) + (a - c) * (a - c)) * 0.25f;
+        }
+    }
+
+    private void transform(float[] re, float[] im, float sign) {
+        for (int i = 0; i < mSwapFrom.length; i++) {
+            int a = mSwapFrom[i];
+            int b = mSwapTo[i];
+            float t = re[a];
+            re[a] = re[b];
+            re[b] = t;
+            t = im[a];
+            im[a] = im[b];
+            im[b] = t;
+        }
+        for (int half = 1; half < mSize; half *= 2) {
+            int step = mSize / (2 * half);     //twiddle stride for this stage
+            for (int start = 0; start < mSize; start += 2 * half) {
+                for (int k = 0; k < half; k++) {
+                    float wr = mCos[k * step];
+                    float wi = sign * mSin[k * step];
+                    int a = start + k;
+                    int b = a + half;
+                    float tr = wr * re[b] - wi * im[b];
+                    float ti = wr * im[b] + wi * re[b];
+                    re[b] = re[a] - tr;
+                    im[b] = im[a] - ti;
+                    re[a] += tr;
+                    im[a] += ti;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.owen.voicememos;
+/*
+Owen Brown - 4838488
+Chang Ding - 5275821
+ */
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * compressed domain export: copies the AAC frames of the kept ranges of a recording into a new
+ * file, without decoding or encoding anything. each range is cut to the nearest frame (1024
+ * samples), so it is lossless and quick, but has no fades or effects. MediaMuxer can only write
+ * mp4 with AAC in it, so AMR recordings are not copied: they are re-encoded instead
+ */
+class FrameCopier {
+    private static final String TAG = "FrameCopier";
+    private static final String AAC = "audio/mp4a-latm";
+    private static final int AAC_FRAME = 1024;
+    //an AAC frame is at most 768 bytes per channel
+    private static final int MAX_FRAME_BYTES = 16 * 1024;
+
+    private FrameCopier() {
+    }
+
+    //copy the frames of source in the kept ranges of edits (frames at the rate of source) into
+    //output, which may be source itself. false if source can't be copied, output is then untouched
+    static boolean copy(File source, EditList edits, File output) throws IOException {
+        //written next to output first, as output may be the file being read
+        File temp = new File(output.getPath() + ".tmp");
+        MediaExtractor extractor = new MediaExtractor();
+        MediaMuxer muxer = null;
+        long written = 0;
+        try {
+            extractor.setDataSource(source.getPath());
+            MediaFormat format = null;
+            for (int i = 0; i < extractor.getTrackCount(); i++) {
+                MediaFormat trackFormat = extractor.getTrackFormat(i);
+                if (trackFormat.getString(MediaFormat.KEY_MIME).startsWith("audio/")) {
+                    if (trackFormat.getString(MediaFormat.KEY_MIME).equals(AAC)) {
+                        format = trackFormat;
+                        extractor.selectTrack(i);
+                    }
+                    break;
+                }
+            }
+            if (format == null) {
+                return false;
+            }
+            int sampleRate = format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+            long frameUs = AAC_FRAME * 1000000L / sampleRate;
+            muxer = new MediaMuxer(temp.getPath(), MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+            int track = muxer.addTrack(format);
+            muxer.start();
+            ByteBuffer buffer = ByteBuffer.allocate(MAX_FRAME_BYTES);
+            MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+            for (int i = 0; i < edits.getNumRanges(); i++) {
+                long startUs = edits.getStart(i) * 1000000L / sampleRate;
+                long endUs = edits.getEnd(i) * 1000000L / sampleRate;
+                extractor.seekTo(startUs, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+                //a frame is in the range if its middle is
+                while (true) {
+                    long time = extractor.getSampleTime();
+                    if (time < 0 || time + frameUs / 2 >= endUs) {
+                        break;
+                    }
+                    if (time + frameUs / 2 >= startUs) {
+                        int size = extractor.readSampleData(buffer, 0);
+                        if (size < 0) {
+                            break;
+                        }
+                        //codec specific data in front of the stream, see SoundFile.ReadFile.
+                        //the muxer has it from the format already
+                        if (!(time == 0 && size == 2)) {
+                            //the frames of each range follow the ones before, with no gap
+                            info.set(0, size, written * AAC_FRAME * 1000000L / sampleRate,
+                                    MediaCodec.BUFFER_FLAG_SYNC_FRAME);
+                            muxer.writeSampleData(track, buffer, info);
+                            written++;
+                        }
+                    }
+                    if (!extractor.advance()) {
+                        break;
+                    }
+                }
+            }
+            if (written == 0) {
+                //the muxer can't write a file without frames
+                return false;
+            }
+            muxer.stop();
+        } catch (IllegalStateException e) {
+            Log.w(TAG, "could not copy the frames of " + source, e);
+            written = 0;
+        } finally {
+            if (muxer != null) {
+                try {
+                    muxer.release();
+                } catch (IllegalStateException e) {
+                    //stopping a muxer that has not written anything fails, nothing to keep then
+                    written = 0;
+                }
+            }
+            extractor.release();
+            if (written == 0) {
+                temp.delete();
+            }
+        }
+        if (written == 0) {
+            return false;
+        }
+        if (!temp.renameTo(output)) {
+            temp.delete();
+            throw new IOException("could not write " + output);
+        }
+        return true;
+    }
+}
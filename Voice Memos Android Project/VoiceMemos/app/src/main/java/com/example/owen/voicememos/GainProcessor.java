@@ -0,0 +1,35 @@
+package com.example.owen.voicememos;
+/*
+Owen Brown - 4838488
+Chang Ding - 5275821
+ */
+
+/**
+ * a fixed gain, in dB
+ */
+public class GainProcessor implements AudioProcessor {
+    private final int mChannels;
+    private final float mGain;
+
+    public GainProcessor(float gainDb, int channels) {
+        mChannels = channels;
+        mGain = (float) Math.pow(10.0, gainDb / 20.0);
+    }
+
+    public static AudioProcessor.Factory factory(final float gainDb) {
+        return new AudioProcessor.Factory() {
+            @Override
+            public AudioProcessor create(int sampleRate, int channels, long numFrames) {
+                return new GainProcessor(gainDb, channels);
+            }
+        };
+    }
+
+    @Override
+    public void process(float[] samples, int numFrames, long position) {
+        int count = numFrames * mChannels;
+        for (int i = 0; i < count; i++) {
+            samples[i] *= mGain;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.owen.voicememos;
+/*
+Owen Brown - 4838488
+Chang Ding - 5275821
+ */
+
+/**
+ * second order butterworth high pass, to take out rumble (wind, handling, traffic)
+ * below the voice. one biquad, transposed direct form II, with a state per channel
+ */
+public class HighPassProcessor implements AudioProcessor {
+    private final int mChannels;
+    private final float mB0, mB1, mB2, mA1, mA2;
+    private final float[] mZ1;
+    private final float[] mZ2;
+
+    public HighPassProcessor(float cutoffHz, int sampleRate, int channels) {
+        mChannels = channels;
+        double w0 = 2 * Math.PI * Math.min(cutoffHz, 0.45 * sampleRate) / sampleRate;
+        double cos = Math.cos(w0);
+        double alpha = Math.sin(w0) / (2 * Math.sqrt(0.5));
+        double a0 = 1 + alpha;
+        mB0 = (float) ((1 + cos) / 2 / a0);
+        mB1 = (float) (-(1 + cos) / a0);
+        mB2 = mB0;
+        mA1 = (float) (-2 * cos / a0);
+        mA2 = (float) ((1 - alpha) / a0);
+        mZ1 = new float[channels];
+        mZ2 = new float[channels];
+    }
+
+    public static AudioProcessor.Factory factory(final float cutoffHz) {
+        return new AudioProcessor.Factory() {
+            @Override
+            public AudioProcessor create(int sampleRate, int channels, long numFrames) {
+                return new HighPassProcessor(cutoffHz, sampleRate, channels);
+            }
+        };
+    }
+
+    @Override
+    public void process(float[] samples, int numFrames, long position) {
+        for (int c = 0; c < mChannels; c++) {
+            float z1 = mZ1[c];
+            float z2 = mZ2[c];
+            int count = numFrames * mChannels;
+            for (int i = c; i < count; i += mChannels) {
+                float x = samples[i];
+                float y = mB0 * x + z1;
+                z1 = mB1 * x - mA1 * y + z2;
+                z2 = mB2 * x - mA2 * y;
+                samples[i] = y;
+            }
+            mZ1[c] = z1;
+            mZ2[c] = z2;
+        }
+    }
+}
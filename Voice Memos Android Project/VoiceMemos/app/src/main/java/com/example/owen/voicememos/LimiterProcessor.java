@@ -0,0 +1,58 @@
+package com.example.owen.voicememos;
+/*
+Owen Brown - 4838488
+Chang Ding - 5275821
+ */
+
+/**
+ * peak limiter: no sample goes over the ceiling
+ * the gain drops at once on a peak (so nothing overshoots) and recovers smoothly over the
+ * release time. the same gain applies to all the channels, so the stereo image does not move
+ */
+public class LimiterProcessor implements AudioProcessor {
+    private final int mChannels;
+    private final float mCeiling;
+    private final float mRelease;   //fraction of the way back to 1 per frame
+    private float mGain = 1.0f;
+
+    public LimiterProcessor(float ceilingDb, float releaseSeconds, int sampleRate, int channels) {
+        mChannels = channels;
+        mCeiling = (float) Math.pow(10.0, ceilingDb / 20.0);
+        mRelease = (float) (1.0 - Math.exp(-1.0 / (releaseSeconds * sampleRate)));
+    }
+
+    public static AudioProcessor.Factory factory(final float ceilingDb,
+                                                 final float releaseSeconds) {
+        return new AudioProcessor.Factory() {
+            @Override
+            public AudioProcessor create(int sampleRate, int channels, long numFrames) {
+                return new LimiterProcessor(ceilingDb, releaseSeconds, sampleRate, channels);
+            }
+        };
+    }
+
+    @Override
+    public void process(float[] samples, int numFrames, long position) {
+        float gain = mGain;
+        int o = 0;
+        for (int i = 0; i < numFrames; i++) {
+            float peak = 0;
+            for (int c = 0; c < mChannels; c++) {
+                float value = Math.abs(samples[o + c]);
+                if (value > peak) {
+                    peak = value;
+                }
+            }
+            float target = (peak > mCeiling) ? mCeiling / peak : 1.0f;
+            if (target < gain) {
+                gain = target;
+            } else {
+                gain += (target - gain) * mRelease;
+            }
+            for (int c = 0; c < mChannels; c++) {
+                samples[o++] *= gain;
+            }
+        }
+        mGain = gain;
+    }
+}
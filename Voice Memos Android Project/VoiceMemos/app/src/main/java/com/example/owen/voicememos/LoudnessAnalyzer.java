@@ -0,0 +1,233 @@
+package com.example.owen.voicememos;
+/*
+Owen Brown - 4838488
+Chang Ding - 5275821
+ */
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+/**
+ * loudness of a recording as EBU R128 measures it, in one streaming pass over the samples
+ * integrated loudness: K-weighted, 400ms blocks every 100ms, gated at -70 LUFS and 10 LU under
+ * the ungated mean. short-term max: the loudest 3s window. true peak: the highest sample of the
+ * signal oversampled 4 times. only the energy of each 100ms is kept (~300KB for 1 hour)
+ */
+public class LoudnessAnalyzer {
+    private static final double ABSOLUTE_GATE = -70.0;
+    private static final double RELATIVE_GATE = -10.0;
+    private static final int OVERSAMPLING = 4;
+    private static final int TAPS_PER_PHASE = 12;
+    //interpolation filter, TAPS[phase][k] applies to the input sample k steps back
+    private static final double[][] TAPS = interpolationTaps();
+
+    private final int mChannels;
+    private final int mHopFrames;      //100ms
+
+    //K-weighting: a high shelf then a high pass, one biquad state per channel for each
+    private final double[] mShelfB = new double[3];
+    private final double[] mShelfA = new double[3];
+    private final double[] mHighPassB = new double[3];
+    private final double[] mHighPassA = new double[3];
+    private final double[][] mState;   //[channel][4 delays of each of the 2 biquads]
+
+    //sum of squares of the current 100ms, and the mean square of every 100ms so far
+    private double mHopSum = 0;
+    private int mHopFramesDone = 0;
+    private double[] mHops = new double[600];
+    private int mNumHops = 0;
+
+    //last input samples of each channel for the true peak interpolation, newest at mHistoryPos
+    private final double[][] mHistory;
+    private int mHistoryPos = 0;
+    private double mPeak = 0;          //linear, 1.0 is full scale
+
+    public static class Result {
+        public final double integrated;     //LUFS, -infinity if everything is gated out
+        public final double shortTermMax;   //LUFS
+        public final double truePeak;       //dBTP
+
+        public Result(double integrated, double shortTermMax, double truePeak) {
+            this.integrated = integrated;
+            this.shortTermMax = shortTermMax;
+            this.truePeak = truePeak;
+        }
+
+        //the gain that brings the recording to targetLufs, without the true peak going over
+        //ceilingDbtp and without boosting by more than maxBoostDb
+        public double getNormalizationGainDb(double targetLufs, double ceilingDbtp,
+                                             double maxBoostDb) {
+            if (Double.isInfinite(integrated)) {
+                return 0;
+            }
+            double gain = Math.min(targetLufs - integrated, maxBoostDb);
+            if (!Double.isInfinite(truePeak)) {
+                gain = Math.min(gain, ceilingDbtp - truePeak);
+            }
+            return gain;
+        }
+    }
+
+    public LoudnessAnalyzer(int sampleRate, int channels) {
+        mChannels = channels;
+        mHopFrames = sampleRate / 10;
+        mState = new double[channels][8];
+        mHistory = new double[channels][TAPS_PER_PHASE];
+
+        //coefficients of ITU-R BS.1770 for any sample rate, from its analog prototypes
+        double k = Math.tan(Math.PI * 1681.974450955533 / sampleRate);
+        double q = 0.7071752369554196;
+        double vh = Math.pow(10.0, 3.999843853973347 / 20.0);
+        double vb = Math.pow(vh, 0.4996667741545416);
+        double a0 = 1.0 + k / q + k * k;
+        mShelfB[0] = (vh + vb * k / q + k * k) / a0;
+        mShelfB[1] = 2.0 * (k * k - vh) / a0;
+        mShelfB[2] = (vh - vb * k / q + k * k) / a0;
+        mShelfA[1] = 2.0 * (k * k - 1.0) / a0;
+        mShelfA[2] = (1.0 - k / q + k * k) / a0;
+
+        k = Math.tan(Math.PI * 38.13547087602444 / sampleRate);
+        q = 0.5003270373238773;
+        a0 = 1.0 + k / q + k * k;
+        mHighPassB[0] = 1.0;
+        mHighPassB[1] = -2.0;
+        mHighPassB[2] = 1.0;
+        mHighPassA[1] = 2.0 * (k * k - 1.0) / a0;
+        mHighPassA[2] = (1.0 - k / q + k * k) / a0;
+    }
+
+    //analyse numFrames interleaved frames from the current position of samples
+    public void process(ShortBuffer samples, int numFrames) {
+        for (int i = 0; i < numFrames; i++) {
+            mHistoryPos = (mHistoryPos + 1) % TAPS_PER_PHASE;
+            for (int c = 0; c < mChannels; c++) {
+                double x = samples.get() / 32768.0;
+                mHistory[c][mHistoryPos] = x;
+                updatePeak(mHistory[c]);
+                double y = weight(mState[c], x);
+                mHopSum += y * y;
+            }
+            if (++mHopFramesDone == mHopFrames) {
+                if (mNumHops == mHops.length) {
+                    mHops = Arrays.copyOf(mHops, mNumHops * 2);
+                }
+                mHops[mNumHops++] = mHopSum / mHopFrames;
+                mHopSum = 0;
+                mHopFramesDone = 0;
+            }
+        }
+    }
+
+    public Result getResult() {
+        //energy of every 400ms block, and the loudest 3s
+        int numBlocks = Math.max(0, mNumHops - 3);
+        double[] blocks = new double[numBlocks];
+        double window = 0;
+        double shortTermMax = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < mNumHops; i++) {
+            window += mHops[i];
+            if (i >= 30) {
+                window -= mHops[i - 30];
+            }
+            if (i >= 29) {
+                shortTermMax = Math.max(shortTermMax, loudness(window / 30));
+            }
+            if (i >= 3) {
+                blocks[i - 3] = (mHops[i] + mHops[i - 1] + mHops[i - 2] + mHops[i - 3]) / 4;
+            }
+        }
+        if (mNumHops < 30 && mNumHops > 0) {
+            //shorter than 3s, the whole recording is the window
+            shortTermMax = loudness(window / mNumHops);
+        }
+
+        double absoluteMean = gatedMean(blocks, ABSOLUTE_GATE);
+        double integrated = Double.NEGATIVE_INFINITY;
+        if (absoluteMean > 0) {
+            double relativeGate = Math.max(ABSOLUTE_GATE, loudness(absoluteMean) + RELATIVE_GATE);
+            double mean = gatedMean(blocks, relativeGate);
+            if (mean > 0) {
+                integrated = loudness(mean);
+            }
+        }
+        double truePeak = (mPeak > 0) ? 20 * Math.log10(mPeak) : Double.NEGATIVE_INFINITY;
+        return new Result(integrated, shortTermMax, truePeak);
+    }
+
+    //mean energy of the blocks louder than gate
+    private static double gatedMean(double[] blocks, double gate) {
+        double sum = 0;
+        int count = 0;
+        for (double block : blocks) {
+            if (loudness(block) > gate) {
+                sum += block;
+                count++;
+            }
+        }
+        return (count > 0) ? sum / count : 0;
+    }
+
+    private static double loudness(double energy) {
+        return (energy > 0) ? -0.691 + 10 * Math.log10(energy) : Double.NEGATIVE_INFINITY;
+    }
+
+    //run one sample through the two biquads (direct form I)
+    private double weight(double[] s, double x) {
+        double y = mShelfB[0] * x + mShelfB[1] * s[0] + mShelfB[2] * s[1]
+                - mShelfA[1] * s[2] - mShelfA[2] * s[3];
+        s[1] = s[0];
+        s[0] = x;
+        s[3] = s[2];
+        s[2] = y;
+        double z = mHighPassB[0] * y + mHighPassB[1] * s[4] + mHighPassB[2] * s[5]
+                - mHighPassA[1] * s[6] - mHighPassA[2] * s[7];
+        s[5] = s[4];
+        s[4] = y;
+        s[7] = s[6];
+        s[6] = z;
+        return z;
+    }
+
+    //the highest of the OVERSAMPLING values from one sample to the next: phase 0 is the sample
+    //itself (TAPS_PER_PHASE / 2 samples back), the others are interpolated after it
+    private void updatePeak(double[] history) {
+        for (int p = 0; p < OVERSAMPLING; p++) {
+            double[] taps = TAPS[p];
+            double y = 0;
+            int pos = mHistoryPos;
+            for (int k = 0; k < TAPS_PER_PHASE; k++) {
+                y += taps[k] * history[pos];
+                pos = (pos == 0) ? TAPS_PER_PHASE - 1 : pos - 1;
+            }
+            if (y < 0) {
+                y = -y;
+            }
+            if (y > mPeak) {
+                mPeak = y;
+            }
+        }
+    }
+
+    //polyphase windowed sinc low pass at the original nyquist frequency. its center is on a tap
+    //of phase 0, so that phase 0 gives back the samples and a peak on a sample is never missed
+    private static double[][] interpolationTaps() {
+        int length = OVERSAMPLING * TAPS_PER_PHASE;
+        int center = length / 2;
+        double[][] taps = new double[OVERSAMPLING][TAPS_PER_PHASE];
+        for (int p = 0; p < OVERSAMPLING; p++) {
+            double sum = 0;
+            for (int k = 0; k < TAPS_PER_PHASE; k++) {
+                int n = p + k * OVERSAMPLING;
+                double t = (double) (n - center) / OVERSAMPLING;
+                double sinc = (n == center) ? 1.0 : Math.sin(Math.PI * t) / (Math.PI * t);
+                double window = 0.5 + 0.5 * Math.cos(2 * Math.PI * (n - center) / length);
+                taps[p][k] = sinc * window;
+                sum += taps[p][k];
+            }
+            //each phase has a gain of 1
+            for (int k = 0; k < TAPS_PER_PHASE; k++) {
+                taps[p][k] /= sum;
+            }
+        }
+        return taps;
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.owen.voicememos;
+/*
+Owen Brown - 4838488
+Chang Ding - 5275821
+ */
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * loudness of the recordings, measured once and kept in the LOUDNESS table
+ * scanLibrary() measures every recording that has no up to date row yet, one at a time on a
+ * background thread, so that playback can normalise any recording right away
+ */
+public class LoudnessStore {
+    private static final String TAG = "LoudnessStore";
+    //what playback normalises to, and how far
+    public static final double TARGET_LUFS = -16.0;
+    public static final double CEILING_DBTP = -1.0;
+    public static final double MAX_BOOST_DB = 12.0;
+
+    //called on the main thread, result is null if the recording could not be analysed
+    public interface Callback {
+        void onLoudness(String path, LoudnessAnalyzer.Result result);
+    }
+
+    //get the loudness of one recording, measuring it now if needed
+    public static void load(Context context, final int recordingId, final String path,
+                            final Callback callback) {
+        final Context appContext = context.getApplicationContext();
+        VoiceMemosApplication.runInBackground(
+                new VoiceMemosApplication.Job<LoudnessAnalyzer.Result>() {
+            @Override
+            public LoudnessAnalyzer.Result run() {
+                return loadOrAnalyse(appContext, recordingId, path);
+            }
+
+            @Override
+            public void done(LoudnessAnalyzer.Result result) {
+                callback.onLoudness(path, result);
+            }
+        });
+    }
+
+    //measure all the recordings not measured yet, in the background. does nothing if a scan
+    //is already running
+    public static void scanLibrary(Context context) {
+        final Context appContext = context.getApplicationContext();
+        VoiceMemosApplication.runOnce(TAG, new Runnable() {
+            @Override
+            public void run() {
+                scan(appContext);
+            }
+        });
+    }
+
+    //forget the loudness of a deleted recording
+    public static void delete(SQLiteDatabase db, int recordingId) {
+        db.delete("LOUDNESS", "recording_id = " + recordingId, null);
+    }
+
+    private static void scan(Context context) {
+        MyDatabaseHelper dbHelper = VoiceMemosApplication.getDatabaseHelper(context);
+        //the recordings and the file time they were measured for, if they were
+        List<Integer> ids = new ArrayList<Integer>();
+        List<String> filenames = new ArrayList<String>();
+        List<Long> measured = new ArrayList<Long>();
+        Cursor cursor = dbHelper.getReadableDatabase().rawQuery(
+                "SELECT RECORDINGS.id, RECORDINGS.filename, LOUDNESS.file_mtime "
+                        + "FROM RECORDINGS LEFT JOIN LOUDNESS "
+                        + "ON LOUDNESS.recording_id = RECORDINGS.id", null);
+        try {
+            while (cursor.moveToNext()) {
+                ids.add(cursor.getInt(0));
+                filenames.add(cursor.getString(1));
+                measured.add(cursor.isNull(2) ? -1 : cursor.getLong(2));
+            }
+        } finally {
+            cursor.close();
+        }
+        for (int i = 0; i < ids.size(); i++) {
+            File file = RecordingFiles.getFile(filenames.get(i));
+            if (!file.exists() || file.lastModified() == measured.get(i)) {
+                continue;
+            }
+            long mtime = file.lastModified();
+            LoudnessAnalyzer.Result result;
+            try {
+                //not through SoundFileCache, a scan must not evict what the screens use
+                result = analyse(SoundFile.create(file.getPath()));
+            } catch (Exception e) {
+                Log.w(TAG, "could not analyse " + file, e);
+                continue;
+            }
+            store(dbHelper.getWritableDatabase(), ids.get(i), mtime, result);
+        }
+    }
+
+    private static LoudnessAnalyzer.Result loadOrAnalyse(Context context, int recordingId,
+                                                        String path) {
+        long mtime = new File(path).lastModified();
+        MyDatabaseHelper dbHelper = VoiceMemosApplication.getDatabaseHelper(context);
+        Cursor cursor = dbHelper.getReadableDatabase().query("LOUDNESS",
+                new String[]{"integrated", "short_term_max", "true_peak"},
+                "recording_id = " + recordingId + " AND file_mtime = " + mtime,
+                null, null, null, null);
+        try {
+            if (cursor.moveToFirst()) {
+                return new LoudnessAnalyzer.Result(getLevel(cursor, 0), getLevel(cursor, 1),
+                        getLevel(cursor, 2));
+            }
+        } finally {
+            cursor.close();
+        }
+        SoundFile soundFile;
+        try {
+            soundFile = SoundFileCache.get().acquire(path);
+        } catch (Exception e) {
+            Log.e(TAG, "could not decode " + path, e);
+            return null;
+        }
+        LoudnessAnalyzer.Result result;
+        try {
+            result = analyse(soundFile);
+        } finally {
+            SoundFileCache.get().release(soundFile);
+        }
+        store(dbHelper.getWritableDatabase(), recordingId, mtime, result);
+        return result;
+    }
+
+    private static LoudnessAnalyzer.Result analyse(SoundFile soundFile) {
+        LoudnessAnalyzer analyzer = new LoudnessAnalyzer(soundFile.getSampleRate(),
+                soundFile.getChannels());
+        analyzer.process(soundFile.getSamples(), soundFile.getNumSamples());
+        return analyzer.getResult();
+    }
+
+    private static void store(SQLiteDatabase db, int recordingId, long mtime,
+                              LoudnessAnalyzer.Result result) {
+        ContentValues values = new ContentValues();
+        values.put("recording_id", recordingId);
+        values.put("file_mtime", mtime);
+        putLevel(values, "integrated", result.integrated);
+        putLevel(values, "short_term_max", result.shortTermMax);
+        putLevel(values, "true_peak", result.truePeak);
+        db.replace("LOUDNESS", null, values);
+    }
+
+    //silence is -infinity, stored as NULL
+    private static void putLevel(ContentValues values, String column, double level) {
+        if (Double.isInfinite(level)) {
+            values.putNull(column);
+        } else {
+            values.put(column, level);
+        }
+    }
+
+    private static double getLevel(Cursor cursor, int column) {
+        return cursor.isNull(column) ? Double.NEGATIVE_INFINITY : cursor.getDouble(column);
+    }
+}
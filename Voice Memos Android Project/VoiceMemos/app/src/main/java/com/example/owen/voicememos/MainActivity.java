@@ -3,17 +3,24 @@ package com.example.owen.voicememos;
 Owen Brown - 4838488
 Chang Ding - 5275821
  */
+import android.app.AlertDialog;
+import android.content.DialogInterface;
 import android.content.Intent;
-import android.database.Cursor;
-import android.database.sqlite.SQLiteDatabase;
 import android.os.Bundle;
 import android.os.Environment;
+import android.os.Handler;
 import android.support.v7.app.AppCompatActivity;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.util.Log;
+import android.view.LayoutInflater;
 import android.view.View;
 import android.widget.AdapterView;
+import android.widget.Button;
+import android.widget.EditText;
 import android.widget.ImageButton;
 import android.widget.ListView;
+import android.widget.Toast;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
@@ -23,20 +30,32 @@ public class MainActivity extends AppCompatActivity {
     private File file[];
     private MyDatabaseHelper dbHelper;  //database helper
     private ImageButton _startRecording;
+    private Button _playAll;
+    private Button _merge;
+    private boolean selecting = false;  //recordings are being selected for merging
     private ListView listview;
-    private List<singleRecording> recordingList;
+    private RecordingListSource recordingSource;    //the rows, a page at a time
+    private RecordingAdapter adapter;
+    private ThumbnailLoader thumbnails;     //waveforms of the rows
+    private EditText _search;
+    private final Handler searchHandler = new Handler();
+    //wait until typing pauses before searching
+    private static final int SEARCH_DELAY_MS = 150;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
         listview = (ListView) findViewById(R.id.main_audioList);
-        //initialize database
-        //version set to 1, so it won't recreate if exist
-        dbHelper = new MyDatabaseHelper(this, "RecordingsData.db",null,1);
-        //the following two lines of codes did nothing.
-        dbHelper.getWritableDatabase();
-        dbHelper.close();
+        //initialize database, in the background
+        //onUpgrade adds the new tables, it never recreates the recordings, and can take a while
+        dbHelper = VoiceMemosApplication.getDatabaseHelper(this);
+        VoiceMemosApplication.runInBackground(new Runnable() {
+            @Override
+            public void run() {
+                dbHelper.getWritableDatabase();
+            }
+        });
         //create the directory for storing recordings
         setDirectory("VoiceMemos");
         //set Recordings path
@@ -45,54 +64,248 @@ public class MainActivity extends AppCompatActivity {
         getMemoFilesList();
         //initialize record button
         setRecordButton();
+        //initialize play all button
+        setPlayAllButton();
+        //initialize merge button
+        setMergeButton();
         //display the recording list
-        displayRecordingList();
+        iniRecordingList();
+        //initialize search field
+        setSearchField();
+        //measure the loudness of new recordings in the background, for normalized playback
+        LoudnessStore.scanLibrary(this);
+        //convert the AMR recordings to AAC in the background
+        ArchiveTranscoder.scanLibrary(this);
+        //fill in the duration, size and format of new or changed recordings
+        MetadataBackfill.scanLibrary(this);
     }
 
     @Override
     public void onResume(){
         super.onResume();
-        //refresh list
-        displayRecordingList();
+        //refresh list, the ids and the rows already read are read again, in the background
+        recordingSource.refresh();
+        //the recordings edited meanwhile get a new waveform
+        thumbnails.dropChanged(new Runnable() {
+            @Override
+            public void run() {
+                adapter.notifyDataSetChanged();
+            }
+        });
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        searchHandler.removeCallbacksAndMessages(null);
+        recordingSource.close();
+        thumbnails.close();
     }
 
     //display recording list
-    //get the info. from database
-    private void displayRecordingList(){
-        SQLiteDatabase db = dbHelper.getReadableDatabase();
-        //set cursor
-        Cursor cursor = db.query("RECORDINGS",null,null,null,null,null,null);
-        //store info. into the list
-        recordingList = new ArrayList<singleRecording>();
-        if(cursor.moveToFirst()){
-            do{
-                int rd_id = cursor.getInt(cursor.getColumnIndex("id"));
-                String date = cursor.getString(cursor.getColumnIndex("date"));
-                String filename = cursor.getString(cursor.getColumnIndex("filename"));
-                String note = cursor.getString(cursor.getColumnIndex("note"));
-                recordingList.add(new singleRecording(rd_id,date,filename,note));
-            }while(cursor.moveToNext());
-        }
-        cursor.close();
-        //reading info ends.
-        //set adapter for viewList
-        RecordingAdapter adapter = new RecordingAdapter(MainActivity.this, R.layout.list_example,recordingList);
-        //display
+    //the rows are read from the database in the background, when the list first shows them
+    private void iniRecordingList(){
+        recordingSource = new RecordingListSource(this, new RecordingListSource.Listener() {
+            @Override
+            public void onRowsLoaded() {
+                adapter.notifyDataSetChanged();
+            }
+
+            @Override
+            public void onListChanged() {
+                //the ids are stable, so the list moves the selection to the new positions of the
+                //recordings when it lays them out. the deleted ones drop out of it
+                adapter.notifyDataSetChanged();
+                if (selecting) {
+                    listview.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (selecting) {
+                                updateMergeButton();
+                            }
+                        }
+                    });
+                }
+            }
+        });
+        thumbnails = new ThumbnailLoader(this);
+        adapter = new RecordingAdapter(MainActivity.this, R.layout.list_example, recordingSource,
+                thumbnails);
         listview.setAdapter(adapter);
-        db.close();
+        //stop rendering the thumbnails of the rows that scroll off
+        listview.setRecyclerListener(adapter);
         //items on click listener
         listview.setOnItemClickListener(new AdapterView.OnItemClickListener() {
             @Override
             public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
-                singleRecording selectedRecording = recordingList.get(position);
+                if (selecting) {
+                    //the list has (un)selected it already
+                    updateMergeButton();
+                    return;
+                }
+                singleRecording selectedRecording = adapter.getItem(position);
+                if (selectedRecording == null) {
+                    //still loading
+                    return;
+                }
+                //no note, PlayRecording reads it
                 Intent intent = new Intent(MainActivity.this, PlayRecording.class);
                 intent.putExtra("record_id", selectedRecording.getId());
                 intent.putExtra("record_date", selectedRecording.getDate());
                 intent.putExtra("record_filename", selectedRecording.getFilename());
-                intent.putExtra("record_note",selectedRecording.getNote());
+                //found by a search: start at the marker of the text found
+                NoteSearch.Result result = recordingSource.getSearchResult(position);
+                if (result != null && result.markerMs >= 0) {
+                    intent.putExtra("start_ms", result.markerMs);
+                }
                 startActivity(intent);
             }
         });
+        //a long press starts selecting recordings to merge
+        listview.setOnItemLongClickListener(new AdapterView.OnItemLongClickListener() {
+            @Override
+            public boolean onItemLongClick(AdapterView<?> parent, View view, int position, long id) {
+                if (selecting) {
+                    return false;
+                }
+                selecting = true;
+                listview.setChoiceMode(ListView.CHOICE_MODE_MULTIPLE);
+                listview.setItemChecked(position, true);
+                updateMergeButton();
+                return true;
+            }
+        });
+    }
+
+    //initialize search field, the list shows what is found as it is typed
+    private void setSearchField() {
+        _search = (EditText) findViewById(R.id.main_search);
+        final Runnable search = new Runnable() {
+            @Override
+            public void run() {
+                recordingSource.setQuery(_search.getText().toString().trim());
+            }
+        };
+        _search.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                searchHandler.removeCallbacks(search);
+                searchHandler.postDelayed(search, SEARCH_DELAY_MS);
+            }
+        });
+    }
+
+    //on back key pressed, stop selecting first
+    public void onBackPressed() {
+        if (selecting) {
+            endSelection();
+            return;
+        }
+        //then the search
+        if (_search.length() > 0) {
+            _search.setText("");
+            return;
+        }
+        super.onBackPressed();
+    }
+
+    //show how many recordings are selected, a merge needs two or more
+    private void updateMergeButton() {
+        int count = listview.getCheckedItemCount();
+        if (count == 0) {
+            endSelection();
+            return;
+        }
+        _merge.setVisibility(View.VISIBLE);
+        _merge.setText("Merge (" + count + ")");
+        _merge.setEnabled(count >= 2);
+    }
+
+    private void endSelection() {
+        selecting = false;
+        listview.clearChoices();
+        listview.setChoiceMode(ListView.CHOICE_MODE_NONE);
+        listview.requestLayout();
+        _merge.setVisibility(View.GONE);
+    }
+
+    //the ids of the selected recordings, in the order of the list
+    private List<Integer> getSelectedIds() {
+        List<Integer> selected = new ArrayList<Integer>();
+        for (int i = 0; i < recordingSource.getCount(); i++) {
+            if (listview.isItemChecked(i)) {
+                selected.add(recordingSource.getId(i));
+            }
+        }
+        return selected;
+    }
+
+    //initialize merge button
+    private void setMergeButton() {
+        _merge = (Button) findViewById(R.id.main_merge);
+        _merge.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                final List<Integer> selected = getSelectedIds();
+                if (selected.size() < 2) {
+                    return;
+                }
+                //ask for the name of the merged memo
+                View promptView = LayoutInflater.from(MainActivity.this).inflate(R.layout.prompt_dialog, null);
+                final EditText userInput = (EditText) promptView.findViewById(R.id.prompt_enter_filename);
+                int firstPosition = 0;
+                while (!listview.isItemChecked(firstPosition)) {
+                    firstPosition++;
+                }
+                singleRecording first = adapter.getItem(firstPosition);
+                final String defaultName = (first != null) ? first.getFilename() + "_merged" : "Merged";
+                userInput.setText(defaultName);
+                new AlertDialog.Builder(MainActivity.this).setView(promptView)
+                        .setNegativeButton("Cancel", null)
+                        .setPositiveButton("MERGE", new DialogInterface.OnClickListener() {
+                            @Override
+                            public void onClick(DialogInterface dialog, int which) {
+                                String fileName = userInput.getText().toString();
+                                if (fileName.compareTo("") == 0) {
+                                    fileName = defaultName;
+                                }
+                                if (RecordingFiles.getFile(fileName).exists()) {
+                                    Toast.makeText(MainActivity.this, "File name already used", Toast.LENGTH_SHORT).show();
+                                    return;
+                                }
+                                mergeRecordings(selected, fileName);
+                            }
+                        }).create().show();
+            }
+        });
+    }
+
+    //join the recordings into a new memo in the background, the list shows it once it is done
+    private void mergeRecordings(List<Integer> selected, String fileName) {
+        endSelection();
+        Toast.makeText(this, "Merging...", Toast.LENGTH_SHORT).show();
+        MemoMerger.merge(this, selected, fileName, new MemoMerger.Callback() {
+            @Override
+            public void onMerged(String filename, boolean success) {
+                if (isFinishing()) {
+                    return;
+                }
+                if (success) {
+                    Toast.makeText(MainActivity.this, "Merged into " + filename, Toast.LENGTH_SHORT).show();
+                    recordingSource.refresh();
+                } else {
+                    Toast.makeText(MainActivity.this, "Merge failed", Toast.LENGTH_SHORT).show();
+                }
+            }
+        });
     }
 
     //create the directory
@@ -119,6 +332,25 @@ public class MainActivity extends AppCompatActivity {
         });
     }
 
+    //initialize play all button
+    private void setPlayAllButton(){
+        _playAll = (Button) findViewById(R.id.main_playAll);
+        _playAll.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                if (recordingSource.getCount() == 0) {
+                    return;
+                }
+                //play the whole list from the first recording, one after the other
+                //PlayRecording reads the recordings of the list itself
+                Intent intent = new Intent(MainActivity.this, PlayRecording.class);
+                intent.putExtra("record_id", recordingSource.getId(0));
+                intent.putExtra("play_all", true);
+                startActivity(intent);
+            }
+        });
+    }
+
     //get recordings list
     private void getMemoFilesList(){
         File f = new File(memosPath);
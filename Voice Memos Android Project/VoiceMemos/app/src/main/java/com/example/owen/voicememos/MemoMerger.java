@@ -0,0 +1,505 @@
+package com.example.owen.voicememos;
+/*
+Owen Brown - 4838488
+Chang Ding - 5275821
+ */
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.regex.Matcher;
+
+/**
+ * joins several recordings, one after the other, into a new memo, e.g. a meeting recorded in
+ * pieces. if all of them are AAC with the same format, their frames are copied into one file
+ * (the muxer writes one sample table for all of them), nothing is decoded. else each one is
+ * streamed through a StreamDecoder, resampled to a common rate and encoded again, a block at a
+ * time, so a long meeting never has to fit in memory. the recordings are left as they are, the
+ * memo gets its own row, with their notes one after the other and their time markers moved to
+ * where each part starts
+ */
+public class MemoMerger {
+    private static final String TAG = "MemoMerger";
+    private static final String AAC = "audio/mp4a-latm";
+    private static final int AAC_FRAME = 1024;
+    //an AAC frame is at most 768 bytes per channel
+    private static final int MAX_FRAME_BYTES = 16 * 1024;
+    private static final long TIMEOUT_US = 10000;
+
+    //called on the main thread
+    public interface Callback {
+        void onMerged(String filename, boolean success);
+    }
+
+    //join the recordings with the given ids, in that order, into a new memo called filename
+    public static void merge(Context context, final List<Integer> recordingIds,
+                             final String filename, final Callback callback) {
+        final Context appContext = context.getApplicationContext();
+        VoiceMemosApplication.runInBackground(new VoiceMemosApplication.Job<Boolean>() {
+            @Override
+            public Boolean run() {
+                return mergeNow(appContext, recordingIds, filename);
+            }
+
+            @Override
+            public void done(Boolean success) {
+                callback.onMerged(filename, success);
+            }
+        });
+    }
+
+    private static boolean mergeNow(Context context, List<Integer> recordingIds,
+                                    String filename) {
+        MyDatabaseHelper dbHelper = VoiceMemosApplication.getDatabaseHelper(context);
+        return mergeNow(context, dbHelper.getWritableDatabase(),
+                readRecordings(dbHelper.getReadableDatabase(), recordingIds), filename);
+    }
+
+    //the rows of the recordings, with their notes, in the order of the ids
+    private static List<singleRecording> readRecordings(SQLiteDatabase db, List<Integer> ids) {
+        List<singleRecording> recordings = new ArrayList<singleRecording>();
+        for (int id : ids) {
+            Cursor cursor = db.query("RECORDINGS", new String[]{"date", "filename", "note"},
+                    "id = " + id, null, null, null, null);
+            try {
+                if (cursor.moveToFirst()) {
+                    recordings.add(new singleRecording(id, cursor.getString(0),
+                            cursor.getString(1), cursor.getString(2)));
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        return recordings;
+    }
+
+    private static boolean mergeNow(Context context, SQLiteDatabase db,
+                                    List<singleRecording> recordings, String filename) {
+        File[] sources = new File[recordings.size()];
+        for (int i = 0; i < sources.length; i++) {
+            sources[i] = RecordingFiles.getFile(recordings.get(i).getFilename());
+        }
+        File output = RecordingFiles.getFile(filename);
+        //written next to output first, so a failed merge leaves nothing behind
+        File temp = new File(output.getPath() + ".tmp");
+        long[] offsetsUs = new long[sources.length];
+        try {
+            if (!copyFrames(sources, temp, offsetsUs)) {
+                transcode(context, sources, temp, offsetsUs);
+            }
+            if (!temp.renameTo(output)) {
+                throw new IOException("could not write " + output);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "could not merge into " + output, e);
+            temp.delete();
+            return false;
+        }
+        //the merged memo, with the notes of every part
+        ContentValues values = new ContentValues();
+        Date now = Calendar.getInstance().getTime();
+        values.put("date", java.text.DateFormat.getDateTimeInstance().format(now));
+        values.put("recorded_at", now.getTime());
+        values.put("filename", filename);
+        values.put("note", mergeNotes(recordings, offsetsUs));
+        db.insert("RECORDINGS", null, values);
+        return true;
+    }
+
+    //the notes of the parts one after the other, each after a marker with the time its part
+    //starts at and its name. the markers in a note are moved by the same time
+    static String mergeNotes(List<singleRecording> recordings, long[] offsetsUs) {
+        StringBuilder merged = new StringBuilder();
+        for (int i = 0; i < recordings.size(); i++) {
+            long offsetSeconds = offsetsUs[i] / 1000000;
+            String note = recordings.get(i).getNote();
+            merged.append(NoteMarkers.format(offsetSeconds)).append(" ")
+                    .append(recordings.get(i).getFilename()).append("\n");
+            if (note == null || note.length() == 0) {
+                continue;
+            }
+            Matcher matcher = NoteMarkers.matcher(note);
+            StringBuffer shifted = new StringBuffer();
+            while (matcher.find()) {
+                long seconds = NoteMarkers.getSeconds(matcher) + offsetSeconds;
+                matcher.appendReplacement(shifted, NoteMarkers.format(seconds));
+            }
+            matcher.appendTail(shifted);
+            merged.append(shifted).append("\n");
+        }
+        return merged.toString();
+    }
+
+    //the audio track of a recording, selected in extractor, null if there is none
+    private static MediaFormat selectAudioTrack(MediaExtractor extractor) {
+        for (int i = 0; i < extractor.getTrackCount(); i++) {
+            MediaFormat format = extractor.getTrackFormat(i);
+            if (format.getString(MediaFormat.KEY_MIME).startsWith("audio/")) {
+                extractor.selectTrack(i);
+                return format;
+            }
+        }
+        return null;
+    }
+
+    //true if the frames of a stream in format b can follow those of a stream in format a
+    private static boolean sameFormat(MediaFormat a, MediaFormat b) {
+        if (!AAC.equals(a.getString(MediaFormat.KEY_MIME))
+                || !AAC.equals(b.getString(MediaFormat.KEY_MIME))
+                || a.getInteger(MediaFormat.KEY_SAMPLE_RATE) != b.getInteger(MediaFormat.KEY_SAMPLE_RATE)
+                || a.getInteger(MediaFormat.KEY_CHANNEL_COUNT) != b.getInteger(MediaFormat.KEY_CHANNEL_COUNT)) {
+            return false;
+        }
+        //the codec specific data holds the profile, it has to be the same too
+        ByteBuffer csdA = a.containsKey("csd-0") ? a.getByteBuffer("csd-0") : null;
+        ByteBuffer csdB = b.containsKey("csd-0") ? b.getByteBuffer("csd-0") : null;
+        return (csdA == null) ? csdB == null : csdA.equals(csdB);
+    }
+
+    //copy the AAC frames of the sources one after the other into output, the start of each in
+    //offsetsUs. false, and nothing written, if the sources are not all AAC in the same format
+    private static boolean copyFrames(File[] sources, File output, long[] offsetsUs)
+            throws IOException {
+        MediaExtractor[] extractors = new MediaExtractor[sources.length];
+        MediaMuxer muxer = null;
+        try {
+            MediaFormat format = null;
+            for (int i = 0; i < sources.length; i++) {
+                extractors[i] = new MediaExtractor();
+                extractors[i].setDataSource(sources[i].getPath());
+                MediaFormat trackFormat = selectAudioTrack(extractors[i]);
+                if (trackFormat == null) {
+                    throw new IOException("No audio track found in " + sources[i]);
+                }
+                if (format == null) {
+                    format = trackFormat;
+                } else if (!sameFormat(format, trackFormat)) {
+                    return false;
+                }
+            }
+            if (format == null || !AAC.equals(format.getString(MediaFormat.KEY_MIME))) {
+                return false;
+            }
+            int sampleRate = format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+            muxer = new MediaMuxer(output.getPath(), MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+            int track = muxer.addTrack(format);
+            muxer.start();
+            ByteBuffer buffer = ByteBuffer.allocate(MAX_FRAME_BYTES);
+            MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+            long written = 0;
+            for (int i = 0; i < sources.length; i++) {
+                //the part starts with the priming frames of the encoder that made it, its audio
+                //comes after them
+                offsetsUs[i] = (written * AAC_FRAME + SoundFile.ENCODER_DELAY) * 1000000L
+                        / sampleRate;
+                while (true) {
+                    long time = extractors[i].getSampleTime();
+                    int size = extractors[i].readSampleData(buffer, 0);
+                    if (size < 0) {
+                        break;
+                    }
+                    //codec specific data in front of the stream, see SoundFile.ReadFile
+                    if (!(time == 0 && size == 2)) {
+                        //each part follows the one before, with no gap
+                        //the time of each frame from the count, a frame time rounded to whole
+                        //microseconds would drift
+                        info.set(0, size, written * AAC_FRAME * 1000000L / sampleRate,
+                                MediaCodec.BUFFER_FLAG_SYNC_FRAME);
+                        muxer.writeSampleData(track, buffer, info);
+                        written++;
+                    }
+                    if (!extractors[i].advance()) {
+                        break;
+                    }
+                }
+            }
+            if (written == 0) {
+                throw new IOException("nothing to merge");
+            }
+            muxer.stop();
+            return true;
+        } catch (IllegalStateException e) {
+            throw new IOException("could not copy the frames", e);
+        } finally {
+            if (muxer != null) {
+                try {
+                    muxer.release();
+                } catch (IllegalStateException e) {
+                    //nothing was written, the caller deletes the file
+                }
+            }
+            for (MediaExtractor extractor : extractors) {
+                if (extractor != null) {
+                    extractor.release();
+                }
+            }
+        }
+    }
+
+    //decode the sources one after the other, bring them to one rate and number of channels, and
+    //encode them into output as AAC, the start of each in offsetsUs
+    private static void transcode(Context context, File[] sources, File output, long[] offsetsUs)
+            throws IOException {
+        //the output has the highest rate of the sources (at most the voice rate), and stereo
+        //if any of them is
+        int sampleRate = 0;
+        int channels = 1;
+        for (File source : sources) {
+            MediaExtractor extractor = new MediaExtractor();
+            try {
+                extractor.setDataSource(source.getPath());
+                MediaFormat format = selectAudioTrack(extractor);
+                if (format == null) {
+                    throw new IOException("No audio track found in " + source);
+                }
+                sampleRate = Math.max(sampleRate, format.getInteger(MediaFormat.KEY_SAMPLE_RATE));
+                channels = Math.max(channels, format.getInteger(MediaFormat.KEY_CHANNEL_COUNT));
+            } finally {
+                extractor.release();
+            }
+        }
+        ExportSettings settings = new ExportSettings()
+                .setSampleRate(ExportSettings.VOICE_SAMPLE_RATE);
+        MediaFormat format = SoundFile.getExportFormat(sampleRate, Math.min(channels, 2), settings);
+        Encoder encoder = new Encoder(format, output);
+        boolean healthy = false;
+        try {
+            for (int i = 0; i < sources.length; i++) {
+                //after the priming frames of the merged stream. the decoded part still has the
+                //priming of its own encoder in front of it, so the markers can be a few tens of
+                //ms early, well within the second they are written to
+                offsetsUs[i] = (encoder.getFramesWritten() + SoundFile.ENCODER_DELAY) * 1000000L
+                        / encoder.mSampleRate;
+                StreamDecoder decoder = new StreamDecoder(
+                        SeekIndex.get(context, sources[i].getPath()), sources[i].getPath());
+                try {
+                    transcodeOne(decoder, encoder);
+                } finally {
+                    decoder.release();
+                }
+            }
+            encoder.finish();
+            healthy = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("merge interrupted", e);
+        } catch (IllegalStateException e) {
+            throw new IOException("could not encode", e);
+        } finally {
+            encoder.release(healthy);
+        }
+    }
+
+    //stream one decoded source into the encoder
+    private static void transcodeOne(StreamDecoder decoder, Encoder encoder)
+            throws InterruptedException {
+        int inChannels = decoder.getChannels();
+        Resampler resampler = null;
+        if (decoder.getSampleRate() != encoder.mSampleRate) {
+            resampler = new Resampler(decoder.getSampleRate(), encoder.mSampleRate, inChannels);
+        }
+        short[] decoded = new short[AAC_FRAME * inChannels];
+        float[] samples = new float[AAC_FRAME * inChannels];
+        boolean ended = false;
+        while (!ended) {
+            int frames = decoder.read(decoded, AAC_FRAME);
+            if (frames == 0) {
+                if (!decoder.isFinished()) {
+                    decoder.waitForData(10);
+                    continue;
+                }
+                ended = true;
+            }
+            for (int i = 0; i < frames * inChannels; i++) {
+                samples[i] = decoded[i] * (1.0f / 32768.0f);
+            }
+            if (resampler == null) {
+                encoder.write(samples, frames, inChannels);
+                continue;
+            }
+            if (ended) {
+                resampler.endOfInput();
+            } else {
+                resampler.write(samples, frames);
+            }
+            int read;
+            while ((read = resampler.read(samples, AAC_FRAME)) > 0) {
+                encoder.write(samples, read, inChannels);
+            }
+        }
+    }
+
+    /**
+     * AAC encoder writing into a muxer, fed with frames of any size that it puts together into
+     * whole AAC frames
+     */
+    private static class Encoder {
+        private final MediaCodec mCodec;
+        private final MediaMuxer mMuxer;
+        private final int mSampleRate;
+        private final int mChannels;
+        private final float[] mBlock;
+        private final short[] mBlockSamples;
+        private final MediaCodec.BufferInfo mInfo = new MediaCodec.BufferInfo();
+        private ByteBuffer[] mInputBuffers;
+        private ByteBuffer[] mOutputBuffers;
+        private int mBlockFrames = 0;
+        private long mFramesQueued = 0;
+        private long mFramesWritten = 0;
+        private int mTrack = -1;
+        private ByteBuffer mConfig;     //codec specific data, from the codec config buffer
+
+        Encoder(MediaFormat format, File output) throws IOException {
+            mSampleRate = format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+            mChannels = format.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+            mBlock = new float[AAC_FRAME * mChannels];
+            mBlockSamples = new short[AAC_FRAME * mChannels];
+            mCodec = CodecPool.get().acquireEncoder(format);
+            try {
+                mMuxer = new MediaMuxer(output.getPath(),
+                        MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+            } catch (IOException e) {
+                CodecPool.get().release(mCodec);
+                throw e;
+            }
+            mInputBuffers = mCodec.getInputBuffers();
+            mOutputBuffers = mCodec.getOutputBuffers();
+        }
+
+        //frames written so far, at the rate of the encoder
+        long getFramesWritten() {
+            return mFramesWritten;
+        }
+
+        //add frames frames of samples, which has inChannels channels
+        void write(float[] samples, int frames, int inChannels) {
+            for (int f = 0; f < frames; f++) {
+                int dst = mBlockFrames * mChannels;
+                int src = f * inChannels;
+                if (inChannels == mChannels) {
+                    System.arraycopy(samples, src, mBlock, dst, mChannels);
+                } else if (mChannels == 2) {
+                    mBlock[dst] = samples[src];
+                    mBlock[dst + 1] = samples[src];
+                } else {
+                    mBlock[dst] = (samples[src] + samples[src + 1]) * 0.5f;
+                }
+                mFramesWritten++;
+                if (++mBlockFrames == AAC_FRAME) {
+                    queueBlock(0);
+                }
+            }
+        }
+
+        //encode what is left, padded to a whole frame, and close the file
+        void finish() {
+            if (mBlockFrames > 0) {
+                Arrays.fill(mBlock, mBlockFrames * mChannels, mBlock.length, 0f);
+                queueBlock(0);
+            }
+            queueBlock(MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+            while (drain(true)) {
+                //until the end of stream comes out
+            }
+            mMuxer.stop();
+        }
+
+        void release(boolean healthy) {
+            try {
+                mMuxer.release();
+            } catch (IllegalStateException e) {
+                //never started
+            }
+            if (healthy) {
+                CodecPool.get().release(mCodec);
+            } else {
+                CodecPool.get().discard(mCodec);
+            }
+        }
+
+        private void queueBlock(int flags) {
+            int index;
+            while ((index = mCodec.dequeueInputBuffer(TIMEOUT_US)) < 0) {
+                drain(false);
+            }
+            int size = 0;
+            if (flags == 0) {
+                PcmUtils.toShorts(mBlock, mBlockSamples, mBlock.length);
+                ByteBuffer input = mInputBuffers[index];
+                input.clear();
+                input.order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().put(mBlockSamples);
+                size = mBlockSamples.length * 2;
+            }
+            mCodec.queueInputBuffer(index, 0, size, mFramesQueued * 1000000L / mSampleRate, flags);
+            mFramesQueued += AAC_FRAME;
+            mBlockFrames = 0;
+            drain(false);
+        }
+
+        //add the track once, with the codec specific data, and start the muxer
+        private void startMuxer() {
+            if (mTrack >= 0) {
+                return;
+            }
+            MediaFormat format = mCodec.getOutputFormat();
+            if (!format.containsKey("csd-0") && mConfig != null) {
+                format.setByteBuffer("csd-0", mConfig);
+            }
+            mTrack = mMuxer.addTrack(format);
+            mMuxer.start();
+        }
+
+        //hand the encoded frames over to the muxer. waits for them if untilEnd, returns false
+        //once the end of stream is out
+        private boolean drain(boolean untilEnd) {
+            while (true) {
+                int index = mCodec.dequeueOutputBuffer(mInfo, untilEnd ? TIMEOUT_US : 0);
+                if (index == MediaCodec.INFO_TRY_AGAIN_LATER) {
+                    if (!untilEnd) {
+                        return true;
+                    }
+                } else if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                    //the format with the codec specific data, the muxer needs it to start
+                    startMuxer();
+                } else if (index == MediaCodec.INFO_OUTPUT_BUFFERS_CHANGED) {
+                    mOutputBuffers = mCodec.getOutputBuffers();
+                } else if (index >= 0) {
+                    ByteBuffer output = mOutputBuffers[index];
+                    output.position(mInfo.offset);
+                    output.limit(mInfo.offset + mInfo.size);
+                    if ((mInfo.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) != 0) {
+                        if (mInfo.size > 0) {
+                            mConfig = ByteBuffer.allocate(mInfo.size);
+                            mConfig.put(output);
+                            mConfig.flip();
+                        }
+                    } else if (mInfo.size > 0) {
+                        //an encoder from the pool may not change its output format again, its
+                        //format is the one it had
+                        startMuxer();
+                        mMuxer.writeSampleData(mTrack, output, mInfo);
+                    }
+                    mCodec.releaseOutputBuffer(index, false);
+                    if ((mInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                        return false;
+                    }
+                }
+            }
+        }
+    }
+}
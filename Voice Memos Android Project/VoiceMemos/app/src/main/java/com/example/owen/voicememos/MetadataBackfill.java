@@ -0,0 +1,152 @@
+package com.example.owen.voicememos;
+/*
+Owen Brown - 4838488
+Chang Ding - 5275821
+ */
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * fills in the file columns of the recordings (duration, size, codec, rate, channels) so that
+ * the screens can sort and filter on them without opening the files
+ * scanLibrary() reads the header of every recording whose file time is not the one in its row,
+ * in the background, and writes BATCH_SIZE rows per transaction. recordings without a
+ * recorded_at (e.g. from before version 7 of the database) get it from their date text, or else
+ * from the time of their file
+ */
+public class MetadataBackfill {
+    private static final String TAG = "MetadataBackfill";
+    private static final int BATCH_SIZE = 50;
+
+    //update the rows of the recordings that changed, in the background. does nothing if a scan
+    //is already running
+    public static void scanLibrary(Context context) {
+        final Context appContext = context.getApplicationContext();
+        VoiceMemosApplication.runOnce(TAG, new Runnable() {
+            @Override
+            public void run() {
+                scan(appContext);
+            }
+        });
+    }
+
+    private static void scan(Context context) {
+        MyDatabaseHelper dbHelper = VoiceMemosApplication.getDatabaseHelper(context);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        List<Integer> ids = new ArrayList<Integer>();
+        List<String> filenames = new ArrayList<String>();
+        List<Long> mtimes = new ArrayList<Long>();
+        //the date text of the recordings without a recorded_at, null for the others
+        List<String> dates = new ArrayList<String>();
+        Cursor cursor = db.rawQuery(
+                "SELECT id, filename, file_mtime, recorded_at, date FROM RECORDINGS", null);
+        try {
+            while (cursor.moveToNext()) {
+                ids.add(cursor.getInt(0));
+                filenames.add(cursor.getString(1));
+                mtimes.add(cursor.isNull(2) ? -1 : cursor.getLong(2));
+                dates.add(cursor.isNull(3) ? cursor.getString(4) : null);
+            }
+        } finally {
+            cursor.close();
+        }
+        DateFormat dateFormat = DateFormat.getDateTimeInstance();
+        List<ContentValues> batch = new ArrayList<ContentValues>();
+        List<Integer> batchIds = new ArrayList<Integer>();
+        for (int i = 0; i < ids.size(); i++) {
+            File file = RecordingFiles.getFile(filenames.get(i));
+            ContentValues values = null;
+            if (file.exists() && file.lastModified() != mtimes.get(i)) {
+                try {
+                    values = probe(file);
+                } catch (IOException e) {
+                    Log.w(TAG, "could not read " + file, e);
+                }
+            }
+            if (dates.get(i) != null) {
+                long recordedAt = parseDate(dateFormat, dates.get(i));
+                if (recordedAt < 0 && file.exists()) {
+                    recordedAt = file.lastModified();
+                }
+                if (recordedAt >= 0) {
+                    if (values == null) {
+                        values = new ContentValues();
+                    }
+                    values.put("recorded_at", recordedAt);
+                }
+            }
+            if (values == null) {
+                continue;
+            }
+            batch.add(values);
+            batchIds.add(ids.get(i));
+            if (batch.size() == BATCH_SIZE) {
+                write(db, batchIds, batch);
+            }
+        }
+        write(db, batchIds, batch);
+    }
+
+    //the time of a date text of RecordVoice, -1 if it is not in the format of this locale
+    private static long parseDate(DateFormat format, String date) {
+        try {
+            return format.parse(date).getTime();
+        } catch (ParseException e) {
+            return -1;
+        }
+    }
+
+    //the file columns of a recording, from its header
+    static ContentValues probe(File file) throws IOException {
+        ContentValues values = new ContentValues();
+        values.put("file_mtime", file.lastModified());
+        values.put("size_bytes", file.length());
+        MediaExtractor extractor = new MediaExtractor();
+        try {
+            extractor.setDataSource(file.getPath());
+            for (int i = 0; i < extractor.getTrackCount(); i++) {
+                MediaFormat format = extractor.getTrackFormat(i);
+                String mime = format.getString(MediaFormat.KEY_MIME);
+                if (mime.startsWith("audio/")) {
+                    values.put("codec", mime);
+                    values.put("sample_rate", format.getInteger(MediaFormat.KEY_SAMPLE_RATE));
+                    values.put("channels", format.getInteger(MediaFormat.KEY_CHANNEL_COUNT));
+                    if (format.containsKey(MediaFormat.KEY_DURATION)) {
+                        values.put("duration_ms", format.getLong(MediaFormat.KEY_DURATION) / 1000);
+                    }
+                    return values;
+                }
+            }
+            throw new IOException("No audio track found in " + file);
+        } finally {
+            extractor.release();
+        }
+    }
+
+    //write the batch in one transaction, and empty it
+    private static void write(SQLiteDatabase db, List<Integer> ids, List<ContentValues> batch) {
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < batch.size(); i++) {
+                db.update("RECORDINGS", batch.get(i), "id = " + ids.get(i), null);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        ids.clear();
+        batch.clear();
+    }
+}
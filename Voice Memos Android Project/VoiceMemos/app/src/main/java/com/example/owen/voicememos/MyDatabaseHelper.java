@@ -6,15 +6,89 @@ Chang Ding - 5275821
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Handler;
+import android.os.Looper;
 import android.widget.Toast;
 
 public class MyDatabaseHelper extends SQLiteOpenHelper {
+    public static final String DB_NAME = "RecordingsData.db";
+    //bump it when adding a table, and add the step to onUpgrade
+    public static final int DB_VERSION = 8;
+
     //create the recordings table
+    //date is for display, recorded_at (ms since 1970) for sorting. the file columns are filled in
+    //by MetadataBackfill, for the file time in file_mtime
     public static final String CREATE_RECORDING = "CREATE TABLE RECORDINGS ("
             +"id INTEGER PRIMARY KEY AUTOINCREMENT, "
             +"date TEXT, "
             +"filename TEXT,"
-            +"note TEXT )";
+            +"note TEXT, "
+            +"recorded_at INTEGER, "
+            +"duration_ms INTEGER, "
+            +"size_bytes INTEGER, "
+            +"codec TEXT, "
+            +"sample_rate INTEGER, "
+            +"channels INTEGER, "
+            +"file_mtime INTEGER )";
+    //the columns version 7 added to the recordings
+    private static final String[] METADATA_COLUMNS = {
+            "recorded_at INTEGER", "duration_ms INTEGER", "size_bytes INTEGER", "codec TEXT",
+            "sample_rate INTEGER", "channels INTEGER", "file_mtime INTEGER"};
+    public static final String CREATE_RECORDINGS_TIME_INDEX =
+            "CREATE INDEX recordings_time ON RECORDINGS (recorded_at, id)";
+    public static final String CREATE_RECORDINGS_FILENAME_INDEX =
+            "CREATE INDEX recordings_filename ON RECORDINGS (filename)";
+    //silence map of each recording (see SilenceMap), with the file time it was computed for
+    public static final String CREATE_SILENCE = "CREATE TABLE SILENCE ("
+            +"recording_id INTEGER PRIMARY KEY, "
+            +"file_mtime INTEGER, "
+            +"map BLOB )";
+    //loudness of each recording (see LoudnessAnalyzer), in LUFS and dBTP
+    public static final String CREATE_LOUDNESS = "CREATE TABLE LOUDNESS ("
+            +"recording_id INTEGER PRIMARY KEY, "
+            +"file_mtime INTEGER, "
+            +"integrated REAL, "
+            +"short_term_max REAL, "
+            +"true_peak REAL )";
+    //edits of each recording (see EditDecisionList), the kept ranges in sample frames as a blob,
+    //NULL for the whole recording
+    public static final String CREATE_EDITS = "CREATE TABLE EDITS ("
+            +"recording_id INTEGER PRIMARY KEY, "
+            +"kept BLOB, "
+            +"gain_db REAL, "
+            +"speed REAL, "
+            +"noise_reduction REAL )";
+    //checkpoint of the AAC conversion of each recording (see ArchiveTranscoder), with the file
+    //time it was done for
+    public static final String CREATE_TRANSCODE = "CREATE TABLE TRANSCODE ("
+            +"recording_id INTEGER PRIMARY KEY, "
+            +"file_mtime INTEGER, "
+            +"state INTEGER )";
+    //storage tiering of each recording (see StorageTierService): its size before and after, the
+    //same if it was left as it was
+    public static final String CREATE_TIERS = "CREATE TABLE TIERS ("
+            +"recording_id INTEGER PRIMARY KEY, "
+            +"file_mtime INTEGER, "
+            +"original_bytes INTEGER, "
+            +"tiered_bytes INTEGER )";
+    //full text index of the names and notes (with the labels of their markers) of the
+    //recordings, see NoteSearch. the text is not copied, it is read from RECORDINGS
+    //(content=), and the triggers below keep the index in step with it
+    public static final String CREATE_NOTES_FTS = "CREATE VIRTUAL TABLE NOTES_FTS USING fts4("
+            +"filename, note, content=\"RECORDINGS\", prefix=\"2,3\" )";
+    public static final String[] CREATE_NOTES_FTS_TRIGGERS = {
+            "CREATE TRIGGER notes_fts_insert AFTER INSERT ON RECORDINGS BEGIN "
+                    +"INSERT INTO NOTES_FTS (docid, filename, note) "
+                    +"VALUES (new.id, new.filename, new.note); END",
+            "CREATE TRIGGER notes_fts_before_update BEFORE UPDATE OF filename, note ON RECORDINGS BEGIN "
+                    +"INSERT INTO NOTES_FTS (NOTES_FTS, docid, filename, note) "
+                    +"VALUES ('delete', old.id, old.filename, old.note); END",
+            "CREATE TRIGGER notes_fts_after_update AFTER UPDATE OF filename, note ON RECORDINGS BEGIN "
+                    +"INSERT INTO NOTES_FTS (docid, filename, note) "
+                    +"VALUES (new.id, new.filename, new.note); END",
+            "CREATE TRIGGER notes_fts_delete BEFORE DELETE ON RECORDINGS BEGIN "
+                    +"INSERT INTO NOTES_FTS (NOTES_FTS, docid, filename, note) "
+                    +"VALUES ('delete', old.id, old.filename, old.note); END"};
 
     private Context mContext;
 
@@ -26,12 +100,61 @@ public class MyDatabaseHelper extends SQLiteOpenHelper {
     public void onCreate(SQLiteDatabase db){
         //create tables
         db.execSQL(CREATE_RECORDING);
-        Toast.makeText(mContext, "Database Create succeeded", Toast.LENGTH_SHORT).show();
+        db.execSQL(CREATE_RECORDINGS_TIME_INDEX);
+        db.execSQL(CREATE_RECORDINGS_FILENAME_INDEX);
+        db.execSQL(CREATE_SILENCE);
+        db.execSQL(CREATE_LOUDNESS);
+        db.execSQL(CREATE_EDITS);
+        db.execSQL(CREATE_TRANSCODE);
+        db.execSQL(CREATE_TIERS);
+        createNotesIndex(db);
+        //the database is opened in the background, the toast has to show on the main thread
+        new Handler(Looper.getMainLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                Toast.makeText(mContext, "Database Create succeeded", Toast.LENGTH_SHORT).show();
+            }
+        });
     }
 
+    //upgrade one version at a time, never dropping the recordings
+    //called from a background thread (see MainActivity). the new columns of the recordings are
+    //filled in later, in batches, by MetadataBackfill
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion){
-        db.execSQL("drop table if exists RECORDINGS");
-        onCreate(db);
+        if (oldVersion < 2) {
+            db.execSQL(CREATE_SILENCE);
+        }
+        if (oldVersion < 3) {
+            db.execSQL(CREATE_LOUDNESS);
+        }
+        if (oldVersion < 4) {
+            db.execSQL(CREATE_EDITS);
+        }
+        if (oldVersion < 5) {
+            db.execSQL(CREATE_TRANSCODE);
+        }
+        if (oldVersion < 6) {
+            db.execSQL(CREATE_TIERS);
+        }
+        if (oldVersion < 7) {
+            for (String column : METADATA_COLUMNS) {
+                db.execSQL("ALTER TABLE RECORDINGS ADD COLUMN " + column);
+            }
+            db.execSQL(CREATE_RECORDINGS_TIME_INDEX);
+            db.execSQL(CREATE_RECORDINGS_FILENAME_INDEX);
+        }
+        if (oldVersion < 8) {
+            createNotesIndex(db);
+            //index the recordings that are already there
+            db.execSQL("INSERT INTO NOTES_FTS (NOTES_FTS) VALUES ('rebuild')");
+        }
+    }
+
+    private static void createNotesIndex(SQLiteDatabase db) {
+        db.execSQL(CREATE_NOTES_FTS);
+        for (String trigger : CREATE_NOTES_FTS_TRIGGERS) {
+            db.execSQL(trigger);
+        }
     }
 
 
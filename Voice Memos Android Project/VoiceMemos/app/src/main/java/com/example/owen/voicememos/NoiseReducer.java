@@ -0,0 +1,363 @@
+package com.example.owen.voicememos;
+/*
+Owen Brown - 4838488
+Chang Ding - 5275821
+ */
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.Future;
+
+/**
+ * spectral noise reduction, for memos recorded in cars, cafes...
+ * STFT of ~32ms frames with 50% overlap (square root hann window on both sides, so the overlap
+ * add gives the input back when nothing is changed). the noise spectrum is the mean spectrum of
+ * the 10% quietest frames of the recording, measured in parallel on a pool shared by all the
+ * reducers. each bin of each frame is then scaled by a Wiener gain, floored so that the noise is
+ * turned down rather than removed (removing it leaves "musical noise"), by a Processor that
+ * streams the samples block by block, one STFT frame behind its input
+ */
+public class NoiseReducer {
+    private static final String TAG = "NoiseReducer";
+    //fraction of the frames taken as the noise
+    private static final float NOISE_FRACTION = 0.1f;
+    //subtract a bit more than the mean noise, it varies from frame to frame
+    private static final float OVER_SUBTRACTION = 1.5f;
+    //STFT frames per parallel task
+    private static final int BLOCKS_PER_TASK = 512;
+
+    private static ExecutorService sExecutor;
+
+    private final int mChannels;
+    private final int mSize;
+    private final int mHop;
+    private final Fft mFft;
+    private final float[] mWindow;
+    private final float mFloor;     //lowest gain, linear
+
+    //reductionDb: how much the noise is turned down, e.g. 12
+    public NoiseReducer(int sampleRate, int channels, float reductionDb) {
+        mChannels = channels;
+        int size = 256;
+        while (size < sampleRate * 0.032) {
+            size *= 2;
+        }
+        mSize = size;
+        mHop = size / 2;
+        mFft = new Fft(size);
+        mWindow = new float[size];
+        for (int i = 0; i < size; i++) {
+            mWindow[i] = (float) Math.sqrt(0.5 - 0.5 * Math.cos(2 * Math.PI * i / size));
+        }
+        mFloor = (float) Math.pow(10, -reductionDb / 20);
+    }
+
+    //frames a Processor gives its input back after
+    public int getLatency() {
+        return mSize;
+    }
+
+    //the noise spectrum of the numFrames interleaved frames from the position of samples, on all
+    //the cores. samples is only read with absolute gets, its position does not change. null if
+    //every frame is digital silence, there is no noise to reduce then
+    public float[][] noiseProfile(ShortBuffer samples, int numFrames) {
+        int numStftFrames = (numFrames + mHop - 1) / mHop + 1;
+        return noiseProfile(getExecutor(), samples.duplicate(), samples.position(), numFrames,
+                numStftFrames);
+    }
+
+    //a processor that turns down the noise of the given profile. its output is its input
+    //getLatency() frames later, the first frames it gives are silence
+    public AudioProcessor createProcessor(float[][] noise) {
+        return new Processor(noise);
+    }
+
+    //one pool for all the reducers, a thread per core. its threads do not keep the process alive
+    private static synchronized ExecutorService getExecutor() {
+        if (sExecutor == null) {
+            sExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                    new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r, TAG);
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+        }
+        return sExecutor;
+    }
+
+    //mean power spectrum of the quietest frames, per channel. null if every frame is silent
+    private float[][] noiseProfile(ExecutorService pool, final ShortBuffer source, final int base,
+                                   final int numFrames, final int numStftFrames) {
+        //energy of every frame, in parallel
+        final float[] energies = new float[numStftFrames];
+        List<Future<Void>> tasks = new ArrayList<Future<Void>>();
+        for (int f = 0; f < numStftFrames; f += BLOCKS_PER_TASK) {
+            final int first = f;
+            final int last = Math.min(numStftFrames, f + BLOCKS_PER_TASK);
+            tasks.add(pool.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    float[] frame = new float[mSize];
+                    for (int i = first; i < last; i++) {
+                        float energy = 0;
+                        for (int c = 0; c < mChannels; c++) {
+                            readFrame(source, base, numFrames, c, i, frame);
+                            for (float x : frame) {
+                                energy += x * x;
+                            }
+                        }
+                        energies[i] = energy;
+                    }
+                    return null;
+                }
+            }));
+        }
+        waitFor(tasks);
+
+        //the quietest frames that are not digital silence (muted input). the first and last
+        //frames are partly padding, so they only count in recordings too short for anything else
+        if (numStftFrames > 2) {
+            energies[0] = 0;
+            energies[numStftFrames - 1] = 0;
+        }
+        float[] sorted = new float[numStftFrames];
+        int numSounding = 0;
+        for (float energy : energies) {
+            if (energy > 0) {
+                sorted[numSounding++] = energy;
+            }
+        }
+        if (numSounding == 0) {
+            return null;
+        }
+        Arrays.sort(sorted, 0, numSounding);
+        float threshold = sorted[(int) ((numSounding - 1) * NOISE_FRACTION)];
+
+        //sum their spectra, in parallel
+        final int bins = mSize / 2 + 1;
+        List<Future<double[][]>> sums = new ArrayList<Future<double[][]>>();
+        for (int f = 0; f < numStftFrames; f += BLOCKS_PER_TASK) {
+            final int[] selected = new int[Math.min(BLOCKS_PER_TASK, numStftFrames - f)];
+            int count = 0;
+            for (int i = f; i < f + selected.length; i++) {
+                if (energies[i] > 0 && energies[i] <= threshold) {
+                    selected[count++] = i;
+                }
+            }
+            if (count == 0) {
+                continue;
+            }
+            final int numSelected = count;
+            sums.add(pool.submit(new Callable<double[][]>() {
+                @Override
+                public double[][] call() {
+                    double[][] sum = new double[mChannels][bins];
+                    float[] re = new float[mSize];
+                    float[] im = new float[mSize];
+                    float[] powerX = new float[bins];
+                    float[] powerY = new float[bins];
+                    for (int c = 0; c < mChannels; c++) {
+                        for (int i = 0; i < numSelected; i += 2) {
+                            readFrame(source, base, numFrames, c, selected[i], re);
+                            if (i + 1 < numSelected) {
+                                readFrame(source, base, numFrames, c, selected[i + 1], im);
+                            } else {
+                                Arrays.fill(im, 0);
+                            }
+                            mFft.forward(re, im);
+                            mFft.splitPowers(re, im, powerX, powerY);
+                            for (int k = 0; k < bins; k++) {
+                                sum[c][k] += powerX[k];
+                                if (i + 1 < numSelected) {
+                                    sum[c][k] += powerY[k];
+                                }
+                            }
+                        }
+                    }
+                    return sum;
+                }
+            }));
+        }
+        double[][] total = new double[mChannels][bins];
+        int numNoiseFrames = 0;
+        for (float energy : energies) {
+            if (energy > 0 && energy <= threshold) {
+                numNoiseFrames++;
+            }
+        }
+        for (Future<double[][]> sum : sums) {
+            double[][] part = get(sum);
+            for (int c = 0; c < mChannels; c++) {
+                for (int k = 0; k < bins; k++) {
+                    total[c][k] += part[c][k];
+                }
+            }
+        }
+        float[][] noise = new float[mChannels][bins];
+        for (int c = 0; c < mChannels; c++) {
+            for (int k = 0; k < bins; k++) {
+                noise[c][k] = (float) (total[c][k] / numNoiseFrames);
+            }
+        }
+        return noise;
+    }
+
+    //windowed samples of one channel of STFT frame f, 0 outside of the recording
+    private void readFrame(ShortBuffer source, int base, int numFrames, int channel, int f,
+                           float[] dst) {
+        int first = (f - 1) * mHop;
+        for (int i = 0; i < mSize; i++) {
+            int frame = first + i;
+            if (frame < 0 || frame >= numFrames) {
+                dst[i] = 0;
+            } else {
+                dst[i] = source.get(base + frame * mChannels + channel) / 32768f * mWindow[i];
+            }
+        }
+    }
+
+    //gain of every bin, smoothed over neighbouring bins against musical noise
+    private void wienerGains(float[] power, float[] noise, float[] gains, float[] raw) {
+        for (int k = 0; k < power.length; k++) {
+            float gain = (power[k] > 0) ? 1 - OVER_SUBTRACTION * noise[k] / power[k] : 0;
+            raw[k] = Math.max(mFloor, gain);
+        }
+        int last = power.length - 1;
+        for (int k = 0; k <= last; k++) {
+            float left = raw[Math.max(0, k - 1)];
+            float right = raw[Math.min(last, k + 1)];
+            gains[k] = 0.25f * left + 0.5f * raw[k] + 0.25f * right;
+        }
+    }
+
+    //scale X by gainX and Y by gainY in the combined spectrum. the gains are real and the same
+    //for k and N-k, so both frames stay real
+    private void applyGains(float[] re, float[] im, float[] gainX, float[] gainY) {
+        int half = mSize / 2;
+        re[0] *= gainX[0];
+        im[0] *= gainY[0];
+        re[half] *= gainX[half];
+        im[half] *= gainY[half];
+        for (int k = 1; k < half; k++) {
+            int n = mSize - k;
+            float s = (gainX[k] + gainY[k]) * 0.5f;
+            float t = (gainX[k] - gainY[k]) * 0.5f;
+            float a = re[k];
+            float b = im[k];
+            float c = re[n];
+            float d = im[n];
+            re[k] = s * a + t * c;
+            im[k] = s * b - t * d;
+            re[n] = s * c + t * a;
+            im[n] = s * d - t * b;
+        }
+    }
+
+    /**
+     * the gains applied as the samples stream through, one STFT frame at a time
+     * each input frame goes in the second half of the frame, the first half being the hop before.
+     * when it is full it is transformed, and its first half, overlap added with the frame before,
+     * is complete: it is what the next hop of input is swapped for
+     */
+    private class Processor implements AudioProcessor {
+        private final float[][] mNoise;
+        private final float[][] mInput;     //per channel, the last mSize frames
+        private final float[][] mSum;       //per channel, overlap add of the frames so far
+        private final float[][] mReady;     //per channel, the hop of output given next
+        private int mFill = 0;              //frames of the current hop taken in
+        private final float[] mRe;
+        private final float[] mIm;
+        private final float[] mPowerX;
+        private final float[] mPowerY;
+        private final float[] mGainX;
+        private final float[] mGainY;
+        private final float[] mSmoothed;
+
+        Processor(float[][] noise) {
+            mNoise = noise;
+            mInput = new float[mChannels][mSize];
+            mSum = new float[mChannels][mSize];
+            mReady = new float[mChannels][mHop];
+            int bins = mSize / 2 + 1;
+            mRe = new float[mSize];
+            mIm = new float[mSize];
+            mPowerX = new float[bins];
+            mPowerY = new float[bins];
+            mGainX = new float[bins];
+            mGainY = new float[bins];
+            mSmoothed = new float[bins];
+        }
+
+        @Override
+        public void process(float[] samples, int numFrames, long position) {
+            int o = 0;
+            for (int i = 0; i < numFrames; i++) {
+                for (int c = 0; c < mChannels; c++) {
+                    mInput[c][mHop + mFill] = samples[o];
+                    samples[o++] = mReady[c][mFill];
+                }
+                if (++mFill == mHop) {
+                    transformFrame();
+                    mFill = 0;
+                }
+            }
+        }
+
+        //reduce the noise of the frame in mInput, two channels at a time through one complex FFT
+        private void transformFrame() {
+            for (int c = 0; c < mChannels; c += 2) {
+                boolean pair = c + 1 < mChannels;
+                for (int i = 0; i < mSize; i++) {
+                    mRe[i] = mInput[c][i] * mWindow[i];
+                    mIm[i] = pair ? mInput[c + 1][i] * mWindow[i] : 0;
+                }
+                mFft.forward(mRe, mIm);
+                mFft.splitPowers(mRe, mIm, mPowerX, mPowerY);
+                wienerGains(mPowerX, mNoise[c], mGainX, mSmoothed);
+                if (pair) {
+                    wienerGains(mPowerY, mNoise[c + 1], mGainY, mSmoothed);
+                }
+                applyGains(mRe, mIm, mGainX, pair ? mGainY : mGainX);
+                mFft.inverse(mRe, mIm);
+                for (int i = 0; i < mSize; i++) {
+                    mSum[c][i] += mRe[i] * mWindow[i];
+                    if (pair) {
+                        mSum[c + 1][i] += mIm[i] * mWindow[i];
+                    }
+                }
+            }
+            for (int c = 0; c < mChannels; c++) {
+                System.arraycopy(mSum[c], 0, mReady[c], 0, mHop);
+                System.arraycopy(mSum[c], mHop, mSum[c], 0, mHop);
+                Arrays.fill(mSum[c], mHop, mSize, 0f);
+                System.arraycopy(mInput[c], mHop, mInput[c], 0, mHop);
+            }
+        }
+    }
+
+    private static <T> void waitFor(List<Future<T>> tasks) {
+        for (Future<T> task : tasks) {
+            get(task);
+        }
+    }
+
+    private static <T> T get(Future<T> task) {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while reducing noise", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+}
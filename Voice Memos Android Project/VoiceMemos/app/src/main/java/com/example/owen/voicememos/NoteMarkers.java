@@ -0,0 +1,40 @@
+package com.example.owen.voicememos;
+/*
+Owen Brown - 4838488
+Chang Ding - 5275821
+ */
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * the time markers in the notes of the recordings, e.g. "@1:05:" for 1 minute 5 seconds in
+ * RecordVoice inserts them, MemoMerger moves them when it merges notes, and NoteSearch finds the
+ * one before a match
+ */
+public class NoteMarkers {
+    //the minutes in group 1, the seconds in group 2
+    private static final Pattern MARKER = Pattern.compile("@(\\d+):(\\d{2}):");
+
+    private NoteMarkers() {
+    }
+
+    //a matcher of the markers in a note, see getSeconds()
+    public static Matcher matcher(String note) {
+        return MARKER.matcher(note);
+    }
+
+    //the time of the marker the matcher found, in seconds
+    public static long getSeconds(Matcher matcher) {
+        return Long.parseLong(matcher.group(1)) * 60 + Long.parseLong(matcher.group(2));
+    }
+
+    //the marker of a time, e.g. "@1:05:"
+    public static String format(long seconds) {
+        return "@" + formatTime(seconds) + ":";
+    }
+
+    //like the timer of RecordVoice, e.g. "1:05"
+    public static String formatTime(long seconds) {
+        return String.format("%d:%02d", seconds / 60, seconds % 60);
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.owen.voicememos;
+/*
+Owen Brown - 4838488
+Chang Ding - 5275821
+ */
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+
+/**
+ * search of the names and notes of the recordings, on the NOTES_FTS index
+ * every word typed is a prefix ("meet" finds "meeting"), all of them have to be found. the
+ * matches are ranked by BM25 from matchinfo(), a match in the name counting more than one in the
+ * note, and only the best ones get a snippet and the marker their first match comes after.
+ * blocks, call it off the main thread
+ */
+public class NoteSearch {
+    //columns of NOTES_FTS
+    private static final int COLUMN_NOTE = 1;
+    private static final double[] COLUMN_WEIGHTS = {2.0, 1.0};
+    //BM25 constants
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    //a recording found
+    public static class Result {
+        public final int id;
+        public final double score;
+        //the text around the matches, the words found in [ ]
+        public String snippet;
+        //time of the marker before the first match in the note, -1 if there is none
+        public long markerMs = -1;
+
+        Result(int id, double score) {
+            this.id = id;
+            this.score = score;
+        }
+    }
+
+    private NoteSearch() {
+    }
+
+    //the best matches of the text typed, at most limit of them, the best first. empty if nothing
+    //was typed
+    public static List<Result> search(SQLiteDatabase db, String text, int limit) {
+        String query = toQuery(text);
+        List<Result> results = new ArrayList<Result>();
+        if (query == null) {
+            return results;
+        }
+        Cursor cursor = db.rawQuery("SELECT docid, matchinfo(NOTES_FTS, 'pcnalx') FROM NOTES_FTS "
+                + "WHERE NOTES_FTS MATCH ?", new String[]{query});
+        try {
+            while (cursor.moveToNext()) {
+                results.add(new Result(cursor.getInt(0), rank(cursor.getBlob(1))));
+            }
+        } finally {
+            cursor.close();
+        }
+        Collections.sort(results, new Comparator<Result>() {
+            @Override
+            public int compare(Result a, Result b) {
+                return Double.compare(b.score, a.score);
+            }
+        });
+        if (results.size() > limit) {
+            results = new ArrayList<Result>(results.subList(0, limit));
+        }
+        addSnippets(db, query, results);
+        return results;
+    }
+
+    //the words typed as an FTS query: each one a prefix, anything else dropped so that a half
+    //typed query is never a syntax error. null if there are no words
+    static String toQuery(String text) {
+        StringBuilder query = new StringBuilder();
+        for (String word : text.split("[^\\p{L}\\p{Nd}]+")) {
+            if (word.length() > 0) {
+                query.append(query.length() == 0 ? "" : " ").append(word).append('*');
+            }
+        }
+        return query.length() == 0 ? null : query.toString();
+    }
+
+    //Okapi BM25 of a row, from matchinfo 'pcnalx'
+    static double rank(byte[] blob) {
+        IntBuffer info = ByteBuffer.wrap(blob).order(ByteOrder.nativeOrder()).asIntBuffer();
+        int phrases = info.get(0);
+        int columns = info.get(1);
+        long rows = info.get(2) & 0xffffffffL;
+        int averageStart = 3;
+        int lengthStart = averageStart + columns;
+        int hitsStart = lengthStart + columns;
+        double score = 0;
+        for (int p = 0; p < phrases; p++) {
+            for (int c = 0; c < columns && c < COLUMN_WEIGHTS.length; c++) {
+                int hits = hitsStart + 3 * (p * columns + c);
+                double inRow = info.get(hits);
+                long rowsWithHits = info.get(hits + 2) & 0xffffffffL;
+                if (inRow == 0) {
+                    continue;
+                }
+                //at least a little, a word in every note still counts
+                double idf = Math.max(0.01,
+                        Math.log((rows - rowsWithHits + 0.5) / (rowsWithHits + 0.5)));
+                double average = Math.max(1, info.get(averageStart + c));
+                double length = info.get(lengthStart + c);
+                score += COLUMN_WEIGHTS[c] * idf * inRow * (K1 + 1)
+                        / (inRow + K1 * (1 - B + B * length / average));
+            }
+        }
+        return score;
+    }
+
+    //the snippets and markers of the results, one query for all of them
+    private static void addSnippets(SQLiteDatabase db, String query, List<Result> results) {
+        if (results.isEmpty()) {
+            return;
+        }
+        Map<Integer, Result> byId = new HashMap<Integer, Result>();
+        StringBuilder in = new StringBuilder();
+        for (Result result : results) {
+            byId.put(result.id, result);
+            in.append(in.length() == 0 ? "" : ",").append(result.id);
+        }
+        Cursor cursor = db.rawQuery("SELECT docid, snippet(NOTES_FTS, '[', ']', '...', -1, 10), "
+                + "offsets(NOTES_FTS), note FROM NOTES_FTS "
+                + "WHERE NOTES_FTS MATCH ? AND docid IN (" + in + ")", new String[]{query});
+        try {
+            while (cursor.moveToNext()) {
+                Result result = byId.get(cursor.getInt(0));
+                result.snippet = cursor.getString(1);
+                if (!cursor.isNull(3)) {
+                    result.markerMs = findMarker(cursor.getString(3), cursor.getString(2));
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    //the time of the last marker before the first match in the note, -1 if there is none.
+    //offsets() gives "column term byte-offset size" for each match, the offsets in UTF-8
+    static long findMarker(String note, String offsets) {
+        String[] values = offsets.split(" ");
+        int first = -1;
+        for (int i = 0; i + 3 < values.length; i += 4) {
+            if (Integer.parseInt(values[i]) == COLUMN_NOTE) {
+                int offset = Integer.parseInt(values[i + 2]);
+                first = (first < 0) ? offset : Math.min(first, offset);
+            }
+        }
+        if (first < 0) {
+            return -1;
+        }
+        int end;
+        try {
+            byte[] utf8 = note.getBytes("UTF-8");
+            end = new String(utf8, 0, Math.min(first, utf8.length), "UTF-8").length();
+        } catch (UnsupportedEncodingException e) {
+            //every Java has UTF-8
+            throw new AssertionError(e);
+        }
+        long markerMs = -1;
+        Matcher matcher = NoteMarkers.matcher(note);
+        while (matcher.find() && matcher.start() <= end) {
+            markerMs = NoteMarkers.getSeconds(matcher) * 1000;
+        }
+        return markerMs;
+    }
+}
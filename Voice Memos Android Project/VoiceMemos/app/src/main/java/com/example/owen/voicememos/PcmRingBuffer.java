@@ -0,0 +1,121 @@
+package com.example.owen.voicememos;
+/*
+Owen Brown - 4838488
+Chang Ding - 5275821
+ */
+
+/**
+ * fixed size fifo of interleaved 16 bit frames, between one writer thread and one reader thread
+ * clear() starts a new generation: writes still tagged with an older generation (e.g. from a
+ * decoder that has not seen a seek yet) are dropped, so the reader never gets stale samples.
+ * the reader also knows the source position of the next frame it reads, which is what makes
+ * sample accurate positions possible. nothing is allocated after the constructor
+ */
+public class PcmRingBuffer {
+    private final short[] mBuffer;
+    private final int mChannels;
+    private final int mCapacity;      //in frames
+    private int mReadIndex = 0;       //in frames
+    private int mFrames = 0;          //frames buffered
+    private long mPosition = 0;       //source position of the frame at mReadIndex
+    private int mGeneration = 0;
+    private boolean mEndOfStream = false;
+
+    public PcmRingBuffer(int capacityFrames, int channels) {
+        mCapacity = capacityFrames;
+        mChannels = channels;
+        mBuffer = new short[capacityFrames * channels];
+    }
+
+    public int getChannels() {
+        return mChannels;
+    }
+
+    //drop everything buffered, the next frame written is at the source position startFrame
+    //returns the generation the writer must use from now on
+    public synchronized int clear(long startFrame) {
+        mReadIndex = 0;
+        mFrames = 0;
+        mPosition = startFrame;
+        mEndOfStream = false;
+        mGeneration++;
+        notifyAll();
+        return mGeneration;
+    }
+
+    public synchronized int getGeneration() {
+        return mGeneration;
+    }
+
+    //copy up to numFrames frames from src (starting at frame offset), without blocking
+    //returns the number of frames taken, 0 if the generation is not the current one
+    public synchronized int write(short[] src, int offset, int numFrames, int generation) {
+        if (generation != mGeneration || mEndOfStream) {
+            return 0;
+        }
+        int count = Math.min(numFrames, mCapacity - mFrames);
+        int writeIndex = (mReadIndex + mFrames) % mCapacity;
+        int first = Math.min(count, mCapacity - writeIndex);
+        System.arraycopy(src, offset * mChannels, mBuffer, writeIndex * mChannels,
+                first * mChannels);
+        System.arraycopy(src, (offset + first) * mChannels, mBuffer, 0,
+                (count - first) * mChannels);
+        mFrames += count;
+        if (count > 0) {
+            notifyAll();
+        }
+        return count;
+    }
+
+    //no more frames will be written in this generation
+    public synchronized void setEndOfStream(int generation) {
+        if (generation == mGeneration) {
+            mEndOfStream = true;
+            notifyAll();
+        }
+    }
+
+    //copy up to maxFrames frames into dst, without blocking. returns the number of frames read
+    public synchronized int read(short[] dst, int maxFrames) {
+        int count = Math.min(maxFrames, mFrames);
+        int first = Math.min(count, mCapacity - mReadIndex);
+        System.arraycopy(mBuffer, mReadIndex * mChannels, dst, 0, first * mChannels);
+        System.arraycopy(mBuffer, 0, dst, first * mChannels, (count - first) * mChannels);
+        mReadIndex = (mReadIndex + count) % mCapacity;
+        mFrames -= count;
+        mPosition += count;
+        if (count > 0) {
+            notifyAll();
+        }
+        return count;
+    }
+
+    //source position of the next frame read()
+    public synchronized long getPosition() {
+        return mPosition;
+    }
+
+    public synchronized int available() {
+        return mFrames;
+    }
+
+    //true once every frame of the stream has been read
+    public synchronized boolean isDrained() {
+        return mEndOfStream && mFrames == 0;
+    }
+
+    //wait until there is something to read, or the stream ended, or timeoutMs passed
+    public synchronized void waitForData(long timeoutMs) throws InterruptedException {
+        if (mFrames == 0 && !mEndOfStream) {
+            wait(timeoutMs);
+        }
+    }
+
+    //wait until there is room to write, or the generation changed, or timeoutMs passed
+    public synchronized void waitForSpace(int generation, long timeoutMs)
+            throws InterruptedException {
+        if (mFrames == mCapacity && generation == mGeneration) {
+            wait(timeoutMs);
+        }
+    }
+}
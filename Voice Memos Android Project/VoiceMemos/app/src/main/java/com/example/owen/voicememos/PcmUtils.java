@@ -0,0 +1,178 @@
+package com.example.owen.voicememos;
+/*
+Owen Brown - 4838488
+Chang Ding - 5275821
+ */
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * sample level helpers used by SoundFile
+ */
+class PcmUtils {
+
+    private PcmUtils() {
+    }
+
+    // Compute the gain of each frame: the square root of the max absolute value of the samples
+    // (averaged over the channels) in that frame. The samples are read from the current position of
+    // the buffer, which is left at the end of the data afterwards.
+    static void computeFrameGains(ShortBuffer samples, int channels, int samplesPerFrame,
+                                  int[] frameGains) {
+        int gain, value;
+        for (int i = 0; i < frameGains.length; i++) {
+            gain = -1;
+            for (int j = 0; j < samplesPerFrame; j++) {
+                value = 0;
+                for (int k = 0; k < channels; k++) {
+                    if (samples.remaining() > 0) {
+                        value += Math.abs(samples.get());
+                    }
+                }
+                value /= channels;
+                if (gain < value) {
+                    gain = value;
+                }
+            }
+            frameGains[i] = (int) Math.sqrt(gain);
+        }
+    }
+
+    // Copy numSamples samples from src to dst, padding with 0s if src runs out of samples.
+    static void copySamples(ShortBuffer src, ShortBuffer dst, int numSamples) {
+        int count = Math.min(numSamples, src.remaining());
+        int limit = src.limit();
+        src.limit(src.position() + count);
+        dst.put(src);
+        src.limit(limit);
+        for (int i = count; i < numSamples; i++) {
+            dst.put((short) 0);
+        }
+    }
+
+    // Write numSamples mono samples from src to dst as interleaved stereo, by duplicating each
+    // sample. Pads with 0s if src runs out of samples.
+    static void upmixMonoToStereo(ShortBuffer src, ShortBuffer dst, int numSamples) {
+        int count = Math.min(numSamples, src.remaining());
+        short value;
+        for (int i = 0; i < count; i++) {
+            value = src.get();
+            dst.put(value);
+            dst.put(value);
+        }
+        for (int i = count; i < numSamples; i++) {
+            dst.put((short) 0);
+            dst.put((short) 0);
+        }
+    }
+
+    // Get a rough estimate of the total size needed to hold the decoded stream, based on how much of
+    // the file has been read so far. Allocate 20% more, and make sure to allocate at least 5MB more
+    // than the current position.
+    static int estimateDecodedSize(int position, int fileSize, int totSizeRead, int needed) {
+        int newSize = (int) ((position * (1.0 * fileSize / totSizeRead)) * 1.2);
+        if (newSize - position < needed + 5 * (1 << 20)) {
+            newSize = position + needed + 5 * (1 << 20);
+        }
+        return newSize;
+    }
+
+    // Return a new buffer of newSize bytes holding the content of buffer up to its position, and
+    // positioned right after that content. Return null if the memory could not be allocated.
+    static ByteBuffer growBuffer(ByteBuffer buffer, int newSize) {
+        ByteBuffer newBuffer = null;
+        // Try to allocate memory. If we are OOM, try again a few times.
+        int retry = 10;
+        while (retry > 0) {
+            try {
+                newBuffer = ByteBuffer.allocate(newSize);
+                break;
+            } catch (OutOfMemoryError oome) {
+                // setting android:largeHeap="true" in <application> seem to help not
+                // reaching this section.
+                retry--;
+            }
+        }
+        if (retry == 0) {
+            return null;
+        }
+        int position = buffer.position();
+        buffer.rewind();
+        newBuffer.put(buffer);
+        newBuffer.position(position);
+        return newBuffer;
+    }
+
+    // Read numSamples samples from src into dst as floats (full scale is 1.0), padding with 0s if
+    // src runs out of samples.
+    static void readFloats(ShortBuffer src, short[] scratch, float[] dst, int numSamples) {
+        int count = Math.min(numSamples, src.remaining());
+        src.get(scratch, 0, count);
+        for (int i = 0; i < count; i++) {
+            dst[i] = scratch[i] * (1.0f / 32768.0f);
+        }
+        for (int i = count; i < numSamples; i++) {
+            dst[i] = 0.0f;
+        }
+    }
+
+    // Convert numSamples floats back to 16 bit samples, clipping what goes over full scale.
+    static void toShorts(float[] src, short[] dst, int numSamples) {
+        for (int i = 0; i < numSamples; i++) {
+            float value = src[i] * 32768.0f;
+            if (value > Short.MAX_VALUE) {
+                value = Short.MAX_VALUE;
+            } else if (value < Short.MIN_VALUE) {
+                value = Short.MIN_VALUE;
+            }
+            dst[i] = (short) value;
+        }
+    }
+
+    // Scale count 16 bit samples by gain, clipping what goes over full scale.
+    static void applyGain(short[] samples, int count, float gain) {
+        for (int i = 0; i < count; i++) {
+            float value = samples[i] * gain;
+            if (value > Short.MAX_VALUE) {
+                value = Short.MAX_VALUE;
+            } else if (value < Short.MIN_VALUE) {
+                value = Short.MIN_VALUE;
+            }
+            samples[i] = (short) value;
+        }
+    }
+
+    // Return the frame nearest to frame (at most maxDistance frames away) where the signal, all
+    // channels summed, crosses zero: the sign changes between the frame before it and it. Cutting
+    // there makes no step in the waveform. Returns frame itself if there is none that close. The
+    // samples are read with absolute gets, from index 0 of the buffer.
+    static int findZeroCrossing(ShortBuffer samples, int channels, int frame, int numFrames,
+                                int maxDistance) {
+        if (frame <= 0 || frame >= numFrames) {
+            return frame;
+        }
+        for (int distance = 0; distance <= maxDistance; distance++) {
+            if (isZeroCrossing(samples, channels, frame - distance, numFrames)) {
+                return frame - distance;
+            }
+            if (isZeroCrossing(samples, channels, frame + distance, numFrames)) {
+                return frame + distance;
+            }
+        }
+        return frame;
+    }
+
+    private static boolean isZeroCrossing(ShortBuffer samples, int channels, int frame,
+                                          int numFrames) {
+        if (frame <= 0 || frame >= numFrames) {
+            return false;
+        }
+        int before = 0;
+        int after = 0;
+        for (int c = 0; c < channels; c++) {
+            before += samples.get((frame - 1) * channels + c);
+            after += samples.get(frame * channels + c);
+        }
+        return (before < 0 && after >= 0) || (before > 0 && after <= 0) || after == 0;
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.owen.voicememos;
+/*
+Owen Brown - 4838488
+Chang Ding - 5275821
+ */
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * the recordings of the RECORDINGS table, in list order, for "play all"
+ * only their id, date and filename are read, in the background. the notes are not, the screen
+ * reads the note of the recording playing (RecordingListSource.loadNote)
+ */
+public class PlayQueue {
+    //called on the main thread with the queue loaded
+    public interface Callback {
+        void onQueue(PlayQueue queue);
+    }
+
+    private final List<singleRecording> mItems;
+    private int mIndex;
+
+    private PlayQueue(List<singleRecording> items, int index) {
+        mItems = items;
+        mIndex = index;
+    }
+
+    //all the recordings, starting from the one with the given id (or the first one), read in
+    //the background
+    public static void load(Context context, final int startId, final Callback callback) {
+        final Context appContext = context.getApplicationContext();
+        VoiceMemosApplication.runInBackground(new VoiceMemosApplication.Job<PlayQueue>() {
+            @Override
+            public PlayQueue run() {
+                return read(VoiceMemosApplication.getDatabaseHelper(appContext)
+                        .getReadableDatabase(), startId);
+            }
+
+            @Override
+            public void done(PlayQueue queue) {
+                callback.onQueue(queue);
+            }
+        });
+    }
+
+    private static PlayQueue read(SQLiteDatabase db, int startId) {
+        Cursor cursor = db.rawQuery(
+                "SELECT id, date, filename FROM RECORDINGS ORDER BY recorded_at, id", null);
+        List<singleRecording> items = new ArrayList<singleRecording>();
+        int index = 0;
+        try {
+            while (cursor.moveToNext()) {
+                int rd_id = cursor.getInt(0);
+                if (rd_id == startId) {
+                    index = items.size();
+                }
+                items.add(new singleRecording(rd_id, cursor.getString(1), cursor.getString(2),
+                        null));
+            }
+        } finally {
+            cursor.close();
+        }
+        return new PlayQueue(items, index);
+    }
+
+    public boolean isEmpty() {
+        return mItems.isEmpty();
+    }
+
+    public singleRecording getCurrent() {
+        return mItems.get(mIndex);
+    }
+
+    //the recording after the current one, null at the end of the list
+    public singleRecording peekNext() {
+        return (mIndex + 1 < mItems.size()) ? mItems.get(mIndex + 1) : null;
+    }
+
+    //move to the recording with the given path, if it is the next one
+    public boolean advanceTo(String path) {
+        singleRecording next = peekNext();
+        if (next != null && RecordingFiles.getPath(next.getFilename()).equals(path)) {
+            mIndex++;
+            return true;
+        }
+        return false;
+    }
+}
@@ -5,19 +5,18 @@ Chang Ding - 5275821
  */
 import android.content.Intent;
 import android.database.sqlite.SQLiteDatabase;
-import android.media.MediaPlayer;
 import android.os.Bundle;
-import android.os.Environment;
 import android.os.Handler;
 import android.support.v7.app.AppCompatActivity;
 import android.text.method.ScrollingMovementMethod;
 import android.view.View;
+import android.widget.CheckBox;
+import android.widget.CompoundButton;
 import android.widget.ImageButton;
 import android.widget.SeekBar;
 import android.widget.TextView;
 import android.widget.Toast;
 import java.io.File;
-import java.io.IOException;
 
 public class PlayRecording extends AppCompatActivity {
     private int record_id;      //for intent
@@ -30,7 +29,16 @@ public class PlayRecording extends AppCompatActivity {
     private TextView _play_status_text;   //playing OR paused
     private TextView _play_timer_text;
     private long startTime = 0;     //for timer
-    private Handler timerHandler;   //for timer
+    //runs without a timer by reposting this handler at the end of the runnable
+    private final Handler timerHandler = new Handler();   //for timer
+    private final Runnable timerRunnable = new Runnable() {
+        @Override
+        public void run() {
+            updateTimer();
+            //the position is exact, refresh often enough for the seconds to tick on time
+            timerHandler.postDelayed(this, 100);
+        }
+    };
     private TextView _play_note_text;
     private ImageButton _play_delete_button;
     private ImageButton _play_playPause_button;
@@ -38,15 +46,21 @@ public class PlayRecording extends AppCompatActivity {
     private MyDatabaseHelper dbHelper;
     private String outputFile = null;
     private boolean isPlaying = false; //playing status
-    private MediaPlayer rMediaPlayer;
+    private AudioTrackPlayer rPlayer;
     private SeekBar play_seekTo;
+    private CheckBox _play_skipSilence_check;
+    private CheckBox _play_normalize_check;
+    private PlayQueue playQueue = null;  //play all, null when playing one recording
+    private boolean autoPlay = false;    //start playing once the recording is opened
+    private long startMs = -1;  //seek there once the recording is opened, e.g. to a marker found
+    private boolean resumed = false;
 
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_play_recording);
-        dbHelper = new MyDatabaseHelper(this, "RecordingsData.db",null,1);
+        dbHelper = VoiceMemosApplication.getDatabaseHelper(this);
         //get intent
         Intent intent = getIntent();
         //get info.
@@ -54,40 +68,106 @@ public class PlayRecording extends AppCompatActivity {
         record_date = intent.getStringExtra("record_date");
         record_filename = intent.getStringExtra("record_filename");
         record_note = intent.getStringExtra("record_note");
+        startMs = intent.getLongExtra("start_ms", -1);
         //create buttons and textviews
         createButtonsAndTextViews();
-        //set filename textview
-        _play_filename_text.setText(record_filename);
-        //set date textview
-        _play_date_text.setText(record_date);
+        createPlayer();
+        //play all: the whole list, from this recording on. nothing to show until it is read
+        if (intent.getBooleanExtra("play_all", false)) {
+            autoPlay = true;
+            setControlsEnabled(false);
+            PlayQueue.load(this, record_id, new PlayQueue.Callback() {
+                @Override
+                public void onQueue(PlayQueue queue) {
+                    if (isFinishing()) {
+                        return;
+                    }
+                    if (queue.isEmpty()) {
+                        finish();
+                        return;
+                    }
+                    playQueue = queue;
+                    showCurrent();
+                    if (resumed) {
+                        openRecording();
+                    }
+                }
+            });
+        } else {
+            showRecording();
+            if (record_note == null) {
+                loadNote();
+            }
+        }
         //set player status;
         _play_status_text.setText("Paused");
         //set timer textview
         _play_timer_text.setText("0:00");
-        //set note textview
-        _play_note_text.setText(record_note);
         //scrolling
         _play_note_text.setMovementMethod(new ScrollingMovementMethod());
-        //file location
-        outputFile = Environment.getExternalStorageDirectory().getAbsolutePath()+"/VoiceMemos/"+record_filename+".3gp";
         //set delete button
         iniDeleteButton();
-        //prepare media
-        prepareMedia();
         //set play button
         iniPlayButton();
         //set edit button
         iniEditButton();
         //prepare SeekBar
         prepareSeekTo();
+        //set skip silence checkbox
+        iniSkipSilence();
+        //set normalize checkbox
+        iniNormalize();
 
     }
 
 
+    //show the info. of the recording and set its file location
+    private void showRecording(){
+        //set filename textview
+        _play_filename_text.setText(record_filename);
+        //set date textview
+        _play_date_text.setText(record_date);
+        //set note textview
+        _play_note_text.setText(record_note);
+        //file location
+        outputFile = RecordingFiles.getPath(record_filename);
+    }
+
+    //play all: show the recording the queue is at
+    private void showCurrent(){
+        singleRecording current = playQueue.getCurrent();
+        record_id = current.getId();
+        record_date = current.getDate();
+        record_filename = current.getFilename();
+        record_note = null;
+        showRecording();
+        loadNote();
+    }
+
+    //the list and the queue do not read the notes, get it now
+    private void loadNote(){
+        RecordingListSource.loadNote(this, record_id, new RecordingListSource.NoteCallback() {
+            @Override
+            public void onNote(int recordingId, String note) {
+                if (recordingId == record_id) {
+                    record_note = note;
+                    _play_note_text.setText(record_note);
+                }
+            }
+        });
+    }
+
+    //the buttons that need the recording, off while it is opened (or the play all queue read)
+    private void setControlsEnabled(boolean enabled){
+        _play_playPause_button.setEnabled(enabled);
+        _play_delete_button.setEnabled(enabled);
+        _play_edit_button.setEnabled(enabled);
+    }
+
     //prepare seekBar
     private void prepareSeekTo(){
         play_seekTo = (SeekBar) findViewById(R.id.play_seekBar);
-        play_seekTo.setMax(rMediaPlayer.getDuration());
+        //the max is set in onResume, once the recording is opened
         play_seekTo.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
             int _progress = 0;
             public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
@@ -101,42 +181,223 @@ public class PlayRecording extends AppCompatActivity {
 
             @Override
             public void onStopTrackingTouch(SeekBar seekBar) {
-                if(isPlaying){
-                    rMediaPlayer.seekTo(_progress);
+                //seeks work while paused too
+                rPlayer.seekTo(_progress);
+                updateTimer();
+            }
+        });
+    }
+    //create the player, it is opened in onResume
+    private void createPlayer(){
+        rPlayer = new AudioTrackPlayer(this);
+        //onCompletionListener
+        rPlayer.setOnCompletionListener(new AudioTrackPlayer.OnCompletionListener() {
+            @Override
+            public void onCompletion(AudioTrackPlayer player) {
+                isPlaying = false;
+                timerHandler.removeCallbacks(timerRunnable);
+                updateTimer();
+                _play_status_text.setText("Paused");
+                _play_playPause_button.setBackgroundResource(R.drawable.rec_start);
+            }
+        });
+        //play all: the next recording is already playing, show it and queue the one after
+        rPlayer.setOnItemChangeListener(new AudioTrackPlayer.OnItemChangeListener() {
+            @Override
+            public void onItemChange(AudioTrackPlayer player, String path) {
+                if (playQueue == null || !playQueue.advanceTo(path)) {
+                    return;
+                }
+                showCurrent();
+                play_seekTo.setMax(rPlayer.getDuration());
+                prepareNext();
+            }
+        });
+        //opened in the background, the controls wait for it
+        rPlayer.setOnOpenListener(new AudioTrackPlayer.OnOpenListener() {
+            @Override
+            public void onOpen(AudioTrackPlayer player, String path, boolean opened) {
+                //paused in the meantime, onResume opens it again
+                if (resumed) {
+                    showOpened();
                 }
             }
         });
     }
+
     //prepare audio
     private void prepareMedia(){
-        rMediaPlayer = new MediaPlayer();
-        rMediaPlayer.reset();
-        try {
-            rMediaPlayer.setDataSource(outputFile);
-        } catch (IOException e) {
-            e.printStackTrace();
+        //open again, the recording may have been edited in the meantime
+        rPlayer.openAsync(outputFile);
+        //the recording may have been trimmed, get its map again
+        if (_play_skipSilence_check.isChecked()) {
+            loadSilenceMap(record_id, outputFile, true);
+        }
+        if (_play_normalize_check.isChecked()) {
+            loadLoudness(record_id, outputFile, true);
         }
-        try {
-            rMediaPlayer.prepare();
-        } catch (IOException e) {
-            e.printStackTrace();
+        //the edits may have changed too, they are played without touching the file
+        loadEdits(record_id, outputFile);
+    }
+
+    //play all: open and start decoding the next recording while this one plays
+    private void prepareNext(){
+        if (playQueue != null) {
+            singleRecording next = playQueue.peekNext();
+            rPlayer.prepareNext(next == null ? null : RecordingFiles.getPath(next.getFilename()));
+            if (next != null) {
+                loadEdits(next.getId(), RecordingFiles.getPath(next.getFilename()));
+            }
+            if (next != null && _play_skipSilence_check.isChecked()) {
+                loadSilenceMap(next.getId(), RecordingFiles.getPath(next.getFilename()), false);
+            }
+            if (next != null && _play_normalize_check.isChecked()) {
+                loadLoudness(next.getId(), RecordingFiles.getPath(next.getFilename()), false);
+            }
         }
     }
 
+    //initialize skip silence checkbox
+    private void iniSkipSilence(){
+        _play_skipSilence_check.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
+            @Override
+            public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
+                rPlayer.setSkipSilence(isChecked);
+                //before the play all queue is read, the map is loaded once it is opened
+                if (isChecked && outputFile != null) {
+                    //computed the first time only, then read from the database
+                    loadSilenceMap(record_id, outputFile, true);
+                    prepareNext();
+                }
+            }
+        });
+    }
+
+    //initialize normalize checkbox
+    private void iniNormalize(){
+        _play_normalize_check.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
+            @Override
+            public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
+                rPlayer.setNormalize(isChecked);
+                if (isChecked && outputFile != null) {
+                    //usually measured already by the library scan
+                    loadLoudness(record_id, outputFile, true);
+                    prepareNext();
+                }
+            }
+        });
+    }
+
+    //get the loudness of a recording in the background and hand its gain to the player
+    private void loadLoudness(int id, String path, final boolean showGain){
+        LoudnessStore.load(this, id, path, new LoudnessStore.Callback() {
+            @Override
+            public void onLoudness(String path, LoudnessAnalyzer.Result result) {
+                if (result == null || isFinishing()) {
+                    return;
+                }
+                double gain = result.getNormalizationGainDb(LoudnessStore.TARGET_LUFS,
+                        LoudnessStore.CEILING_DBTP, LoudnessStore.MAX_BOOST_DB);
+                rPlayer.setNormalizationGain(path, gain);
+                if (showGain) {
+                    Toast.makeText(PlayRecording.this, String.format("%.1f LUFS, %+.1f dB",
+                            result.integrated, gain), Toast.LENGTH_SHORT).show();
+                }
+            }
+        });
+    }
+
+    //get the edits of a recording in the background and hand them to the player
+    private void loadEdits(int id, String path){
+        EditStore.load(this, id, path, new EditStore.Callback() {
+            @Override
+            public void onEdits(String path, EditDecisionList edits) {
+                if (!isFinishing()) {
+                    rPlayer.setEdits(path, edits);
+                }
+            }
+        });
+    }
+
+    //get the silence map of a recording in the background and hand it to the player
+    private void loadSilenceMap(int id, String path, final boolean showSaving){
+        SilenceMapLoader.load(this, id, path, new SilenceMapLoader.Callback() {
+            @Override
+            public void onSilenceMap(String path, SilenceMap map) {
+                if (map == null || isFinishing()) {
+                    return;
+                }
+                rPlayer.setSilenceMap(path, map);
+                if (showSaving) {
+                    long seconds = map.getSilentFrames() / Math.max(1, rPlayer.getSampleRate());
+                    Toast.makeText(PlayRecording.this, String.format("Skipping %d:%02d of silence",
+                            seconds / 60, seconds % 60), Toast.LENGTH_SHORT).show();
+                }
+            }
+        });
+    }
+
+    //show the position of the player
+    private void updateTimer(){
+        long millis = rPlayer.getCurrentPosition();
+        int seconds = (int) (millis / 1000);
+        int minutes = seconds / 60;
+        seconds = seconds % 60;
+        _play_timer_text.setText(String.format("%d:%02d", minutes, seconds));
+        play_seekTo.setProgress((int)millis);
+    }
+
 
     @Override
     public void onResume(){
         super.onResume();
+        resumed = true;
+        //play all opens it once the queue is read
+        if (outputFile != null) {
+            openRecording();
+        }
+    }
+
+    //open the recording, showOpened() is called once it is
+    private void openRecording(){
+        setControlsEnabled(false);
+        //prepare media
         prepareMedia();
+    }
+
+    //show the recording opened paused, or playing for play all
+    private void showOpened(){
+        setControlsEnabled(true);
+        prepareNext();
+        play_seekTo.setMax(rPlayer.getDuration());
+        //only the first time
+        if (startMs >= 0) {
+            rPlayer.seekTo((int) Math.min(startMs, rPlayer.getDuration()));
+            startMs = -1;
+        }
+        updateTimer();
         isPlaying = false;
         _play_status_text.setText("Paused");
         _play_playPause_button.setBackgroundResource(R.drawable.rec_start);
+        //play all starts right away, the first time
+        if (autoPlay) {
+            autoPlay = false;
+            _play_playPause_button.performClick();
+        }
     }
     @Override
     //onPause, stop playing
     protected void onPause(){
         super.onPause();
-        rMediaPlayer.stop();
+        resumed = false;
+        timerHandler.removeCallbacks(timerRunnable);
+        rPlayer.pause();
+    }
+
+    @Override
+    protected void onDestroy(){
+        super.onDestroy();
+        rPlayer.release();
     }
 
     //initialize delete button
@@ -144,11 +405,17 @@ public class PlayRecording extends AppCompatActivity {
         _play_delete_button.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
+                //stop playing before the file goes away
+                rPlayer.release();
                 //delete info in database
                 SQLiteDatabase db = dbHelper.getWritableDatabase();
                 db.delete("RECORDINGS","id = "+record_id,null);
+                SilenceMapLoader.delete(db, record_id);
+                LoudnessStore.delete(db, record_id);
+                EditStore.delete(db, record_id);
+                ArchiveTranscoder.delete(db, record_id);
+                StorageTierService.delete(db, record_id);
                 Toast.makeText(PlayRecording.this, "Recording Deleted",Toast.LENGTH_SHORT).show();
-                db.close();
                 //delete the file
                 File file = new File(outputFile);
                 file.delete();
@@ -160,21 +427,6 @@ public class PlayRecording extends AppCompatActivity {
 
     //initialize Play button
     private void iniPlayButton(){
-        //runs without a timer by reposting this handler at the end of the runnable
-        timerHandler = new Handler();
-        final Runnable timerRunnable = new Runnable() {
-            @Override
-            public void run() {
-                long millis = rMediaPlayer.getCurrentPosition();
-                int seconds = (int) (millis / 1000);
-                int minutes = seconds / 60;
-                seconds = seconds % 60;
-                _play_timer_text.setText(String.format("%d:%02d", minutes, seconds));
-                play_seekTo.setProgress((int)millis);
-                timerHandler.postDelayed(this, 500);
-            }
-        };
-
         _play_playPause_button.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
@@ -182,16 +434,8 @@ public class PlayRecording extends AppCompatActivity {
                 if(!isPlaying){
                     //restart timer
                     timerHandler.postDelayed(timerRunnable, 0);
-                    //onCompletionListener
-                    rMediaPlayer.setOnCompletionListener(new MediaPlayer.OnCompletionListener() {
-                        @Override
-                        public void onCompletion(MediaPlayer mp) {
-                            isPlaying = false;
-                            _play_playPause_button.setBackgroundResource(R.drawable.rec_start);
-                        }
-                    });
                     //play the audio
-                    rMediaPlayer.start();
+                    rPlayer.play();
                     isPlaying = true;
                     //change label
                     _play_status_text.setText("Playing");
@@ -204,7 +448,7 @@ public class PlayRecording extends AppCompatActivity {
                     //stop timer
                     timerHandler.removeCallbacks(timerRunnable);
                     //pause audio
-                    rMediaPlayer.pause();
+                    rPlayer.pause();
                     isPlaying = false;
                     // change paused state
 
@@ -241,5 +485,7 @@ public class PlayRecording extends AppCompatActivity {
         _play_delete_button = (ImageButton) findViewById(R.id.play_delete_button);
         _play_playPause_button = (ImageButton) findViewById(R.id.play_play_pause_button);
         _play_edit_button =(ImageButton) findViewById(R.id.play_edit_button);
+        _play_skipSilence_check = (CheckBox) findViewById(R.id.play_skipSilence_check);
+        _play_normalize_check = (CheckBox) findViewById(R.id.play_normalize_check);
     }
 }
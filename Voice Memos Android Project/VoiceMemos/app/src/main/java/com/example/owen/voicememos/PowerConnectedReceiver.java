@@ -0,0 +1,21 @@
+package com.example.owen.voicememos;
+/*
+Owen Brown - 4838488
+Chang Ding - 5275821
+ */
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+/**
+ * starts the storage tiering when the phone is plugged in, see StorageTierService
+ */
+public class PowerConnectedReceiver extends BroadcastReceiver {
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        if (Intent.ACTION_POWER_CONNECTED.equals(intent.getAction())) {
+            context.startService(new Intent(context, StorageTierService.class));
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.owen.voicememos;
+/*
+Owen Brown - 4838488
+Chang Ding - 5275821
+ */
+import java.util.List;
+
+/**
+ * runs a block through several processors, in order
+ */
+public class ProcessorChain implements AudioProcessor {
+    private final AudioProcessor[] mProcessors;
+
+    public ProcessorChain(List<AudioProcessor.Factory> factories, int sampleRate, int channels,
+                          long numFrames) {
+        mProcessors = new AudioProcessor[factories.size()];
+        for (int i = 0; i < mProcessors.length; i++) {
+            mProcessors[i] = factories.get(i).create(sampleRate, channels, numFrames);
+        }
+    }
+
+    @Override
+    public void process(float[] samples, int numFrames, long position) {
+        for (AudioProcessor processor : mProcessors) {
+            processor.process(samples, numFrames, position);
+        }
+    }
+}
@@ -9,7 +9,6 @@ import android.content.DialogInterface;
 import android.database.sqlite.SQLiteDatabase;
 import android.media.MediaRecorder;
 import android.os.Bundle;
-import android.os.Environment;
 import android.os.Handler;
 import android.support.v7.app.AppCompatActivity;
 import android.util.Log;
@@ -23,6 +22,7 @@ import android.widget.Toast;
 
 import java.io.IOException;
 import java.util.Calendar;
+import java.util.Date;
 
 public class RecordVoice extends AppCompatActivity {
     private Button _record_insertTime;
@@ -53,6 +53,14 @@ public class RecordVoice extends AppCompatActivity {
         createDialogBeforeStart();
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        //the recording is over, the conversion of the archive can go on, with this one too
+        ArchiveTranscoder.resume();
+        ArchiveTranscoder.scanLibrary(this);
+    }
+
     public void onBackPressed() {
         new AlertDialog.Builder(this).setTitle("Exit?")
                 .setMessage("Exit and saving file?")
@@ -93,7 +101,7 @@ public class RecordVoice extends AppCompatActivity {
                             fileName = "NewRecording";
                         }
                         //output path
-                        outputFile = Environment.getExternalStorageDirectory().getAbsolutePath() + "/VoiceMemos/" + fileName + ".3gp";
+                        outputFile = RecordingFiles.getPath(fileName);
                         initialAudioRecorder();
                         //start recording automatically
                         startRecording();
@@ -116,8 +124,8 @@ public class RecordVoice extends AppCompatActivity {
         _record_insertTime.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                String tempTime = _record_timerView.getText().toString();
-                String tempText = "\n@" + tempTime + ":\n" + record_note.getText();
+                long seconds = (System.currentTimeMillis() - startTime) / 1000;
+                String tempText = "\n" + NoteMarkers.format(seconds) + "\n" + record_note.getText();
                 record_note.setText(tempText);
             }
         });
@@ -125,21 +133,24 @@ public class RecordVoice extends AppCompatActivity {
 
     //write info. into database
     private void record_writeDatabase() {
-        dbHelper = new MyDatabaseHelper(this, "RecordingsData.db", null, 1);
+        dbHelper = VoiceMemosApplication.getDatabaseHelper(this);
         SQLiteDatabase db = dbHelper.getWritableDatabase();
         //preparing content value
         ContentValues values = new ContentValues();
-        values.put("date", java.text.DateFormat.getDateTimeInstance().format(Calendar.getInstance().getTime()));
+        Date now = Calendar.getInstance().getTime();
+        values.put("date", java.text.DateFormat.getDateTimeInstance().format(now));
+        values.put("recorded_at", now.getTime());
         values.put("filename", fileName);
         values.put("note", record_note.getText().toString());
         //insert info.
         db.insert("RECORDINGS", null, values);
-        db.close();
         values.clear();
     }
 
     //start recording the audio
     private void startRecording() {
+        //nothing else encodes while recording, until onDestroy
+        ArchiveTranscoder.pause();
         try {
             myAudioRecorder.prepare();
             myAudioRecorder.start();
@@ -165,11 +176,8 @@ public class RecordVoice extends AppCompatActivity {
             @Override
             public void run() {
                 long millis = System.currentTimeMillis() - startTime;
-                int seconds = (int) (millis / 1000);
-                int minutes = seconds / 60;
-                seconds = seconds % 60;
 
-                _record_timerView.setText(String.format("%d:%02d", minutes, seconds));
+                _record_timerView.setText(NoteMarkers.formatTime(millis / 1000));
 
                 timerHandler.postDelayed(this, 500);
             }
@@ -7,29 +7,103 @@ import android.content.Context;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ArrayAdapter;
+import android.widget.AbsListView;
+import android.widget.BaseAdapter;
+import android.widget.ImageView;
 import android.widget.TextView;
 
-import java.util.List;
-
 /**
  * rewrite arrayadapter
+ * the rows come from a RecordingListSource, a row not loaded yet is shown empty until it is.
+ * the row views are reused, and each shows a waveform thumbnail from the ThumbnailLoader, whose
+ * request stops when the row scrolls off (set the adapter as the RecyclerListener of the list).
+ * while searching, a row also shows the text of its note that was found
  */
-public class RecordingAdapter extends ArrayAdapter<singleRecording>{
-    private int resourceId;
-    public RecordingAdapter(Context context, int textViewResourceId, List<singleRecording> object){
-        super(context, textViewResourceId, object);
+public class RecordingAdapter extends BaseAdapter implements AbsListView.RecyclerListener {
+    private final Context mContext;
+    private final int resourceId;
+    private final RecordingListSource mSource;
+    private final ThumbnailLoader mThumbnails;
+
+    //the views of a row, kept in its tag
+    private static class ViewHolder {
+        TextView date;
+        TextView filename;
+        TextView snippet;
+        ImageView waveform;
+    }
+
+    public RecordingAdapter(Context context, int textViewResourceId, RecordingListSource source,
+                            ThumbnailLoader thumbnails){
+        mContext = context;
         resourceId = textViewResourceId;
+        mSource = source;
+        mThumbnails = thumbnails;
+    }
+
+    @Override
+    public int getCount() {
+        return mSource.getCount();
+    }
+
+    //null if the row is not loaded yet
+    @Override
+    public singleRecording getItem(int position) {
+        return mSource.getItem(position);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return mSource.getId(position);
+    }
+
+    @Override
+    public boolean hasStableIds() {
+        return true;
     }
 
     @Override
     public View getView(int position, View convertView, ViewGroup parent){
+        View view = convertView;
+        ViewHolder holder;
+        if (view == null) {
+            view = LayoutInflater.from(mContext).inflate(resourceId, parent, false);
+            holder = new ViewHolder();
+            holder.date = (TextView) view.findViewById(R.id.date_entry);
+            holder.filename = (TextView) view.findViewById(R.id.filename_entry);
+            holder.snippet = (TextView) view.findViewById(R.id.snippet_entry);
+            holder.waveform = (ImageView) view.findViewById(R.id.waveform_entry);
+            view.setTag(holder);
+        } else {
+            holder = (ViewHolder) view.getTag();
+        }
+        NoteSearch.Result result = mSource.getSearchResult(position);
+        if (result != null && result.snippet != null) {
+            holder.snippet.setText(result.snippet);
+            holder.snippet.setVisibility(View.VISIBLE);
+        } else {
+            holder.snippet.setVisibility(View.GONE);
+        }
         singleRecording recording = getItem(position);
-        View view = LayoutInflater.from(getContext()).inflate(resourceId, null);
-        TextView date = (TextView) view.findViewById(R.id.date_entry);
-        TextView filename = (TextView) view.findViewById(R.id.filename_entry);
-        date.setText(recording.getDate());
-        filename.setText(recording.getFilename());
+        if (recording != null) {
+            holder.date.setText(recording.getDate());
+            holder.filename.setText(recording.getFilename());
+            mThumbnails.load(holder.waveform, RecordingFiles.getPath(recording.getFilename()));
+        } else {
+            holder.date.setText("");
+            holder.filename.setText("");
+            mThumbnails.cancel(holder.waveform);
+            holder.waveform.setImageDrawable(null);
+        }
         return view;
     }
+
+    //the row scrolled off, its thumbnail is not needed any more
+    @Override
+    public void onMovedToScrapHeap(View view) {
+        ViewHolder holder = (ViewHolder) view.getTag();
+        if (holder != null) {
+            mThumbnails.cancel(holder.waveform);
+        }
+    }
 }
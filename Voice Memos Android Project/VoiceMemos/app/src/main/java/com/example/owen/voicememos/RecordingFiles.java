@@ -0,0 +1,105 @@
+package com.example.owen.voicememos;
+/*
+Owen Brown - 4838488
+Chang Ding - 5275821
+ */
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.os.Environment;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * the files of the recordings: where they are, and checks on the files written for them
+ * a file WriteFile wrote to a temp file is only renamed over a recording once isComplete() says
+ * it plays for as long as it should. its samples are read to the end of the file, without
+ * decoding them, so a file cut short shows even if its header is whole
+ */
+public class RecordingFiles {
+    private static final String TAG = "RecordingFiles";
+    //an AAC frame is at most 768 bytes per channel
+    private static final int MAX_SAMPLE_BYTES = 16 * 1024;
+    //the ends of the stream round up to whole frames, and its first sample is the 2 byte config
+    private static final int SLACK_FRAMES = 3;
+    private static final int AAC_FRAME = 1024;
+    private static final long SLACK_US = 50000;
+
+    private RecordingFiles() {
+    }
+
+    //the file of the recording with the given name. it has the .3gp extension whatever the
+    //codec, AMR or AAC, since the recordings were always found by that name
+    public static String getPath(String filename) {
+        return Environment.getExternalStorageDirectory().getAbsolutePath()
+                + "/VoiceMemos/" + filename + ".3gp";
+    }
+
+    public static File getFile(String filename) {
+        return new File(getPath(filename));
+    }
+
+    //the time the audio samples of a file cover, in microseconds, reading each of them
+    public static long measureDurationUs(File file) throws IOException {
+        MediaExtractor extractor = new MediaExtractor();
+        try {
+            extractor.setDataSource(file.getPath());
+            int track = -1;
+            for (int i = 0; i < extractor.getTrackCount(); i++) {
+                if (extractor.getTrackFormat(i).getString(MediaFormat.KEY_MIME)
+                        .startsWith("audio/")) {
+                    track = i;
+                    break;
+                }
+            }
+            if (track < 0) {
+                throw new IOException("No audio track found in " + file);
+            }
+            extractor.selectTrack(track);
+            ByteBuffer buffer = ByteBuffer.allocate(MAX_SAMPLE_BYTES);
+            long first = -1;
+            long last = -1;
+            int count = 0;
+            while (extractor.readSampleData(buffer, 0) >= 0) {
+                long time = extractor.getSampleTime();
+                if (first < 0) {
+                    first = time;
+                }
+                last = time;
+                count++;
+                if (!extractor.advance()) {
+                    break;
+                }
+            }
+            if (count < 2) {
+                return 0;
+            }
+            //the last sample lasts as long as the others on average
+            return last + (last - first) / (count - 1);
+        } finally {
+            extractor.release();
+        }
+    }
+
+    //whether a file WriteFile wrote at encodedRate holds contentUs of audio (plus the priming
+    //frames of the encoder), give or take a few frames and slackUs (e.g. for the cuts that moved
+    //to zero crossings)
+    public static boolean isComplete(File written, long contentUs, int encodedRate, long slackUs) {
+        long expectedUs = contentUs + SoundFile.ENCODER_DELAY * 1000000L / encodedRate;
+        long toleranceUs = SLACK_FRAMES * AAC_FRAME * 1000000L / encodedRate + SLACK_US + slackUs;
+        long durationUs;
+        try {
+            durationUs = measureDurationUs(written);
+        } catch (IOException e) {
+            Log.w(TAG, "could not read " + written, e);
+            return false;
+        }
+        if (Math.abs(durationUs - expectedUs) > toleranceUs) {
+            Log.w(TAG, written + " holds " + durationUs + "us, expected " + expectedUs + "us");
+            return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,286 @@
+package com.example.owen.voicememos;
+/*
+Owen Brown - 4838488
+Chang Ding - 5275821
+ */
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.TextUtils;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * the recordings for the list of MainActivity, read from the database a page at a time
+ * in the order they were recorded (recorded_at, on its index). only the ids of all the
+ * recordings are kept. the rows (id, date, filename, no note) are read PAGE_SIZE at a time when
+ * the list first shows one of them, and at most MAX_ROWS of them are kept. refresh() reads the
+ * ids and the rows already read again, and only tells the list if they changed. while there is a
+ * search (setQuery()) the list is the recordings NoteSearch found instead, the best first. all
+ * the queries run on one background thread, everything else is on the main thread
+ */
+public class RecordingListSource {
+    public static final int PAGE_SIZE = 50;
+    private static final int MAX_RESULTS = 200;
+    private static final int MAX_ROWS = 500;
+
+    //called on the main thread
+    public interface Listener {
+        //rows that were not loaded yet are now
+        void onRowsLoaded();
+
+        //recordings were added or removed, positions changed
+        void onListChanged();
+    }
+
+    //called on the main thread
+    public interface NoteCallback {
+        void onNote(int recordingId, String note);
+    }
+
+    private final MyDatabaseHelper mDbHelper;
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Listener mListener;
+    private int[] mIds = new int[0];    //in list order
+    //rows by id, the least recently shown first
+    private final LinkedHashMap<Integer, singleRecording> mRows =
+            new LinkedHashMap<Integer, singleRecording>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, singleRecording> eldest) {
+                    return size() > MAX_ROWS;
+                }
+            };
+    //pages asked for and not loaded yet
+    private final Set<Integer> mPending = new HashSet<Integer>();
+    //the search, "" for all the recordings, and what it found by id
+    private volatile String mQuery = "";
+    private Map<Integer, NoteSearch.Result> mResults = new HashMap<Integer, NoteSearch.Result>();
+    private boolean mClosed = false;
+
+    public RecordingListSource(Context context, Listener listener) {
+        mDbHelper = VoiceMemosApplication.getDatabaseHelper(context);
+        mListener = listener;
+    }
+
+    public int getCount() {
+        return mIds.length;
+    }
+
+    public int getId(int position) {
+        return mIds[position];
+    }
+
+    //the recording at position, null if it is not loaded yet. it is then loaded, and
+    //onRowsLoaded() called
+    public singleRecording getItem(int position) {
+        singleRecording row = mRows.get(mIds[position]);
+        if (row == null) {
+            requestPage(position / PAGE_SIZE);
+        }
+        return row;
+    }
+
+    //what the search found for the recording at position, null if there is no search
+    public NoteSearch.Result getSearchResult(int position) {
+        return mResults.get(mIds[position]);
+    }
+
+    //search the names and notes, "" to list all the recordings again
+    public void setQuery(String query) {
+        if (query.equals(mQuery)) {
+            return;
+        }
+        mQuery = query;
+        refresh();
+    }
+
+    //read the ids and the rows again, e.g. when the list is shown again
+    public void refresh() {
+        final String query = mQuery;
+        //the rows already read, a recording may have been renamed meanwhile
+        final int[] loaded = new int[mRows.size()];
+        int i = 0;
+        for (int id : mRows.keySet()) {
+            loaded[i++] = id;
+        }
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!query.equals(mQuery)) {
+                    //typed on meanwhile, the next refresh has it
+                    return;
+                }
+                final Map<Integer, NoteSearch.Result> results =
+                        new HashMap<Integer, NoteSearch.Result>();
+                final int[] ids;
+                if (query.length() == 0) {
+                    ids = readIds(mDbHelper.getReadableDatabase());
+                } else {
+                    List<NoteSearch.Result> found = NoteSearch.search(
+                            mDbHelper.getReadableDatabase(), query, MAX_RESULTS);
+                    ids = new int[found.size()];
+                    for (int i = 0; i < ids.length; i++) {
+                        ids[i] = found.get(i).id;
+                        results.put(ids[i], found.get(i));
+                    }
+                }
+                final singleRecording[] rows = (loaded.length == 0) ? new singleRecording[0]
+                        : readRows(mDbHelper.getReadableDatabase(), loaded);
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (mClosed || !query.equals(mQuery)) {
+                            return;
+                        }
+                        mResults = results;
+                        boolean rowsChanged = updateRows(rows);
+                        if (Arrays.equals(ids, mIds)) {
+                            //the same recordings, but a row may have changed, or a note its
+                            //snippet
+                            if (rowsChanged || !results.isEmpty()) {
+                                mListener.onRowsLoaded();
+                            }
+                            return;
+                        }
+                        //forget the rows that were deleted, keep the others
+                        Set<Integer> kept = new HashSet<Integer>();
+                        for (int id : ids) {
+                            kept.add(id);
+                        }
+                        mRows.keySet().retainAll(kept);
+                        mPending.clear();
+                        mIds = ids;
+                        mListener.onListChanged();
+                    }
+                });
+            }
+        });
+    }
+
+    //put the rows read again that changed in place of the old ones, without changing which were
+    //shown last. true if one of them changed
+    private boolean updateRows(singleRecording[] rows) {
+        Map<Integer, singleRecording> byId = new HashMap<Integer, singleRecording>();
+        for (singleRecording row : rows) {
+            byId.put(row.getId(), row);
+        }
+        boolean changed = false;
+        for (Map.Entry<Integer, singleRecording> entry : mRows.entrySet()) {
+            singleRecording row = byId.get(entry.getKey());
+            if (row != null && (!TextUtils.equals(row.getDate(), entry.getValue().getDate())
+                    || !TextUtils.equals(row.getFilename(), entry.getValue().getFilename()))) {
+                entry.setValue(row);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    //stop loading
+    public void close() {
+        mClosed = true;
+        mExecutor.shutdown();
+    }
+
+    private void requestPage(final int page) {
+        if (mClosed || !mPending.add(page)) {
+            return;
+        }
+        int first = page * PAGE_SIZE;
+        final int[] pageIds =
+                Arrays.copyOfRange(mIds, first, Math.min(first + PAGE_SIZE, mIds.length));
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final singleRecording[] rows = readRows(mDbHelper.getReadableDatabase(),
+                        pageIds);
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (mClosed) {
+                            return;
+                        }
+                        for (singleRecording row : rows) {
+                            mRows.put(row.getId(), row);
+                        }
+                        mPending.remove(page);
+                        mListener.onRowsLoaded();
+                    }
+                });
+            }
+        });
+    }
+
+    private static int[] readIds(SQLiteDatabase db) {
+        Cursor cursor = db.rawQuery("SELECT id FROM RECORDINGS ORDER BY recorded_at, id", null);
+        try {
+            int[] ids = new int[cursor.getCount()];
+            for (int i = 0; cursor.moveToNext(); i++) {
+                ids[i] = cursor.getInt(0);
+            }
+            return ids;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    //the rows of a page, by id (the list is in time order, so a page is not a range of ids)
+    private static singleRecording[] readRows(SQLiteDatabase db, int[] ids) {
+        StringBuilder in = new StringBuilder();
+        for (int id : ids) {
+            in.append(in.length() == 0 ? "" : ",").append(id);
+        }
+        Cursor cursor = db.rawQuery("SELECT id, date, filename FROM RECORDINGS "
+                + "WHERE id IN (" + in + ")", null);
+        try {
+            singleRecording[] rows = new singleRecording[cursor.getCount()];
+            for (int i = 0; cursor.moveToNext(); i++) {
+                rows[i] = new singleRecording(cursor.getInt(0), cursor.getString(1),
+                        cursor.getString(2), null);
+            }
+            return rows;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    //the note of one recording, "" if it has none
+    public static String readNote(SQLiteDatabase db, int recordingId) {
+        Cursor cursor = db.query("RECORDINGS", new String[]{"note"},
+                "id = " + recordingId, null, null, null, null);
+        try {
+            return (cursor.moveToFirst() && !cursor.isNull(0)) ? cursor.getString(0) : "";
+        } finally {
+            cursor.close();
+        }
+    }
+
+    //get the note of one recording in the background, the list rows don't have it
+    public static void loadNote(Context context, final int recordingId,
+                                final NoteCallback callback) {
+        final Context appContext = context.getApplicationContext();
+        VoiceMemosApplication.runInBackground(new VoiceMemosApplication.Job<String>() {
+            @Override
+            public String run() {
+                return readNote(VoiceMemosApplication.getDatabaseHelper(appContext)
+                        .getReadableDatabase(), recordingId);
+            }
+
+            @Override
+            public void done(String note) {
+                callback.onNote(recordingId, note);
+            }
+        });
+    }
+}
@@ -0,0 +1,176 @@
+package com.example.owen.voicememos;
+/*
+Owen Brown - 4838488
+Chang Ding - 5275821
+ */
+import java.util.Arrays;
+
+/**
+ * streaming polyphase sample rate converter, for exports at a lower rate than the recording
+ * the rates are reduced to a ratio up/down (44100 -> 16000 is 160/441). output frame n is at
+ * input time n*down/up, so it only needs one of up phases of a kaiser windowed sinc low pass,
+ * all computed once in the constructor. the low pass is at the lower of the two nyquist
+ * frequencies, and gets longer the more the rate goes down. interleaved float frames are
+ * written in and read out in blocks of any size
+ */
+public class Resampler {
+    //taps per phase when the rate does not go down, more when it does
+    private static final int BASE_TAPS = 24;
+    //low pass cutoff, as a fraction of the lower nyquist frequency
+    private static final double ROLLOFF = 0.92;
+    private static final double KAISER_BETA = 8.0;
+
+    private final int mChannels;
+    private final int mUp;
+    private final int mDown;
+    private final int mTaps;
+    private final float[][] mPhases;    //[phase][tap]
+
+    //input frames from mInputStart, interleaved
+    private float[] mInput;
+    private int mInputCount = 0;
+    private long mInputStart;
+    private long mInputTotal = 0;
+    private boolean mEnded = false;
+    private long mOutput = 0;           //next output frame
+
+    public Resampler(int inRate, int outRate, int channels) {
+        mChannels = channels;
+        int gcd = gcd(inRate, outRate);
+        mUp = outRate / gcd;
+        mDown = inRate / gcd;
+        double scale = Math.min(1.0, (double) mUp / mDown);
+        int taps = (int) Math.ceil(BASE_TAPS / scale);
+        mTaps = taps + (taps & 1);
+        double cutoff = ROLLOFF * scale;
+        double i0Beta = besselI0(KAISER_BETA);
+        mPhases = new float[mUp][mTaps];
+        for (int p = 0; p < mUp; p++) {
+            double sum = 0;
+            for (int m = 0; m < mTaps; m++) {
+                //distance from the output time to the input frame tap m is applied to
+                double d = (double) p / mUp + mTaps / 2 - 1 - m;
+                double x = Math.PI * cutoff * d;
+                double sinc = (d == 0) ? 1.0 : Math.sin(x) / x;
+                double r = d / (mTaps / 2.0);
+                double window = (Math.abs(r) < 1)
+                        ? besselI0(KAISER_BETA * Math.sqrt(1 - r * r)) / i0Beta : 0;
+                mPhases[p][m] = (float) (sinc * window);
+                sum += mPhases[p][m];
+            }
+            //a gain of 1 at DC for every phase
+            for (int m = 0; m < mTaps; m++) {
+                mPhases[p][m] /= sum;
+            }
+        }
+        //input before the start is silence, as if the first taps had already been written
+        mInputStart = 1 - mTaps / 2;
+        mInputCount = mTaps / 2 - 1;
+        mInput = new float[Math.max(mTaps * 4, 4096) * channels];
+    }
+
+    //frames out for frames in, rounded up
+    public long getOutputFrames(long inputFrames) {
+        return (inputFrames * mUp + mDown - 1) / mDown;
+    }
+
+    public void write(float[] in, int frames) {
+        int needed = (mInputCount + frames) * mChannels;
+        if (needed > mInput.length) {
+            mInput = Arrays.copyOf(mInput, Math.max(needed, mInput.length * 2));
+        }
+        System.arraycopy(in, 0, mInput, mInputCount * mChannels, frames * mChannels);
+        mInputCount += frames;
+        mInputTotal += frames;
+    }
+
+    //no more input: what follows the last frame written is silence
+    public void endOfInput() {
+        mEnded = true;
+    }
+
+    public boolean isFinished() {
+        return mEnded && mOutput >= getOutputFrames(mInputTotal);
+    }
+
+    //read up to maxFrames output frames into out, returns how many were read
+    public int read(float[] out, int maxFrames) {
+        return read(out, 0, maxFrames);
+    }
+
+    //read up to maxFrames output frames into out from frame offset, returns how many were read
+    public int read(float[] out, int offset, int maxFrames) {
+        int count = 0;
+        long last = mEnded ? getOutputFrames(mInputTotal) : Long.MAX_VALUE;
+        while (count < maxFrames && mOutput < last) {
+            long t = mOutput * mDown;
+            long first = t / mUp + 1 - mTaps / 2;     //input frame of tap 0
+            int tap0 = (int) (first - mInputStart);
+            if (tap0 + mTaps > mInputCount) {
+                if (!mEnded) {
+                    break;
+                }
+                padInput(tap0 + mTaps - mInputCount);
+            }
+            float[] phase = mPhases[(int) (t % mUp)];
+            int outIndex = (offset + count) * mChannels;
+            for (int c = 0; c < mChannels; c++) {
+                float sum = 0;
+                int index = tap0 * mChannels + c;
+                for (int m = 0; m < mTaps; m++) {
+                    sum += phase[m] * mInput[index];
+                    index += mChannels;
+                }
+                out[outIndex + c] = sum;
+            }
+            count++;
+            mOutput++;
+        }
+        discardInput();
+        return count;
+    }
+
+    //drop the input frames no output frame needs anymore
+    private void discardInput() {
+        long first = mOutput * mDown / mUp + 1 - mTaps / 2;
+        int drop = (int) Math.min(mInputCount, Math.max(0, first - mInputStart));
+        if (drop == 0) {
+            return;
+        }
+        System.arraycopy(mInput, drop * mChannels, mInput, 0, (mInputCount - drop) * mChannels);
+        mInputCount -= drop;
+        mInputStart += drop;
+    }
+
+    private void padInput(int frames) {
+        int needed = (mInputCount + frames) * mChannels;
+        if (needed > mInput.length) {
+            mInput = Arrays.copyOf(mInput, needed);
+        }
+        Arrays.fill(mInput, mInputCount * mChannels, needed, 0f);
+        mInputCount += frames;
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    //modified bessel function of the first kind, order 0, for the kaiser window
+    private static double besselI0(double x) {
+        double sum = 1;
+        double term = 1;
+        for (int k = 1; k < 50; k++) {
+            term *= (x / (2 * k)) * (x / (2 * k));
+            sum += term;
+            if (term < sum * 1e-12) {
+                break;
+            }
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,177 @@
+package com.example.owen.voicememos;
+/*
+Owen Brown - 4838488
+Chang Ding - 5275821
+ */
+import android.content.Context;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * seek table of a recording: the time of every compressed frame
+ * built once by scanning the file, then saved in the app files so that opening the recording
+ * again is instant. seeking looks up the frame right before the target, and the decoder drops
+ * the few samples before the target, so seeks land on the exact sample
+ */
+public class SeekIndex {
+    private static final String TAG = "SeekIndex";
+    //2: the frame offsets and sizes are not saved anymore
+    private static final int VERSION = 2;
+
+    private final long[] mTimesUs;     //presentation time of each frame
+    private final long mDurationUs;
+
+    private SeekIndex(long[] timesUs, long durationUs) {
+        mTimesUs = timesUs;
+        mDurationUs = durationUs;
+    }
+
+    //get the seek index of a recording, from the saved copy if it is still up to date
+    public static SeekIndex get(Context context, String path) throws IOException {
+        File file = new File(path);
+        File indexFile = getIndexFile(context, file);
+        SeekIndex index = load(indexFile, file);
+        if (index == null) {
+            index = build(path);
+            try {
+                index.save(indexFile, file);
+            } catch (IOException e) {
+                Log.w(TAG, "could not save " + indexFile, e);
+            }
+        }
+        return index;
+    }
+
+    public int getNumFrames() {
+        return mTimesUs.length;
+    }
+
+    public long getDurationUs() {
+        return mDurationUs;
+    }
+
+    public long getFrameTimeUs(int frame) {
+        return mTimesUs[frame];
+    }
+
+    //index of the last frame starting at or before timeUs
+    public int findFrame(long timeUs) {
+        int i = Arrays.binarySearch(mTimesUs, timeUs);
+        if (i < 0) {
+            i = -i - 2;     //insertion point - 1
+        }
+        return Math.max(0, Math.min(i, mTimesUs.length - 1));
+    }
+
+    //scan the first audio track of the file
+    private static SeekIndex build(String path) throws IOException {
+        MediaExtractor extractor = new MediaExtractor();
+        try {
+            extractor.setDataSource(path);
+            MediaFormat format = null;
+            int track;
+            for (track = 0; track < extractor.getTrackCount(); track++) {
+                format = extractor.getTrackFormat(track);
+                if (format.getString(MediaFormat.KEY_MIME).startsWith("audio/")) {
+                    break;
+                }
+            }
+            if (format == null || track == extractor.getTrackCount()) {
+                throw new IOException("No audio track found in " + path);
+            }
+            extractor.selectTrack(track);
+            int capacity = 1024;
+            long[] times = new long[capacity];
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            int numFrames = 0;
+            while (extractor.readSampleData(buffer, 0) >= 0) {
+                if (numFrames == capacity) {
+                    capacity *= 2;
+                    times = Arrays.copyOf(times, capacity);
+                }
+                times[numFrames] = extractor.getSampleTime();
+                numFrames++;
+                extractor.advance();
+            }
+            long durationUs = format.containsKey(MediaFormat.KEY_DURATION)
+                    ? format.getLong(MediaFormat.KEY_DURATION) : 0;
+            if (numFrames > 0 && durationUs < times[numFrames - 1]) {
+                durationUs = times[numFrames - 1];
+            }
+            return new SeekIndex(Arrays.copyOf(times, numFrames), durationUs);
+        } finally {
+            extractor.release();
+        }
+    }
+
+    //return null if there is no saved index, or if the recording changed since it was saved
+    private static SeekIndex load(File indexFile, File file) {
+        if (!indexFile.exists()) {
+            return null;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+            if (in.readInt() != VERSION || in.readLong() != file.length()
+                    || in.readLong() != file.lastModified()) {
+                return null;
+            }
+            long durationUs = in.readLong();
+            int numFrames = in.readInt();
+            long[] times = new long[numFrames];
+            for (int i = 0; i < numFrames; i++) {
+                times[i] = in.readLong();
+            }
+            return new SeekIndex(times, durationUs);
+        } catch (IOException e) {
+            Log.w(TAG, "could not read " + indexFile, e);
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private void save(File indexFile, File file) throws IOException {
+        indexFile.getParentFile().mkdirs();
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(indexFile)));
+        try {
+            out.writeInt(VERSION);
+            out.writeLong(file.length());
+            out.writeLong(file.lastModified());
+            out.writeLong(mDurationUs);
+            out.writeInt(mTimesUs.length);
+            for (int i = 0; i < mTimesUs.length; i++) {
+                out.writeLong(mTimesUs[i]);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private static File getIndexFile(Context context, File file) {
+        return new File(new File(context.getFilesDir(), "seek"), file.getName() + ".idx");
+    }
+
+    private static void closeQuietly(DataInputStream in) {
+        if (in != null) {
+            try {
+                in.close();
+            } catch (IOException e) {
+                //nothing to do
+            }
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.owen.voicememos;
+/*
+Owen Brown - 4838488
+Chang Ding - 5275821
+ */
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+/**
+ * finds the silence at the start and end of a recording and the long pauses in it, for the trim
+ * suggestions of TrimAudio. works on the energy of each frame of samplesPerFrame samples (the
+ * frames WriteFile cuts on), so the suggestions are exact frame boundaries. the thresholds come
+ * from the recording itself (its quiet and loud frames), with hysteresis: a silence starts under
+ * the low threshold and only ends above the high one, and a click shorter than MIN_SOUND does
+ * not end it. one pass over the samples, well under a second for an hour of 8kHz mono
+ */
+public class SilenceDetector {
+    //in seconds
+    private static final float MIN_SOUND = 0.25f;
+    private static final float MIN_PAUSE = 1.0f;
+    //left before the first sound and after the last one, so that no word is clipped
+    private static final float MARGIN = 0.2f;
+    //a recording whose loud and quiet frames are closer than this has no silence to find
+    private static final float MIN_RANGE_DB = 10f;
+    //thresholds, as a fraction of the way from the quiet frames level to the loud frames level
+    private static final float ENTER_SILENCE = 0.25f;
+    private static final float LEAVE_SILENCE = 0.4f;
+
+    public static class Result {
+        private final int mNumFrames;
+        private final int mSoundStart;
+        private final int mSoundEnd;
+        private final int[] mPauseStarts;
+        private final int[] mPauseEnds;
+
+        private Result(int numFrames, int soundStart, int soundEnd, int[] pauseStarts,
+                       int[] pauseEnds) {
+            mNumFrames = numFrames;
+            mSoundStart = soundStart;
+            mSoundEnd = soundEnd;
+            mPauseStarts = pauseStarts;
+            mPauseEnds = pauseEnds;
+        }
+
+        public int getNumFrames() {
+            return mNumFrames;
+        }
+
+        //first frame to keep: the frames before it are silence
+        public int getSoundStart() {
+            return mSoundStart;
+        }
+
+        //frame after the last one to keep: the frames from it are silence
+        public int getSoundEnd() {
+            return mSoundEnd;
+        }
+
+        public boolean hasSilence() {
+            return mSoundStart > 0 || mSoundEnd < mNumFrames || mPauseStarts.length > 0;
+        }
+
+        //the pauses of at least MIN_PAUSE between sounds, [start, end) in frames
+        public int getNumPauses() {
+            return mPauseStarts.length;
+        }
+
+        public int getPauseStart(int i) {
+            return mPauseStarts[i];
+        }
+
+        public int getPauseEnd(int i) {
+            return mPauseEnds[i];
+        }
+    }
+
+    //numSamples samples per channel from the position of samples, which is not changed
+    public static Result detect(ShortBuffer samples, int numSamples, int channels,
+                                int sampleRate, int samplesPerFrame) {
+        int numFrames = (numSamples + samplesPerFrame - 1) / samplesPerFrame;
+        float[] levels = frameLevels(samples, numSamples, channels, samplesPerFrame, numFrames);
+        if (numFrames == 0) {
+            return new Result(0, 0, 0, new int[0], new int[0]);
+        }
+        float[] sorted = levels.clone();
+        Arrays.sort(sorted);
+        float quiet = sorted[(int) ((numFrames - 1) * 0.1f)];
+        float loud = sorted[(int) ((numFrames - 1) * 0.9f)];
+        if (loud - quiet < MIN_RANGE_DB) {
+            return new Result(numFrames, 0, numFrames, new int[0], new int[0]);
+        }
+        float enter = quiet + ENTER_SILENCE * (loud - quiet);
+        float leave = quiet + LEAVE_SILENCE * (loud - quiet);
+        float framesPerSecond = (float) sampleRate / samplesPerFrame;
+        int minSound = Math.max(1, Math.round(MIN_SOUND * framesPerSecond));
+        int minPause = Math.max(1, Math.round(MIN_PAUSE * framesPerSecond));
+        int margin = Math.round(MARGIN * framesPerSecond);
+
+        //the sounds: above leave, until under enter. those shorter than minSound are dropped
+        int[] soundStarts = new int[16];
+        int[] soundEnds = new int[16];
+        int numSounds = 0;
+        int i = 0;
+        while (i < numFrames) {
+            if (levels[i] < leave) {
+                i++;
+                continue;
+            }
+            int start = i;
+            while (i < numFrames && levels[i] >= enter) {
+                i++;
+            }
+            if (i - start < minSound) {
+                continue;
+            }
+            if (numSounds == soundStarts.length) {
+                soundStarts = Arrays.copyOf(soundStarts, numSounds * 2);
+                soundEnds = Arrays.copyOf(soundEnds, numSounds * 2);
+            }
+            soundStarts[numSounds] = start;
+            soundEnds[numSounds] = i;
+            numSounds++;
+        }
+        if (numSounds == 0) {
+            return new Result(numFrames, 0, numFrames, new int[0], new int[0]);
+        }
+
+        //the gaps of at least minPause between the sounds
+        int[] pauseStarts = new int[numSounds - 1];
+        int[] pauseEnds = new int[numSounds - 1];
+        int numPauses = 0;
+        for (int s = 1; s < numSounds; s++) {
+            if (soundStarts[s] - soundEnds[s - 1] >= minPause) {
+                pauseStarts[numPauses] = soundEnds[s - 1];
+                pauseEnds[numPauses] = soundStarts[s];
+                numPauses++;
+            }
+        }
+        int soundStart = Math.max(0, soundStarts[0] - margin);
+        int soundEnd = Math.min(numFrames, soundEnds[numSounds - 1] + margin);
+        return new Result(numFrames, soundStart, soundEnd, Arrays.copyOf(pauseStarts, numPauses),
+                Arrays.copyOf(pauseEnds, numPauses));
+    }
+
+    //mean square of each frame, in dB (full scale is 0, digital silence -120)
+    private static float[] frameLevels(ShortBuffer samples, int numSamples, int channels,
+                                       int samplesPerFrame, int numFrames) {
+        float[] levels = new float[numFrames];
+        int base = samples.position();
+        int total = Math.min(numSamples * channels, samples.remaining());
+        int frameSamples = samplesPerFrame * channels;
+        for (int f = 0; f < numFrames; f++) {
+            int start = f * frameSamples;
+            int end = Math.min(total, start + frameSamples);
+            long sum = 0;
+            for (int i = start; i < end; i++) {
+                int value = samples.get(base + i);
+                sum += value * value;
+            }
+            double meanSquare = 0;
+            if (end > start) {
+                meanSquare = (double) sum / (end - start) / (32768.0 * 32768.0);
+            }
+            levels[f] = (meanSquare > 1e-12) ? (float) (10 * Math.log10(meanSquare)) : -120f;
+        }
+        return levels;
+    }
+}
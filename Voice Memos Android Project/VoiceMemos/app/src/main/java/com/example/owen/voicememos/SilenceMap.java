@@ -0,0 +1,131 @@
+package com.example.owen.voicememos;
+/*
+Owen Brown - 4838488
+Chang Ding - 5275821
+ */
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * the silent spans of a recording, that skip silence playback jumps over
+ * computed once from the frame gains of SoundFile and stored in the database as a blob, so
+ * playback never has to analyse the audio. a short bit of every pause is kept on each side, so
+ * the speech does not run together: the pauses are compressed rather than removed
+ */
+public class SilenceMap {
+    //a pause shorter than this is left alone, in seconds
+    private static final float MIN_SILENCE = 0.6f;
+    //kept on each side of a pause, in seconds
+    private static final float KEEP = 0.15f;
+    //silent if the frame gain is under this fraction of the loud frames gain
+    private static final float RELATIVE_THRESHOLD = 0.25f;
+    //and always silent under this gain (a peak around -60dB)
+    private static final int MIN_THRESHOLD = 6;
+
+    //sorted, non overlapping [mStarts[i], mEnds[i]) spans, in sample frames
+    private final long[] mStarts;
+    private final long[] mEnds;
+
+    private SilenceMap(long[] starts, long[] ends) {
+        mStarts = starts;
+        mEnds = ends;
+    }
+
+    //frameGains as computed by SoundFile, one per samplesPerFrame samples
+    public static SilenceMap fromFrameGains(int[] frameGains, int samplesPerFrame, int sampleRate) {
+        int threshold = Math.max(MIN_THRESHOLD,
+                (int) (RELATIVE_THRESHOLD * loudGain(frameGains)));
+        long minFrames = (long) (MIN_SILENCE * sampleRate);
+        long keep = (long) (KEEP * sampleRate);
+        long[] starts = new long[16];
+        long[] ends = new long[16];
+        int count = 0;
+        int i = 0;
+        while (i < frameGains.length) {
+            if (frameGains[i] >= threshold) {
+                i++;
+                continue;
+            }
+            int first = i;
+            while (i < frameGains.length && frameGains[i] < threshold) {
+                i++;
+            }
+            long start = (long) first * samplesPerFrame;
+            long end = (long) i * samplesPerFrame;
+            if (end - start < minFrames) {
+                continue;
+            }
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, count * 2);
+                ends = Arrays.copyOf(ends, count * 2);
+            }
+            //no need to keep anything at the very start or end of the recording
+            starts[count] = (first == 0) ? 0 : start + keep;
+            ends[count] = (i == frameGains.length) ? end : end - keep;
+            count++;
+        }
+        return new SilenceMap(Arrays.copyOf(starts, count), Arrays.copyOf(ends, count));
+    }
+
+    //the gain loud frames reach: the 90th percentile, so that a few clicks don't count
+    private static int loudGain(int[] frameGains) {
+        if (frameGains.length == 0) {
+            return 0;
+        }
+        int[] sorted = frameGains.clone();
+        Arrays.sort(sorted);
+        return sorted[(int) (sorted.length * 0.9f)];
+    }
+
+    //if position is in a silent span, the end of that span, else position itself
+    public long skip(long position) {
+        int i = Arrays.binarySearch(mStarts, position);
+        if (i < 0) {
+            i = -i - 2;    //last span starting before position
+        }
+        if (i >= 0 && position < mEnds[i]) {
+            return mEnds[i];
+        }
+        return position;
+    }
+
+    //frames from position to the start of the next silent span, Long.MAX_VALUE if there is none
+    public long audibleFrames(long position) {
+        int i = Arrays.binarySearch(mStarts, position);
+        if (i >= 0) {
+            return 0;
+        }
+        i = -i - 1;       //first span starting after position
+        return (i < mStarts.length) ? mStarts[i] - position : Long.MAX_VALUE;
+    }
+
+    //total length of the silent spans, in frames
+    public long getSilentFrames() {
+        long total = 0;
+        for (int i = 0; i < mStarts.length; i++) {
+            total += mEnds[i] - mStarts[i];
+        }
+        return total;
+    }
+
+    public byte[] toBytes() {
+        ByteBuffer buffer = ByteBuffer.allocate(mStarts.length * 16);
+        for (int i = 0; i < mStarts.length; i++) {
+            buffer.putLong(mStarts[i]);
+            buffer.putLong(mEnds[i]);
+        }
+        return buffer.array();
+    }
+
+    public static SilenceMap fromBytes(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int count = bytes.length / 16;
+        long[] starts = new long[count];
+        long[] ends = new long[count];
+        for (int i = 0; i < count; i++) {
+            starts[i] = buffer.getLong();
+            ends[i] = buffer.getLong();
+        }
+        return new SilenceMap(starts, ends);
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.owen.voicememos;
+/*
+Owen Brown - 4838488
+Chang Ding - 5275821
+ */
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import java.io.File;
+
+/**
+ * gets the silence map of a recording from the SILENCE table, or computes and stores it
+ * computing needs the decoded recording (from SoundFileCache), so it is done at most once per
+ * version of the file. all the work is done on a background thread
+ */
+public class SilenceMapLoader {
+    private static final String TAG = "SilenceMapLoader";
+
+    //called on the main thread, map is null if the recording could not be analysed
+    public interface Callback {
+        void onSilenceMap(String path, SilenceMap map);
+    }
+
+    public static void load(Context context, final int recordingId, final String path,
+                            final Callback callback) {
+        final Context appContext = context.getApplicationContext();
+        VoiceMemosApplication.runInBackground(new VoiceMemosApplication.Job<SilenceMap>() {
+            @Override
+            public SilenceMap run() {
+                return loadOrCompute(appContext, recordingId, path);
+            }
+
+            @Override
+            public void done(SilenceMap map) {
+                callback.onSilenceMap(path, map);
+            }
+        });
+    }
+
+    //forget the map of a deleted recording
+    public static void delete(SQLiteDatabase db, int recordingId) {
+        db.delete("SILENCE", "recording_id = " + recordingId, null);
+    }
+
+    private static SilenceMap loadOrCompute(Context context, int recordingId, String path) {
+        long mtime = new File(path).lastModified();
+        MyDatabaseHelper dbHelper = VoiceMemosApplication.getDatabaseHelper(context);
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        Cursor cursor = db.query("SILENCE", new String[]{"map"},
+                "recording_id = " + recordingId + " AND file_mtime = " + mtime,
+                null, null, null, null);
+        try {
+            if (cursor.moveToFirst()) {
+                return SilenceMap.fromBytes(cursor.getBlob(0));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        SoundFile soundFile;
+        try {
+            soundFile = SoundFileCache.get().acquire(path);
+        } catch (Exception e) {
+            Log.e(TAG, "could not decode " + path, e);
+            return null;
+        }
+        SilenceMap map;
+        try {
+            map = SilenceMap.fromFrameGains(soundFile.getFrameGains(),
+                    soundFile.getSamplesPerFrame(), soundFile.getSampleRate());
+        } finally {
+            SoundFileCache.get().release(soundFile);
+        }
+        ContentValues values = new ContentValues();
+        values.put("recording_id", recordingId);
+        values.put("file_mtime", mtime);
+        values.put("map", map.toBytes());
+        dbHelper.getWritableDatabase().replace("SILENCE", null, values);
+        return map;
+    }
+}
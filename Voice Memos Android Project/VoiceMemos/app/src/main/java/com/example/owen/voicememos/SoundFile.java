@@ -25,13 +25,16 @@ import android.util.Log;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.io.StringWriter;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.ShortBuffer;
+import java.util.Arrays;
 
 public class SoundFile {
+    // Samples per channel of silence an encoded stream starts with (the AAC priming frames), at
+    // the encoded rate. WriteFile writes no edit list, so a decoder plays them too.
+    public static final int ENCODER_DELAY = 2048;
+
     private ProgressListener mProgressListener = null;
     private File mInputFile = null;
 
@@ -92,6 +95,37 @@ public class SoundFile {
         return 1024;  // just a fixed value here...
     }
 
+    public int getChannels() {
+        return mChannels;
+    }
+
+    // Return the number of samples per channel.
+    public int getNumSamples() {
+        return mNumSamples;
+    }
+
+    public int getNumFrames() {
+        return mNumFrames;
+    }
+
+    // Return the gain of each frame of getSamplesPerFrame() samples, see computeFrameGains.
+    public int[] getFrameGains() {
+        return mFrameGains;
+    }
+
+    // Return a read-only view of the decoded samples, positioned at the first one. Each caller gets
+    // its own view, so it can be read from any thread.
+    public ShortBuffer getSamples() {
+        ShortBuffer samples = mDecodedSamples.asReadOnlyBuffer();
+        samples.rewind();
+        return samples;
+    }
+
+    // Return the number of bytes of memory used by the decoded samples.
+    public int getDecodedSize() {
+        return mDecodedBytes.capacity();
+    }
+
 
     private void ReadFile(File inputFile)
         throws java.io.FileNotFoundException,
@@ -122,10 +156,54 @@ public class SoundFile {
         int expectedNumSamples =
             (int)((format.getLong(MediaFormat.KEY_DURATION) / 1000000.f) * mSampleRate + 0.5f);
 
-        MediaCodec codec = MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME));
-        codec.configure(format, null, null, 0);
-        codec.start();
+        MediaCodec codec = CodecPool.get().acquireDecoder(format);
+        // A codec that threw is not given back to the pool, it may be in any state.
+        boolean healthy = false;
+        try {
+            boolean finished = decodeSamples(extractor, format, codec, expectedNumSamples);
+            healthy = true;
+            if (!finished) {
+                return;
+            }
+        } finally {
+            extractor.release();
+            if (healthy) {
+                CodecPool.get().release(codec);
+            } else {
+                CodecPool.get().discard(codec);
+            }
+        }
+        mNumSamples = mDecodedBytes.position() / (mChannels * 2);  // One sample = 2 bytes.
+        mDecodedBytes.rewind();
+        mDecodedBytes.order(ByteOrder.LITTLE_ENDIAN);
+        mDecodedSamples = mDecodedBytes.asShortBuffer();
+        mAvgBitRate = (int)((mFileSize * 8) * ((float)mSampleRate / mNumSamples) / 1000);
 
+        // Temporary hack to make it work with the old version.
+        mNumFrames = mNumSamples / getSamplesPerFrame();
+        if (mNumSamples % getSamplesPerFrame() != 0){
+            mNumFrames++;
+        }
+        mFrameGains = new int[mNumFrames];
+        mFrameLens = new int[mNumFrames];
+        mFrameOffsets = new int[mNumFrames];
+        // here gain = sqrt(max value of 1st channel)...
+        PcmUtils.computeFrameGains(mDecodedSamples, mChannels, getSamplesPerFrame(), mFrameGains);
+        int frameLens = (int)((1000 * mAvgBitRate / 8) *
+                ((float)getSamplesPerFrame() / mSampleRate));
+        for (i=0; i<mNumFrames; i++){
+            mFrameLens[i] = frameLens;  // totally not accurate...
+            mFrameOffsets[i] = (int)(i * (1000 * mAvgBitRate / 8) *  //  = i * frameLens
+                    ((float)getSamplesPerFrame() / mSampleRate));
+        }
+        mDecodedSamples.rewind();
+        // DumpSamples();  // Uncomment this line to dump the samples in a TSV file.
+    }
+
+    // Decode the selected track of extractor into mDecodedBytes. Return false if the progress
+    // listener cancelled it.
+    private boolean decodeSamples(MediaExtractor extractor, MediaFormat format, MediaCodec codec,
+                                  int expectedNumSamples) {
         int decodedSamplesSize = 0;  // size of the output buffer containing decoded samples.
         byte[] decodedSamples = null;
         ByteBuffer[] inputBuffers = codec.getInputBuffers();
@@ -172,12 +250,7 @@ public class SoundFile {
                         if (!mProgressListener.reportProgress((float)(tot_size_read) / mFileSize)) {
                             // We are asked to stop reading the file. Returning immediately. The
                             // SoundFile object is invalid and should NOT be used afterward!
-                            extractor.release();
-                            extractor = null;
-                            codec.stop();
-                            codec.release();
-                            codec = null;
-                            return;
+                            return false;
                         }
                     }
                 }
@@ -195,36 +268,16 @@ public class SoundFile {
                 outputBuffers[outputBufferIndex].clear();
                 // Check if buffer is big enough. Resize it if it's too small.
                 if (mDecodedBytes.remaining() < info.size) {
-                    // Getting a rough estimate of the total size, allocate 20% more, and
-                    // make sure to allocate at least 5MB more than the initial size.
                     int position = mDecodedBytes.position();
-                    int newSize = (int)((position * (1.0 * mFileSize / tot_size_read)) * 1.2);
-                    if (newSize - position < info.size + 5 * (1<<20)) {
-                        newSize = position + info.size + 5 * (1<<20);
-                    }
-                    ByteBuffer newDecodedBytes = null;
-                    // Try to allocate memory. If we are OOM, try to run the garbage collector.
-                    int retry = 10;
-                    while(retry > 0) {
-                        try {
-                            newDecodedBytes = ByteBuffer.allocate(newSize);
-                            break;
-                        } catch (OutOfMemoryError oome) {
-                            // setting android:largeHeap="true" in <application> seem to help not
-                            // reaching this section.
-                            retry--;
-                        }
-                    }
-                    if (retry == 0) {
+                    int newSize = PcmUtils.estimateDecodedSize(
+                            position, mFileSize, tot_size_read, info.size);
+                    ByteBuffer newDecodedBytes = PcmUtils.growBuffer(mDecodedBytes, newSize);
+                    if (newDecodedBytes == null) {
                         // Failed to allocate memory... Stop reading more data and finalize the
                         // instance with the data decoded so far.
                         break;
                     }
-                    //ByteBuffer newDecodedBytes = ByteBuffer.allocate(newSize);
-                    mDecodedBytes.rewind();
-                    newDecodedBytes.put(mDecodedBytes);
                     mDecodedBytes = newDecodedBytes;
-                    mDecodedBytes.position(position);
                 }
                 mDecodedBytes.put(decodedSamples, 0, info.size);
                 codec.releaseOutputBuffer(outputBufferIndex, false);
@@ -249,185 +302,264 @@ public class SoundFile {
                 break;
             }
         }
-        mNumSamples = mDecodedBytes.position() / (mChannels * 2);  // One sample = 2 bytes.
-        mDecodedBytes.rewind();
-        mDecodedBytes.order(ByteOrder.LITTLE_ENDIAN);
-        mDecodedSamples = mDecodedBytes.asShortBuffer();
-        mAvgBitRate = (int)((mFileSize * 8) * ((float)mSampleRate / mNumSamples) / 1000);
-
-        extractor.release();
-        extractor = null;
-        codec.stop();
-        codec.release();
-        codec = null;
-
-        // Temporary hack to make it work with the old version.
-        mNumFrames = mNumSamples / getSamplesPerFrame();
-        if (mNumSamples % getSamplesPerFrame() != 0){
-            mNumFrames++;
-        }
-        mFrameGains = new int[mNumFrames];
-        mFrameLens = new int[mNumFrames];
-        mFrameOffsets = new int[mNumFrames];
-        int j;
-        int gain, value;
-        int frameLens = (int)((1000 * mAvgBitRate / 8) *
-                ((float)getSamplesPerFrame() / mSampleRate));
-        for (i=0; i<mNumFrames; i++){
-            gain = -1;
-            for(j=0; j<getSamplesPerFrame(); j++) {
-                value = 0;
-                for (int k=0; k<mChannels; k++) {
-                    if (mDecodedSamples.remaining() > 0) {
-                        value += Math.abs(mDecodedSamples.get());
-                    }
-                }
-                value /= mChannels;
-                if (gain < value) {
-                    gain = value;
-                }
-            }
-            mFrameGains[i] = (int)Math.sqrt(gain);  // here gain = sqrt(max value of 1st channel)...
-            mFrameLens[i] = frameLens;  // totally not accurate...
-            mFrameOffsets[i] = (int)(i * (1000 * mAvgBitRate / 8) *  //  = i * frameLens
-                    ((float)getSamplesPerFrame() / mSampleRate));
-        }
-        mDecodedSamples.rewind();
-        // DumpSamples();  // Uncomment this line to dump the samples in a TSV file.
+        return true;
     }
 
     public void WriteFile(File outputFile, int startFrame, int numFrames)
             throws IOException {
+        WriteFile(outputFile, startFrame, numFrames, new ExportSettings());
+    }
+
+    public void WriteFile(File outputFile, int startFrame, int numFrames, ExportSettings settings)
+            throws IOException {
         float startTime = (float)startFrame * getSamplesPerFrame() / mSampleRate;
         float endTime = (float)(startFrame + numFrames) * getSamplesPerFrame() / mSampleRate;
-        WriteFile(outputFile, startTime, endTime);
+        WriteFile(outputFile, startTime, endTime, settings);
     }
 
     public void WriteFile(File outputFile, float startTime, float endTime)
             throws IOException {
-        int startOffset = (int)(startTime * mSampleRate) * 2 * mChannels;
-        int numSamples = (int)((endTime - startTime) * mSampleRate);
-        // Some devices have problems reading mono AAC files (e.g. Samsung S3). Making it stereo.
-        int numChannels = (mChannels == 1) ? 2 : mChannels;
+        WriteFile(outputFile, startTime, endTime, new ExportSettings());
+    }
 
-        String mimeType = "audio/mp4a-latm";
-        int bitrate = 64000 * numChannels;  // rule of thumb for a good quality: 64kbps per channel.
-        MediaCodec codec = MediaCodec.createEncoderByType(mimeType);
-        MediaFormat format = MediaFormat.createAudioFormat(mimeType, mSampleRate, numChannels);
-        format.setInteger(MediaFormat.KEY_BIT_RATE, bitrate);
-        codec.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
-        codec.start();
-
-        // Get an estimation of the encoded data based on the bitrate. Add 10% to it.
-        int estimatedEncodedSize = (int)((endTime - startTime) * (bitrate / 8) * 1.1);
-        ByteBuffer encodedBytes = ByteBuffer.allocate(estimatedEncodedSize);
-        ByteBuffer[] inputBuffers = codec.getInputBuffers();
-        ByteBuffer[] outputBuffers = codec.getOutputBuffers();
-        MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
-        boolean done_reading = false;
-        long presentation_time = 0;
-
-        int frame_size = 1024;  // number of samples per frame per channel for an mp4 (AAC) stream.
-        byte buffer[] = new byte[frame_size * numChannels * 2];  // a sample is coded with a short.
-        mDecodedBytes.position(startOffset);
-        numSamples += (2 * frame_size);  // Adding 2 frames, Cf. priming frames for AAC.
-        int tot_num_frames = 1 + (numSamples / frame_size);  // first AAC frame = 2 bytes
-        if (numSamples % frame_size != 0) {
-            tot_num_frames++;
+    public void WriteFile(File outputFile, float startTime, float endTime, ExportSettings settings)
+            throws IOException {
+        WriteFile(outputFile, startTime, endTime, settings, null);
+    }
+
+    // Encode the samples between startTime and endTime (in seconds) into outputFile. The settings
+    // can move both ends a few ms to zero crossings, and fade them. Several calls can run at the
+    // same time on the same SoundFile, e.g. from different threads of a batch export.
+    // The progress listener, if any, is called after each frame fed to the encoder. If it returns
+    // false, the export is cancelled and outputFile is not written.
+    public void WriteFile(File outputFile, float startTime, float endTime, ExportSettings settings,
+                          ProgressListener progressListener)
+            throws IOException {
+        EditList edits = new EditList().keep(
+                (long)(startTime * mSampleRate), (long)(endTime * mSampleRate));
+        WriteFile(outputFile, edits, settings, progressListener);
+    }
+
+    // Encode the kept ranges of edits (in samples per channel), one after the other, into
+    // outputFile. It is one pass over the samples and one encoder session however many ranges
+    // there are. Each end of a range can move a few ms to a zero crossing, and is faded (see the
+    // settings). In the compressed domain mode of the settings, the AAC frames of the ranges are
+    // copied instead, if this file is AAC. Same threading and progress as above.
+    public void WriteFile(File outputFile, EditList edits, ExportSettings settings,
+                          ProgressListener progressListener)
+            throws IOException {
+        if (settings.isCopyFrames() && mInputFile != null
+                && FrameCopier.copy(mInputFile, edits, outputFile)) {
+            return;
         }
-        int[] frame_sizes = new int[tot_num_frames];
-        int num_out_frames = 0;
-        int num_frames=0;
-        int num_samples_left = numSamples;
-        int encodedSamplesSize = 0;  // size of the output buffer containing the encoded samples.
-        byte[] encodedSamples = null;
-        while (true) {
-            // Feed the samples to the encoder.
-            int inputBufferIndex = codec.dequeueInputBuffer(100);
-            if (!done_reading && inputBufferIndex >= 0) {
-                if (num_samples_left <= 0) {
-                    // All samples have been read.
-                    codec.queueInputBuffer(
-                            inputBufferIndex, 0, 0, -1, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
-                    done_reading = true;
-                } else {
-                    inputBuffers[inputBufferIndex].clear();
-                    if (buffer.length > inputBuffers[inputBufferIndex].remaining()) {
-                        // Input buffer is smaller than one frame. This should never happen.
-                        continue;
-                    }
-                    // bufferSize is a hack to create a stereo file from a mono stream.
-                    int bufferSize = (mChannels == 1) ? (buffer.length / 2) : buffer.length;
-                    if (mDecodedBytes.remaining() < bufferSize) {
-                        for (int i=mDecodedBytes.remaining(); i < bufferSize; i++) {
-                            buffer[i] = 0;  // pad with extra 0s to make a full frame.
-                        }
-                        mDecodedBytes.get(buffer, 0, mDecodedBytes.remaining());
+        edits = snapEdits(edits, settings);
+        int numSamples = (int) edits.getKeptFrames();
+        MediaFormat format = getExportFormat(mSampleRate, mChannels, settings);
+        int numChannels = format.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+        int sampleRate = format.getInteger(MediaFormat.KEY_SAMPLE_RATE);  // may be lower than ours.
+        int bitrate = format.getInteger(MediaFormat.KEY_BIT_RATE);
+        MediaCodec codec = CodecPool.get().acquireEncoder(format);
+        // A codec that threw is not given back to the pool, it may be in any state.
+        boolean healthy = false;
+        ByteBuffer encodedBytes;
+        int[] frame_sizes;
+        // The AudioSpecificConfig, the first sample of the stream.
+        byte[] config = null;
+        try {
+
+            // Get an estimation of the encoded data based on the bitrate. Add 10% to it.
+            int estimatedEncodedSize =
+                    Math.max(4096, (int)((float)numSamples / mSampleRate * (bitrate / 8) * 1.1));
+            encodedBytes = ByteBuffer.allocate(estimatedEncodedSize);
+            ByteBuffer[] inputBuffers = codec.getInputBuffers();
+            ByteBuffer[] outputBuffers = codec.getOutputBuffers();
+            MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+            boolean done_reading = false;
+            long presentation_time = 0;
+
+            // number of samples per frame per channel for an mp4 (AAC) stream.
+            int frame_size = 1024;
+            int frame_bytes = frame_size * numChannels * 2;  // a sample is coded with a short.
+            // The kept ranges are read one after the other, as floats, with their ends faded.
+            EditList.Reader reader = new EditList.Reader(edits, mDecodedSamples, 0, mChannels,
+                    (int)(settings.getCutFade() * mSampleRate));
+            if (settings.getNoiseReduction() > 0 && edits.getNumRanges() > 0) {
+                // The noise profile comes from everything between the first and last kept samples,
+                // measured on all the cores. The kept samples are then denoised as they are read.
+                long firstFrame = edits.getStart(0);
+                int numProfiled = (int)(edits.getEnd(edits.getNumRanges() - 1) - firstFrame);
+                ShortBuffer profiled = mDecodedSamples.duplicate();
+                profiled.position((int) firstFrame * mChannels);
+                NoiseReducer reducer =
+                        new NoiseReducer(mSampleRate, mChannels, settings.getNoiseReduction());
+                float[][] noise = reducer.noiseProfile(profiled, numProfiled);
+                if (noise != null) {
+                    reader.setProcessor(reducer.createProcessor(noise), reducer.getLatency());
+                }
+            }
+            // Going down to a lower rate, the samples are resampled a frame at a time. From here
+            // on, numSamples counts samples at the encoded rate.
+            Resampler resampler = null;
+            float[] inputBlock = null;
+            if (sampleRate != mSampleRate) {
+                resampler = new Resampler(mSampleRate, sampleRate, mChannels);
+                numSamples = (int) resampler.getOutputFrames(numSamples);
+                inputBlock = new float[frame_size * mChannels];
+            }
+            numSamples += ENCODER_DELAY;  // Adding 2 frames, Cf. priming frames for AAC.
+            int tot_num_frames = 1 + (numSamples / frame_size);  // first AAC frame = 2 bytes
+            if (numSamples % frame_size != 0) {
+                tot_num_frames++;
+            }
+            frame_sizes = new int[tot_num_frames];
+            // The effects, if any, work on one frame at a time, in floats, after the resampling and
+            // before the upmix.
+            ProcessorChain processors = settings.createProcessorChain(
+                    sampleRate, mChannels, numSamples - ENCODER_DELAY);
+            float[] block = new float[frame_size * mChannels];
+            short[] blockSamples = new short[frame_size * mChannels];
+            ShortBuffer processed = ShortBuffer.wrap(blockSamples);
+            int num_out_frames = 0;
+            int num_frames=0;
+            int num_samples_left = numSamples;
+            // size of the output buffer containing the encoded samples.
+            int encodedSamplesSize = 0;
+            byte[] encodedSamples = null;
+            while (true) {
+                // Feed the samples to the encoder.
+                int inputBufferIndex = codec.dequeueInputBuffer(100);
+                if (!done_reading && inputBufferIndex >= 0) {
+                    if (num_samples_left <= 0) {
+                        // All samples have been read.
+                        codec.queueInputBuffer(
+                                inputBufferIndex, 0, 0, -1, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                        done_reading = true;
                     } else {
-                        mDecodedBytes.get(buffer, 0, bufferSize);
-                    }
-                    if (mChannels == 1) {
-                        for (int i=bufferSize - 1; i >= 1; i -= 2) {
-                            buffer[2*i + 1] = buffer[i];
-                            buffer[2*i] = buffer[i-1];
-                            buffer[2*i - 1] = buffer[2*i + 1];
-                            buffer[2*i - 2] = buffer[2*i];
+                        ByteBuffer inputBuffer = inputBuffers[inputBufferIndex];
+                        inputBuffer.clear();
+                        if (frame_bytes > inputBuffer.remaining()) {
+                            // Input buffer is smaller than one frame. This should never happen.
+                            continue;
+                        }
+                        // Write the samples straight into the codec buffer, without staging them.
+                        ShortBuffer input =
+                                inputBuffer.order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+                        if (resampler != null) {
+                            // Feed the resampler until it has a whole frame, or has nothing left.
+                            int read = resampler.read(block, frame_size);
+                            while (read < frame_size && !resampler.isFinished()) {
+                                if (!reader.isFinished()) {
+                                    int kept = reader.read(inputBlock, frame_size);
+                                    resampler.write(inputBlock, kept);
+                                } else {
+                                    resampler.endOfInput();
+                                }
+                                read += resampler.read(block, read, frame_size - read);
+                            }
+                            Arrays.fill(block, read * mChannels, block.length, 0f);
+                        } else {
+                            reader.read(block, frame_size);
+                        }
+                        if (processors != null) {
+                            processors.process(block, frame_size, (long) num_frames * frame_size);
+                        }
+                        PcmUtils.toShorts(block, blockSamples, frame_size * mChannels);
+                        processed.clear();
+                        if (numChannels == mChannels) {
+                            PcmUtils.copySamples(processed, input, frame_size * numChannels);
+                        } else {
+                            PcmUtils.upmixMonoToStereo(processed, input, frame_size);
+                        }
+                        num_samples_left -= frame_size;
+                        presentation_time =
+                                (long) (((num_frames++) * frame_size * 1e6) / sampleRate);
+                        codec.queueInputBuffer(
+                                inputBufferIndex, 0, frame_bytes, presentation_time, 0);
+                        if (progressListener != null && !progressListener.reportProgress(
+                                (double)(numSamples - num_samples_left) / numSamples)) {
+                            // We are asked to stop the export. The encoder still holds queued
+                            // buffers, which releasing it to the pool (flush) drops.
+                            healthy = true;
+                            return;
                         }
                     }
-                    num_samples_left -= frame_size;
-                    inputBuffers[inputBufferIndex].put(buffer);
-                    presentation_time = (long) (((num_frames++) * frame_size * 1e6) / mSampleRate);
-                    codec.queueInputBuffer(
-                            inputBufferIndex, 0, buffer.length, presentation_time, 0);
                 }
-            }
 
-            // Get the encoded samples from the encoder.
-            int outputBufferIndex = codec.dequeueOutputBuffer(info, 100);
-            if (outputBufferIndex >= 0 && info.size > 0 && info.presentationTimeUs >=0) {
-                if (num_out_frames < frame_sizes.length) {
-                    frame_sizes[num_out_frames++] = info.size;
-                }
-                if (encodedSamplesSize < info.size) {
-                    encodedSamplesSize = info.size;
-                    encodedSamples = new byte[encodedSamplesSize];
+                // Get the encoded samples from the encoder.
+                int outputBufferIndex = codec.dequeueOutputBuffer(info, 100);
+                if (outputBufferIndex >= 0
+                        && (info.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) != 0) {
+                    // The codec config is not an audio frame, it is kept apart.
+                    if (config == null && info.size > 0) {
+                        config = new byte[info.size];
+                        outputBuffers[outputBufferIndex].get(config, 0, info.size);
+                    }
+                    outputBuffers[outputBufferIndex].clear();
+                    codec.releaseOutputBuffer(outputBufferIndex, false);
+                } else if (outputBufferIndex >= 0 && info.size > 0 && info.presentationTimeUs >=0) {
+                    // The first entry is the codec config's.
+                    if (num_out_frames < frame_sizes.length - 1) {
+                        frame_sizes[1 + num_out_frames++] = info.size;
+                    }
+                    if (encodedSamplesSize < info.size) {
+                        encodedSamplesSize = info.size;
+                        encodedSamples = new byte[encodedSamplesSize];
+                    }
+                    outputBuffers[outputBufferIndex].get(encodedSamples, 0, info.size);
+                    outputBuffers[outputBufferIndex].clear();
+                    codec.releaseOutputBuffer(outputBufferIndex, false);
+                    // Hopefully this should not happen.
+                    if (encodedBytes.remaining() < info.size) {
+                        estimatedEncodedSize = (int)(estimatedEncodedSize * 1.2);  // Add 20%.
+                        ByteBuffer newEncodedBytes = ByteBuffer.allocate(estimatedEncodedSize);
+                        int position = encodedBytes.position();
+                        encodedBytes.rewind();
+                        newEncodedBytes.put(encodedBytes);
+                        encodedBytes = newEncodedBytes;
+                        encodedBytes.position(position);
+                    }
+                    encodedBytes.put(encodedSamples, 0, info.size);
+                } else if (outputBufferIndex == MediaCodec.INFO_OUTPUT_BUFFERS_CHANGED) {
+                    outputBuffers = codec.getOutputBuffers();
+                } else if (outputBufferIndex == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                    // Subsequent data will conform to new format.
+                    // We could check that codec.getOutputFormat(), which is the new output format,
+                    // is what we expect.
                 }
-                outputBuffers[outputBufferIndex].get(encodedSamples, 0, info.size);
-                outputBuffers[outputBufferIndex].clear();
-                codec.releaseOutputBuffer(outputBufferIndex, false);
-                if (encodedBytes.remaining() < info.size) {  // Hopefully this should not happen.
-                    estimatedEncodedSize = (int)(estimatedEncodedSize * 1.2);  // Add 20%.
-                    ByteBuffer newEncodedBytes = ByteBuffer.allocate(estimatedEncodedSize);
-                    int position = encodedBytes.position();
-                    encodedBytes.rewind();
-                    newEncodedBytes.put(encodedBytes);
-                    encodedBytes = newEncodedBytes;
-                    encodedBytes.position(position);
+                if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                    // We got all the encoded data from the encoder.
+                    break;
                 }
-                encodedBytes.put(encodedSamples, 0, info.size);
-            } else if (outputBufferIndex == MediaCodec.INFO_OUTPUT_BUFFERS_CHANGED) {
-                outputBuffers = codec.getOutputBuffers();
-            } else if (outputBufferIndex == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
-                // Subsequent data will conform to new format.
-                // We could check that codec.getOutputFormat(), which is the new output format,
-                // is what we expect.
             }
-            if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
-                // We got all the encoded data from the encoder.
-                break;
+            if (config == null) {
+                // An encoder from the pool does not always send its config again after the flush,
+                // the output format still has it.
+                config = getCodecConfig(codec.getOutputFormat());
+            }
+            frame_sizes[0] = config.length;
+            healthy = true;
+        } finally {
+            if (healthy) {
+                CodecPool.get().release(codec);
+            } else {
+                CodecPool.get().discard(codec);
             }
         }
         int encoded_size = encodedBytes.position();
         encodedBytes.rewind();
-        codec.stop();
-        codec.release();
+        byte[] header = MP4Header.getMP4Header(sampleRate, numChannels, frame_sizes, bitrate);
+        if (header == null) {
+            throw new IOException("Invalid codec config (" + config.length + " bytes) for "
+                    + outputFile);
+        }
 
-        // Write the encoded stream to the file, 4kB at a time.
-        buffer = new byte[4096];
+        // Write the encoded stream to the file, 4kB at a time. A failed write is thrown to the
+        // caller, the file is then incomplete.
+        byte[] buffer = new byte[4096];
+        FileOutputStream outputStream = new FileOutputStream(outputFile);
         try {
-            FileOutputStream outputStream = new FileOutputStream(outputFile);
-            outputStream.write(
-                    MP4Header.getMP4Header(mSampleRate, numChannels, frame_sizes, bitrate));
+            outputStream.write(header);
+            outputStream.write(config);
             while (encoded_size - encodedBytes.position() > buffer.length) {
                 encodedBytes.get(buffer);
                 outputStream.write(buffer);
@@ -437,17 +569,79 @@ public class SoundFile {
                 encodedBytes.get(buffer, 0, remaining);
                 outputStream.write(buffer, 0, remaining);
             }
+            // Make sure the data is on the storage before the caller renames or reports the file.
+            outputStream.getFD().sync();
+        } finally {
             outputStream.close();
-        } catch (IOException e) {
-            Log.e("Ringdroid", "Failed to create the .m4a file.");
-            Log.e("Ringdroid", getStackTrace(e));
         }
     }
 
-    // Return the stack trace of a given exception.
-    private String getStackTrace(Exception e) {
-        StringWriter writer = new StringWriter();
-        e.printStackTrace(new PrintWriter(writer));
-        return writer.toString();
+    // Return the codec config (csd-0) of an encoder output format.
+    private static byte[] getCodecConfig(MediaFormat format) throws IOException {
+        if (!format.containsKey("csd-0")) {
+            throw new IOException("No codec config from the encoder");
+        }
+        ByteBuffer csd = format.getByteBuffer("csd-0").duplicate();
+        csd.rewind();
+        byte[] config = new byte[csd.remaining()];
+        csd.get(config);
+        return config;
+    }
+
+    // Return the ranges of edits inside the file, with their ends moved to zero crossings close by
+    // if the settings ask for it.
+    private EditList snapEdits(EditList edits, ExportSettings settings) {
+        int maxDistance = (int)(settings.getZeroCrossingSearch() * mSampleRate);
+        ShortBuffer all = mDecodedSamples.duplicate();
+        EditList snapped = new EditList();
+        for (int i = 0; i < edits.getNumRanges(); i++) {
+            int start = (int) Math.max(0, Math.min(edits.getStart(i), mNumSamples));
+            int end = (int) Math.max(0, Math.min(edits.getEnd(i), mNumSamples));
+            if (maxDistance > 0) {
+                // Cut where the waveform crosses zero, if there is such a point close enough.
+                start = PcmUtils.findZeroCrossing(all, mChannels, start, mNumSamples, maxDistance);
+                end = PcmUtils.findZeroCrossing(all, mChannels, end, mNumSamples, maxDistance);
+            }
+            snapped.keep(start, end);
+        }
+        return snapped;
+    }
+
+    // Return the format of the AAC stream WriteFile creates from a source with the given sample rate
+    // and number of channels. The settings can lower the sample rate, WriteFile then resamples.
+    public static MediaFormat getExportFormat(
+            int sampleRate, int numChannels, ExportSettings settings) {
+        // Some devices have problems reading mono AAC files (e.g. Samsung S3). The settings can ask
+        // for mono streams to be made stereo.
+        if (numChannels == 1 && settings.isForceStereo()) {
+            numChannels = 2;
+        }
+        sampleRate = settings.getSampleRate(sampleRate);
+        String mimeType = "audio/mp4a-latm";
+        MediaFormat format = MediaFormat.createAudioFormat(mimeType, sampleRate, numChannels);
+        format.setInteger(
+                MediaFormat.KEY_BIT_RATE, settings.getBitrate(sampleRate, numChannels));
+        return format;
+    }
+
+    // Create the decoder for fileName, so that the next ReadFile call can start right away. This
+    // blocks for as long as it takes to create the codec, so it should not be called from the UI
+    // thread.
+    public static void prewarmCodecs(String fileName) {
+        MediaExtractor extractor = new MediaExtractor();
+        try {
+            extractor.setDataSource(fileName);
+            for (int i=0; i<extractor.getTrackCount(); i++) {
+                MediaFormat format = extractor.getTrackFormat(i);
+                if (format.getString(MediaFormat.KEY_MIME).startsWith("audio/")) {
+                    CodecPool.get().prewarm(format);
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            Log.w("Ringdroid", "Could not prewarm the codecs for " + fileName);
+        } finally {
+            extractor.release();
+        }
     }
 }
@@ -0,0 +1,192 @@
+package com.example.owen.voicememos;
+/*
+Owen Brown - 4838488
+Chang Ding - 5275821
+ */
+import android.content.ComponentCallbacks2;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * app wide cache of decoded recordings
+ * going from PlayRecording to EditRecording to TrimAudio should not decode the same file again.
+ * entries are keyed by path, size and modification time, so a file written over (e.g. by a trim)
+ * is decoded again. the cache holds at most a budget of decoded bytes, evicting the least recently
+ * used entries first. entries are reference counted: acquire() and release() must be paired, and
+ * an entry in use is never evicted
+ */
+public class SoundFileCache {
+    private static final String TAG = "SoundFileCache";
+
+    private static SoundFileCache sInstance;
+
+    private final long mBudget;    //max decoded bytes kept, entries in use excepted
+    private long mBytes = 0;       //decoded bytes held by all the entries
+    //least recently used first
+    private final LinkedHashMap<String, Entry> mEntries =
+            new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    //keys being decoded right now, so that two screens don't decode the same file at once
+    private final Set<String> mLoading = new HashSet<String>();
+
+    private static class Entry {
+        final String path;
+        final SoundFile soundFile;
+        final long bytes;
+        int refCount = 0;
+        boolean stale = false;    //the file changed, drop the entry once it is released
+
+        Entry(String path, SoundFile soundFile) {
+            this.path = path;
+            this.soundFile = soundFile;
+            this.bytes = soundFile.getDecodedSize();
+        }
+    }
+
+    public static synchronized SoundFileCache get() {
+        if (sInstance == null) {
+            //a quarter of the heap, decoded audio is big (~1MB per minute of 8kHz mono)
+            sInstance = new SoundFileCache(Runtime.getRuntime().maxMemory() / 4);
+        }
+        return sInstance;
+    }
+
+    SoundFileCache(long budget) {
+        mBudget = budget;
+    }
+
+    //get the decoded recording, decoding it if it is not cached yet
+    //blocks while decoding. every call must be paired with a call to release()
+    public SoundFile acquire(String path)
+            throws IOException, SoundFile.InvalidInputException {
+        String key = getKey(path);
+        synchronized (this) {
+            while (mLoading.contains(key)) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("interrupted while waiting for " + path);
+                }
+            }
+            Entry entry = mEntries.get(key);
+            if (entry != null) {
+                entry.refCount++;
+                return entry.soundFile;
+            }
+            mLoading.add(key);
+        }
+        SoundFile soundFile = null;
+        try {
+            soundFile = SoundFile.create(path);
+        } finally {
+            synchronized (this) {
+                mLoading.remove(key);
+                if (soundFile != null) {
+                    //older versions of the file are of no use anymore
+                    invalidateLocked(path);
+                    Entry entry = new Entry(path, soundFile);
+                    entry.refCount = 1;
+                    mEntries.put(key, entry);
+                    mBytes += entry.bytes;
+                    trimLocked(mBudget);
+                }
+                notifyAll();
+            }
+        }
+        return soundFile;
+    }
+
+    //done with a SoundFile returned by acquire()
+    public synchronized void release(SoundFile soundFile) {
+        Iterator<Map.Entry<String, Entry>> it = mEntries.entrySet().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next().getValue();
+            if (entry.soundFile == soundFile) {
+                entry.refCount--;
+                if (entry.refCount <= 0 && entry.stale) {
+                    it.remove();
+                    mBytes -= entry.bytes;
+                }
+                break;
+            }
+        }
+        trimLocked(mBudget);
+    }
+
+    //decode the recording in the background, so that the next screen finds it ready
+    public void prefetch(final String path) {
+        VoiceMemosApplication.runInBackground(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    release(acquire(path));
+                } catch (Exception e) {
+                    Log.w(TAG, "could not prefetch " + path, e);
+                }
+            }
+        });
+    }
+
+    //forget the cached versions of a file, e.g. after writing over it
+    public synchronized void invalidate(String path) {
+        invalidateLocked(path);
+    }
+
+    //called from VoiceMemosApplication.onTrimMemory
+    public synchronized void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            trimLocked(0);
+        } else {
+            trimLocked(mBudget / 2);
+        }
+    }
+
+    private void invalidateLocked(String path) {
+        Iterator<Map.Entry<String, Entry>> it = mEntries.entrySet().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next().getValue();
+            if (entry.path.equals(path)) {
+                if (entry.refCount > 0) {
+                    entry.stale = true;
+                } else {
+                    it.remove();
+                    mBytes -= entry.bytes;
+                }
+            }
+        }
+    }
+
+    //evict unused entries, least recently used first, until at most budget bytes are held
+    private void trimLocked(long budget) {
+        List<String> evicted = new ArrayList<String>();
+        long bytes = mBytes;
+        for (Map.Entry<String, Entry> mapEntry : mEntries.entrySet()) {
+            if (bytes <= budget) {
+                break;
+            }
+            Entry entry = mapEntry.getValue();
+            if (entry.refCount <= 0) {
+                evicted.add(mapEntry.getKey());
+                bytes -= entry.bytes;
+            }
+        }
+        for (String key : evicted) {
+            mEntries.remove(key);
+        }
+        mBytes = bytes;
+    }
+
+    private static String getKey(String path) {
+        File file = new File(path);
+        return path + "@" + file.length() + ":" + file.lastModified();
+    }
+}
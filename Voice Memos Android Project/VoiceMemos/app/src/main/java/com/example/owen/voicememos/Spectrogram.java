@@ -0,0 +1,144 @@
+package com.example.owen.voicememos;
+/*
+Owen Brown - 4838488
+Chang Ding - 5275821
+ */
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+/**
+ * spectrogram of a recording, computed a tile at a time for the edit screens
+ * a column is the spectrum of 256 samples under a hann window (the channels mixed), BINS bins
+ * from 0 to nyquist, each in dB quantized to a byte. zoom level z has BASE_HOP * 2^z samples per
+ * column, and the columns are grouped in tiles of TILE_COLUMNS, so a screen only computes the
+ * tiles it shows
+ */
+public class Spectrogram {
+    public static final int FFT_SIZE = 256;
+    public static final int BINS = FFT_SIZE / 2;
+    public static final int TILE_COLUMNS = 256;
+    public static final int BASE_HOP = 64;
+    public static final int MAX_ZOOM = 10;
+    //bytes of one tile, column after column, lowest bin first
+    public static final int TILE_BYTES = TILE_COLUMNS * BINS;
+    //dB range that is mapped to 0..255
+    private static final float MIN_DB = -96f;
+    private static final float MAX_DB = 0f;
+    //zoomed out, a column averages up to this many windows spread over it
+    private static final int MAX_WINDOWS = 4;
+
+    private final ShortBuffer mSamples;
+    private final int mNumFrames;
+    private final int mChannels;
+    private final Fft mFft;
+    private final float[] mWindow;
+    private final float mFullScale;     //power of a full scale sine
+
+    //samples as SoundFile.getSamples() gives them, numFrames frames of channels samples
+    public Spectrogram(ShortBuffer samples, int numFrames, int channels) {
+        mSamples = samples;
+        mNumFrames = numFrames;
+        mChannels = channels;
+        mFft = new Fft(FFT_SIZE);
+        mWindow = new float[FFT_SIZE];
+        for (int i = 0; i < FFT_SIZE; i++) {
+            mWindow[i] = (float) (0.5 - 0.5 * Math.cos(2 * Math.PI * i / FFT_SIZE));
+        }
+        //a hann window halves the amplitude, and a sine is split between bins k and N-k
+        float peak = FFT_SIZE / 4f;
+        mFullScale = peak * peak;
+    }
+
+    public static int getSamplesPerColumn(int zoom) {
+        return BASE_HOP << zoom;
+    }
+
+    public int getNumFrames() {
+        return mNumFrames;
+    }
+
+    public int getNumTiles(int zoom) {
+        long tileFrames = (long) getSamplesPerColumn(zoom) * TILE_COLUMNS;
+        return (int) ((mNumFrames + tileFrames - 1) / tileFrames);
+    }
+
+    //compute one tile, TILE_BYTES values to read as (value & 0xFF). columns past the end of the
+    //recording are 0. can be called from several threads at once
+    public byte[] computeTile(int zoom, int tile) {
+        byte[] result = new byte[TILE_BYTES];
+        int samplesPerColumn = getSamplesPerColumn(zoom);
+        int windows = Math.max(1, Math.min(MAX_WINDOWS, samplesPerColumn / FFT_SIZE));
+        float[] re = new float[FFT_SIZE];
+        float[] im = new float[FFT_SIZE];
+        float[] powerX = new float[BINS];
+        float[] powerY = new float[BINS];
+        float[] column = new float[BINS];
+        long firstColumn = (long) tile * TILE_COLUMNS;
+        //windows are transformed two at a time, TILE_COLUMNS * windows is always even
+        for (int w = 0; w < TILE_COLUMNS * windows; w += 2) {
+            readWindow(windowStart(firstColumn, w, samplesPerColumn, windows), re);
+            readWindow(windowStart(firstColumn, w + 1, samplesPerColumn, windows), im);
+            mFft.forward(re, im);
+            mFft.splitPowers(re, im, powerX, powerY);
+            accumulate(powerX, column, w, windows, firstColumn, samplesPerColumn, result);
+            accumulate(powerY, column, w + 1, windows, firstColumn, samplesPerColumn, result);
+        }
+        return result;
+    }
+
+    //first sample frame of window w of the tile, the windows of a column are evenly spread
+    private static long windowStart(long firstColumn, int w, int samplesPerColumn, int windows) {
+        long column = firstColumn + w / windows;
+        long center = column * samplesPerColumn
+                + (long) ((w % windows) * 2 + 1) * samplesPerColumn / (2 * windows);
+        return center - FFT_SIZE / 2;
+    }
+
+    //add the power of window w to its column, and quantize the column after its last window
+    private void accumulate(float[] power, float[] column, int w, int windows, long firstColumn,
+                            int samplesPerColumn, byte[] result) {
+        for (int k = 0; k < BINS; k++) {
+            column[k] += power[k];
+        }
+        if (w % windows != windows - 1) {
+            return;
+        }
+        int c = w / windows;
+        if ((firstColumn + c) * samplesPerColumn < mNumFrames) {
+            float scale = 1f / (windows * mFullScale);
+            for (int k = 0; k < BINS; k++) {
+                result[c * BINS + k] = quantize(column[k] * scale);
+            }
+        }
+        Arrays.fill(column, 0);
+    }
+
+    //the windowed mono mix of FFT_SIZE frames from start, 0 outside of the recording
+    private void readWindow(long start, float[] dst) {
+        float scale = 1f / (32768f * mChannels);
+        for (int i = 0; i < FFT_SIZE; i++) {
+            long frame = start + i;
+            if (frame < 0 || frame >= mNumFrames) {
+                dst[i] = 0;
+                continue;
+            }
+            int index = (int) frame * mChannels;
+            int sum = 0;
+            for (int c = 0; c < mChannels; c++) {
+                sum += mSamples.get(index + c);
+            }
+            dst[i] = sum * scale * mWindow[i];
+        }
+    }
+
+    private static byte quantize(float power) {
+        float db = (power > 0) ? 10f * (float) Math.log10(power) : MIN_DB;
+        float value = (db - MIN_DB) / (MAX_DB - MIN_DB) * 255f;
+        if (value < 0) {
+            value = 0;
+        } else if (value > 255) {
+            value = 255;
+        }
+        return (byte) (int) value;
+    }
+}
@@ -0,0 +1,236 @@
+package com.example.owen.voicememos;
+/*
+Owen Brown - 4838488
+Chang Ding - 5275821
+ */
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * the spectrogram tiles of one recording: from memory, else from the disk cache, else computed
+ * the screen asks for the tiles it shows and is told when each one is ready. tiles are read or
+ * computed on a small pool of worker threads, the most recently asked for first, so the tiles on
+ * screen come before the ones already scrolled past. the disk cache is keyed by file name and
+ * modification time, so a trimmed recording gets new tiles
+ */
+public class SpectrogramCache {
+    private static final String TAG = "SpectrogramCache";
+    private static final int MAX_WORKERS = 2;
+    //tiles kept in memory, 32KB each
+    private static final int MEMORY_TILES = 64;
+    //recordings kept in the disk cache
+    private static final int MAX_RECORDINGS = 10;
+
+    //called on the main thread
+    public interface Listener {
+        void onTileReady(int zoom, int tile);
+    }
+
+    private final Spectrogram mSpectrogram;
+    private final File mDir;
+    private final Listener mListener;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final ThreadPoolExecutor mWorkers;
+    private long mSequence = 0;
+    private boolean mReleased = false;
+    //main thread only
+    private final LinkedHashMap<Long, byte[]> mTiles =
+            new LinkedHashMap<Long, byte[]>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+                    return size() > MEMORY_TILES;
+                }
+            };
+    private final Set<Long> mPending = new HashSet<Long>();
+
+    //one tile to load or compute, the newest runs first
+    private class TileTask implements Runnable, Comparable<TileTask> {
+        final int zoom;
+        final int tile;
+        final long sequence;
+
+        TileTask(int zoom, int tile, long sequence) {
+            this.zoom = zoom;
+            this.tile = tile;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(TileTask other) {
+            return (sequence > other.sequence) ? -1 : ((sequence < other.sequence) ? 1 : 0);
+        }
+
+        @Override
+        public void run() {
+            final byte[] bytes = loadOrCompute(zoom, tile);
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    onTileLoaded(zoom, tile, bytes);
+                }
+            });
+        }
+    }
+
+    //soundFile must stay acquired until release()
+    public SpectrogramCache(Context context, String path, SoundFile soundFile, Listener listener) {
+        mSpectrogram = new Spectrogram(soundFile.getSamples(), soundFile.getNumSamples(),
+                soundFile.getChannels());
+        mListener = listener;
+        File file = new File(path);
+        final File root = new File(context.getCacheDir(), "spectrogram");
+        mDir = new File(root, file.getName() + "_" + file.lastModified());
+        mWorkers = new ThreadPoolExecutor(MAX_WORKERS, MAX_WORKERS, 0, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(final Runnable runnable) {
+                        return new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                                runnable.run();
+                            }
+                        }, TAG);
+                    }
+                });
+        final String prefix = file.getName() + "_";
+        VoiceMemosApplication.runInBackground(new Runnable() {
+            @Override
+            public void run() {
+                trimDiskCache(root, prefix);
+            }
+        });
+    }
+
+    public Spectrogram getSpectrogram() {
+        return mSpectrogram;
+    }
+
+    //the tile if it is in memory, else null and it is loaded or computed in the background.
+    //main thread only
+    public byte[] getTile(int zoom, int tile) {
+        Long key = key(zoom, tile);
+        byte[] bytes = mTiles.get(key);
+        if (bytes == null && !mReleased && mPending.add(key)) {
+            mWorkers.execute(new TileTask(zoom, tile, mSequence++));
+        }
+        return bytes;
+    }
+
+    //stop the workers, the tiles still queued are dropped
+    public void release() {
+        mReleased = true;
+        mWorkers.shutdownNow();
+    }
+
+    private void onTileLoaded(int zoom, int tile, byte[] bytes) {
+        Long key = key(zoom, tile);
+        mPending.remove(key);
+        if (mReleased) {
+            return;
+        }
+        mTiles.put(key, bytes);
+        mListener.onTileReady(zoom, tile);
+    }
+
+    private byte[] loadOrCompute(int zoom, int tile) {
+        File file = new File(mDir, zoom + "_" + tile);
+        byte[] bytes = new byte[Spectrogram.TILE_BYTES];
+        if (file.length() == bytes.length) {
+            try {
+                FileInputStream in = new FileInputStream(file);
+                try {
+                    int read = 0;
+                    while (read < bytes.length) {
+                        int count = in.read(bytes, read, bytes.length - read);
+                        if (count < 0) {
+                            throw new IOException("end of file");
+                        }
+                        read += count;
+                    }
+                    return bytes;
+                } finally {
+                    in.close();
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "could not read " + file, e);
+            }
+        }
+        bytes = mSpectrogram.computeTile(zoom, tile);
+        //written to a temporary file first, so that a half written tile is never read
+        File temp = new File(mDir, zoom + "_" + tile + ".tmp");
+        try {
+            mDir.mkdirs();
+            FileOutputStream out = new FileOutputStream(temp);
+            try {
+                out.write(bytes);
+            } finally {
+                out.close();
+            }
+            if (!temp.renameTo(file)) {
+                temp.delete();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "could not write " + file, e);
+        }
+        return bytes;
+    }
+
+    //delete the tiles of older versions of this recording, and of the least recently used
+    //recordings past MAX_RECORDINGS
+    private void trimDiskCache(File root, String prefix) {
+        File[] dirs = root.listFiles();
+        if (dirs == null) {
+            return;
+        }
+        Arrays.sort(dirs, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long difference = b.lastModified() - a.lastModified();
+                return (difference > 0) ? 1 : ((difference < 0) ? -1 : 0);
+            }
+        });
+        int kept = 0;
+        for (File dir : dirs) {
+            if (dir.equals(mDir)) {
+                continue;
+            }
+            if (dir.getName().startsWith(prefix) || ++kept >= MAX_RECORDINGS) {
+                deleteDir(dir);
+            }
+        }
+        mDir.setLastModified(System.currentTimeMillis());
+    }
+
+    private static void deleteDir(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    private static Long key(int zoom, int tile) {
+        return ((long) zoom << 32) | tile;
+    }
+}
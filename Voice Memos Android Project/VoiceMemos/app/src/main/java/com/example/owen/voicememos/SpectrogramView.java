@@ -0,0 +1,237 @@
+package com.example.owen.voicememos;
+/*
+Owen Brown - 4838488
+Chang Ding - 5275821
+ */
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.util.AttributeSet;
+import android.view.GestureDetector;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
+import android.view.View;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * shows the spectrogram of a recording, low frequencies at the bottom
+ * drag to scroll, pinch to zoom. it draws the tiles of the zoom level closest to one column per
+ * pixel, asking the SpectrogramCache for the visible ones only. the parts outside of the
+ * selection (e.g. what a trim cuts off) are shaded
+ */
+public class SpectrogramView extends View implements SpectrogramCache.Listener {
+    //colour of each byte value, from black through blue and red to yellow
+    private static final int[] PALETTE = palette();
+
+    private SpectrogramCache mCache;
+    private int mNumFrames = 0;
+    private double mFramesPerPixel = 0;     //0 until the view is laid out
+    private double mFirstFrame = 0;         //frame at the left edge
+    private EditList mSelection = new EditList();
+    //bitmaps of the tiles drawn last time, only those are kept
+    private final Map<Long, Bitmap> mBitmaps = new HashMap<Long, Bitmap>();
+    private final int[] mPixels = new int[Spectrogram.TILE_COLUMNS * Spectrogram.BINS];
+    private final Paint mBitmapPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Paint mShadePaint = new Paint();
+    private final RectF mRect = new RectF();
+    private final GestureDetector mGestureDetector;
+    private final ScaleGestureDetector mScaleDetector;
+
+    public SpectrogramView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        mShadePaint.setColor(Color.argb(160, 0, 0, 0));
+        mGestureDetector = new GestureDetector(context,
+                new GestureDetector.SimpleOnGestureListener() {
+                    @Override
+                    public boolean onDown(MotionEvent e) {
+                        return true;
+                    }
+
+                    @Override
+                    public boolean onScroll(MotionEvent e1, MotionEvent e2, float distanceX,
+                                            float distanceY) {
+                        scrollTo(mFirstFrame + distanceX * mFramesPerPixel);
+                        return true;
+                    }
+                });
+        mScaleDetector = new ScaleGestureDetector(context,
+                new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+                    @Override
+                    public boolean onScale(ScaleGestureDetector detector) {
+                        //keep the frame under the fingers where it is
+                        double focus = mFirstFrame + detector.getFocusX() * mFramesPerPixel;
+                        setFramesPerPixel(mFramesPerPixel / detector.getScaleFactor());
+                        scrollTo(focus - detector.getFocusX() * mFramesPerPixel);
+                        return true;
+                    }
+                });
+    }
+
+    //show the spectrogram of cache, the whole recording fits in the view at first
+    public void setCache(SpectrogramCache cache) {
+        mCache = cache;
+        mNumFrames = cache.getSpectrogram().getNumFrames();
+        mSelection = new EditList().keep(0, mNumFrames);
+        mFirstFrame = 0;
+        mFramesPerPixel = 0;
+        recycleBitmaps(null);
+        if (getWidth() > 0) {
+            fitAll();
+        }
+        invalidate();
+    }
+
+    //the frames in the ranges of selection are not shaded
+    public void setSelection(EditList selection) {
+        mSelection = new EditList(selection);
+        invalidate();
+    }
+
+    @Override
+    public void onTileReady(int zoom, int tile) {
+        invalidate();
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        if (mCache != null && w > 0) {
+            fitAll();
+        }
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        if (mCache == null) {
+            return false;
+        }
+        mScaleDetector.onTouchEvent(event);
+        if (!mScaleDetector.isInProgress()) {
+            mGestureDetector.onTouchEvent(event);
+        }
+        return true;
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        canvas.drawColor(Color.BLACK);
+        if (mCache == null || mFramesPerPixel <= 0) {
+            return;
+        }
+        //the coarsest zoom level that still has a column per pixel
+        int zoom = 0;
+        while (zoom < Spectrogram.MAX_ZOOM
+                && Spectrogram.getSamplesPerColumn(zoom + 1) <= mFramesPerPixel) {
+            zoom++;
+        }
+        long tileFrames = (long) Spectrogram.getSamplesPerColumn(zoom) * Spectrogram.TILE_COLUMNS;
+        int numTiles = mCache.getSpectrogram().getNumTiles(zoom);
+        int first = (int) (mFirstFrame / tileFrames);
+        int last = (int) Math.min(numTiles - 1,
+                (mFirstFrame + getWidth() * mFramesPerPixel) / tileFrames);
+        HashMap<Long, Bitmap> drawn = new HashMap<Long, Bitmap>();
+        for (int tile = first; tile <= last; tile++) {
+            Long key = ((long) zoom << 32) | tile;
+            Bitmap bitmap = mBitmaps.get(key);
+            if (bitmap == null) {
+                byte[] bytes = mCache.getTile(zoom, tile);
+                if (bytes == null) {
+                    continue;   //onTileReady will draw it
+                }
+                bitmap = toBitmap(bytes);
+            }
+            drawn.put(key, bitmap);
+            float left = (float) ((tile * tileFrames - mFirstFrame) / mFramesPerPixel);
+            mRect.set(left, 0, left + (float) (tileFrames / mFramesPerPixel), getHeight());
+            canvas.drawBitmap(bitmap, null, mRect, mBitmapPaint);
+        }
+        recycleBitmaps(drawn);
+        mBitmaps.putAll(drawn);
+
+        //shade the gaps before, between and after the selected ranges
+        long gapStart = 0;
+        for (int i = 0; i <= mSelection.getNumRanges(); i++) {
+            long gapEnd = (i < mSelection.getNumRanges()) ? mSelection.getStart(i) : mNumFrames;
+            shade(canvas, gapStart, gapEnd);
+            if (i < mSelection.getNumRanges()) {
+                gapStart = mSelection.getEnd(i);
+            }
+        }
+    }
+
+    private void shade(Canvas canvas, long startFrame, long endFrame) {
+        float start = Math.max(0, (float) ((startFrame - mFirstFrame) / mFramesPerPixel));
+        float end = Math.min(getWidth(), (float) ((endFrame - mFirstFrame) / mFramesPerPixel));
+        if (end > start) {
+            canvas.drawRect(start, 0, end, getHeight(), mShadePaint);
+        }
+    }
+
+    private void fitAll() {
+        mFramesPerPixel = 0;
+        setFramesPerPixel((double) mNumFrames / getWidth());
+        scrollTo(0);
+    }
+
+    //from a few pixels per column of the finest zoom, to the whole recording in the view
+    private void setFramesPerPixel(double framesPerPixel) {
+        double min = Spectrogram.BASE_HOP / 4.0;
+        double max = Math.max(min, (double) mNumFrames / getWidth());
+        mFramesPerPixel = Math.max(min, Math.min(max, framesPerPixel));
+        invalidate();
+    }
+
+    private void scrollTo(double firstFrame) {
+        double max = Math.max(0, mNumFrames - getWidth() * mFramesPerPixel);
+        mFirstFrame = Math.max(0, Math.min(max, firstFrame));
+        invalidate();
+    }
+
+    //recycle the bitmaps not in keep (all of them if keep is null)
+    private void recycleBitmaps(Map<Long, Bitmap> keep) {
+        Iterator<Map.Entry<Long, Bitmap>> it = mBitmaps.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Long, Bitmap> entry = it.next();
+            if (keep == null || !keep.containsKey(entry.getKey())) {
+                entry.getValue().recycle();
+                it.remove();
+            }
+        }
+    }
+
+    //a tile as a bitmap of one pixel per column and bin, the highest bin on the top row
+    private Bitmap toBitmap(byte[] bytes) {
+        int width = Spectrogram.TILE_COLUMNS;
+        int height = Spectrogram.BINS;
+        for (int column = 0; column < width; column++) {
+            for (int bin = 0; bin < height; bin++) {
+                mPixels[(height - 1 - bin) * width + column] =
+                        PALETTE[bytes[column * height + bin] & 0xFF];
+            }
+        }
+        return Bitmap.createBitmap(mPixels, width, height, Bitmap.Config.ARGB_8888);
+    }
+
+    private static int[] palette() {
+        int[] colours = new int[256];
+        for (int i = 0; i < 256; i++) {
+            float v = i / 255f;
+            float red = clamp(2.5f * v - 0.75f);
+            float green = clamp(3f * v - 2f);
+            float blue = (v < 0.4f) ? clamp(v * 2.5f) : clamp(2f - 2.5f * v);
+            colours[i] = Color.rgb((int) (red * 255), (int) (green * 255), (int) (blue * 255));
+        }
+        return colours;
+    }
+
+    private static float clamp(float value) {
+        return Math.max(0f, Math.min(1f, value));
+    }
+}
@@ -0,0 +1,226 @@
+package com.example.owen.voicememos;
+/*
+Owen Brown - 4838488
+Chang Ding - 5275821
+ */
+import android.app.IntentService;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.os.BatteryManager;
+import android.os.Process;
+import android.util.Log;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * storage tiering: recordings older than AGE_DAYS are encoded again at a low rate and bitrate
+ * that is still fine for speech, a quarter or less of the space. started by
+ * PowerConnectedReceiver, so it only runs while charging, on at most MAX_WORKERS files at once,
+ * and stops taking new files once unplugged. a new file replaces the old one only if it has the
+ * same duration and is smaller. what each recording saved is kept in the TIERS table, nothing
+ * for a recording that failed on the way (e.g. no codec free), the next run tries it again
+ */
+public class StorageTierService extends IntentService {
+    private static final String TAG = "StorageTierService";
+    public static final int AGE_DAYS = 30;
+    //narrowband speech: 4kHz of audio, plenty to understand a voice
+    public static final int TIER_SAMPLE_RATE = 8000;
+    public static final int TIER_BITRATE = 16000;   //per channel
+    //leave the phone some cores while it charges
+    private static final int MAX_WORKERS = 2;
+    private static final String AAC = "audio/mp4a-latm";
+
+    public StorageTierService() {
+        super(TAG);
+    }
+
+    //all the space saved so far, in bytes
+    public static long getSavedBytes(SQLiteDatabase db) {
+        Cursor cursor = db.rawQuery("SELECT SUM(original_bytes - tiered_bytes) FROM TIERS", null);
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    //forget the savings of a deleted recording
+    public static void delete(SQLiteDatabase db, int recordingId) {
+        db.delete("TIERS", "recording_id = " + recordingId, null);
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        final MyDatabaseHelper dbHelper = VoiceMemosApplication.getDatabaseHelper(this);
+        ExecutorService workers = Executors.newFixedThreadPool(MAX_WORKERS);
+        try {
+            //the recordings, and the file time they were tiered for, if they were
+            List<Integer> ids = new ArrayList<Integer>();
+            List<String> filenames = new ArrayList<String>();
+            List<Long> recordedAt = new ArrayList<Long>();
+            List<Long> tiered = new ArrayList<Long>();
+            Cursor cursor = dbHelper.getReadableDatabase().rawQuery(
+                    "SELECT RECORDINGS.id, RECORDINGS.filename, RECORDINGS.recorded_at, TIERS.file_mtime "
+                            + "FROM RECORDINGS LEFT JOIN TIERS "
+                            + "ON TIERS.recording_id = RECORDINGS.id", null);
+            try {
+                while (cursor.moveToNext()) {
+                    ids.add(cursor.getInt(0));
+                    filenames.add(cursor.getString(1));
+                    recordedAt.add(cursor.isNull(2) ? -1 : cursor.getLong(2));
+                    tiered.add(cursor.isNull(3) ? -1 : cursor.getLong(3));
+                }
+            } finally {
+                cursor.close();
+            }
+            long oldest = System.currentTimeMillis() - AGE_DAYS * 24L * 60 * 60 * 1000;
+            for (int i = 0; i < ids.size(); i++) {
+                final File file = RecordingFiles.getFile(filenames.get(i));
+                if (!file.exists() || file.lastModified() == tiered.get(i)
+                        || getRecordedTime(recordedAt.get(i), file) > oldest) {
+                    continue;
+                }
+                final int recordingId = ids.get(i);
+                workers.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        //a job started while charging finishes, no new one starts after
+                        if (!isCharging(StorageTierService.this)) {
+                            return;
+                        }
+                        try {
+                            ArchiveTranscoder.waitWhilePaused();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                        tier(dbHelper.getWritableDatabase(), recordingId, file);
+                    }
+                });
+            }
+            workers.shutdown();
+            //the recordings are done one by one, there is no deadline
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Log.w(TAG, "tiering interrupted");
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    //the time a recording was made, from its row, or its file if the row has none yet
+    private static long getRecordedTime(long recordedAt, File file) {
+        return recordedAt >= 0 ? recordedAt : file.lastModified();
+    }
+
+    static boolean isCharging(Context context) {
+        Intent battery = context.registerReceiver(null,
+                new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        return battery != null && battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+    }
+
+    //encode one recording at the tier, and swap it in if it is good
+    private static void tier(SQLiteDatabase db, int recordingId, File file) {
+        long mtime = file.lastModified();
+        long originalBytes = file.length();
+        File temp = new File(file.getPath() + ".tier.tmp");
+        try {
+            MediaExtractor extractor = new MediaExtractor();
+            int sampleRate;
+            int channels;
+            long durationUs;
+            try {
+                extractor.setDataSource(file.getPath());
+                MediaFormat format = null;
+                for (int i = 0; i < extractor.getTrackCount(); i++) {
+                    if (extractor.getTrackFormat(i).getString(MediaFormat.KEY_MIME)
+                            .startsWith("audio/")) {
+                        format = extractor.getTrackFormat(i);
+                        break;
+                    }
+                }
+                //AMR is converted to AAC by ArchiveTranscoder first, it is small anyway
+                if (format == null || !AAC.equals(format.getString(MediaFormat.KEY_MIME))) {
+                    return;
+                }
+                sampleRate = format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+                channels = format.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+                durationUs = format.containsKey(MediaFormat.KEY_DURATION)
+                        ? format.getLong(MediaFormat.KEY_DURATION) : 0;
+            } finally {
+                extractor.release();
+            }
+            //already at the tier or below, nothing to save
+            long bitrate = (durationUs > 0) ? originalBytes * 8 * 1000000 / durationUs : 0;
+            if (sampleRate <= TIER_SAMPLE_RATE && bitrate <= TIER_BITRATE * channels) {
+                store(db, recordingId, mtime, originalBytes, originalBytes);
+                return;
+            }
+
+            //not through SoundFileCache, a background job must not evict what the screens use.
+            //the only decoded copy of the recording: the new file is checked without decoding it
+            SoundFile soundFile = SoundFile.create(file.getPath());
+            ExportSettings settings = new ExportSettings()
+                    .setSampleRate(TIER_SAMPLE_RATE)
+                    .setBitrate(TIER_BITRATE * channels)
+                    .setZeroCrossingSearch(0)
+                    .setCutFade(0);
+            EditList all = new EditList().keep(0, soundFile.getNumSamples());
+            soundFile.WriteFile(temp, all, settings, null);
+            int fromRate = soundFile.getSampleRate();
+            int toRate = settings.getSampleRate(fromRate);
+            long contentUs = (long) soundFile.getNumSamples() * 1000000 / fromRate;
+            soundFile = null;   //the decoded samples are not needed any more
+
+            //the new file must play for as long as the old one, and be smaller
+            long tieredBytes = temp.length();
+            if (!RecordingFiles.isComplete(temp, contentUs, toRate, 0)
+                    || tieredBytes >= originalBytes) {
+                Log.w(TAG, "not tiering " + file + ": " + tieredBytes + " bytes, was "
+                        + originalBytes + " bytes");
+                temp.delete();
+                store(db, recordingId, mtime, originalBytes, originalBytes);
+                return;
+            }
+            //the file may have been edited meanwhile, then it is for the next run
+            if (file.lastModified() != mtime || !temp.renameTo(file)) {
+                temp.delete();
+                return;
+            }
+            SoundFileCache.get().invalidate(file.getPath());
+            //the kept ranges of the edits are in frames at the old rate, and the new file starts
+            //with the priming of the encoder
+            EditStore.remapKept(db, recordingId, fromRate, toRate, SoundFile.ENCODER_DELAY);
+            store(db, recordingId, file.lastModified(), originalBytes, tieredBytes);
+        } catch (Exception e) {
+            //not stored, the next run tries again
+            Log.w(TAG, "could not tier " + file, e);
+            temp.delete();
+        } catch (OutOfMemoryError e) {
+            Log.w(TAG, "no memory to tier " + file);
+            temp.delete();
+        }
+    }
+
+    private static void store(SQLiteDatabase db, int recordingId, long mtime, long originalBytes,
+                              long tieredBytes) {
+        ContentValues values = new ContentValues();
+        values.put("recording_id", recordingId);
+        values.put("file_mtime", mtime);
+        values.put("original_bytes", originalBytes);
+        values.put("tiered_bytes", tieredBytes);
+        db.replace("TIERS", null, values);
+    }
+}
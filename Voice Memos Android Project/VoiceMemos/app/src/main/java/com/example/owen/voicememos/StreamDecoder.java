@@ -0,0 +1,261 @@
+package com.example.owen.voicememos;
+/*
+Owen Brown - 4838488
+Chang Ding - 5275821
+ */
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.util.Log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * decodes a recording on its own thread into a PcmRingBuffer, a few seconds ahead of playback
+ * only the part about to be played is decoded, unlike SoundFile which decodes the whole file.
+ * seeks use the SeekIndex to restart the extractor one frame before the frame holding the target,
+ * since the first AAC frame decoded after a flush has nothing to overlap with, then the decoded
+ * samples before the target are dropped, so reading resumes on the exact sample
+ */
+public class StreamDecoder {
+    private static final String TAG = "StreamDecoder";
+    private static final int BUFFER_SECONDS = 2;
+    private static final long TIMEOUT_US = 10000;
+
+    private final String mPath;
+    private final SeekIndex mIndex;
+    private final MediaExtractor mExtractor;
+    private final MediaFormat mFormat;
+    private final MediaCodec mCodec;
+    private final int mSampleRate;
+    private final int mChannels;
+    private final PcmRingBuffer mRing;
+    private final Thread mThread;
+    private volatile boolean mReleased = false;
+
+    //seek asked for by the reader, handled by the decoder thread
+    private final Object mSeekLock = new Object();
+    private long mSeekFrame = -1;
+    private int mSeekGeneration;
+
+    public StreamDecoder(SeekIndex index, String path) throws IOException {
+        mPath = path;
+        mIndex = index;
+        mExtractor = new MediaExtractor();
+        MediaFormat format = null;
+        MediaCodec codec = null;
+        try {
+            mExtractor.setDataSource(path);
+            int track;
+            for (track = 0; track < mExtractor.getTrackCount(); track++) {
+                format = mExtractor.getTrackFormat(track);
+                if (format.getString(MediaFormat.KEY_MIME).startsWith("audio/")) {
+                    break;
+                }
+            }
+            if (format == null || track == mExtractor.getTrackCount()) {
+                throw new IOException("No audio track found in " + path);
+            }
+            mExtractor.selectTrack(track);
+            codec = CodecPool.get().acquireDecoder(format);
+        } catch (IOException e) {
+            mExtractor.release();
+            throw e;
+        } catch (RuntimeException e) {
+            mExtractor.release();
+            throw new IOException("could not open " + path, e);
+        }
+        mFormat = format;
+        mCodec = codec;
+        mSampleRate = format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+        mChannels = format.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+        mRing = new PcmRingBuffer(mSampleRate * BUFFER_SECONDS, mChannels);
+        mSeekGeneration = mRing.getGeneration();
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                decode();
+            }
+        }, TAG);
+        mThread.start();
+    }
+
+    public String getPath() {
+        return mPath;
+    }
+
+    public int getSampleRate() {
+        return mSampleRate;
+    }
+
+    public int getChannels() {
+        return mChannels;
+    }
+
+    public long getDurationFrames() {
+        return mIndex.getDurationUs() * mSampleRate / 1000000;
+    }
+
+    //read up to maxFrames decoded frames, without blocking
+    public int read(short[] dst, int maxFrames) {
+        return mRing.read(dst, maxFrames);
+    }
+
+    //block until read() has frames, the recording is finished, or timeoutMs passed
+    public void waitForData(long timeoutMs) throws InterruptedException {
+        mRing.waitForData(timeoutMs);
+    }
+
+    //position of the next frame read(), in frames from the start of the recording
+    public long getPosition() {
+        return mRing.getPosition();
+    }
+
+    //true once the whole recording has been read
+    public boolean isFinished() {
+        return mRing.isDrained();
+    }
+
+    //the next read() returns the frame at position frame. buffered frames are dropped at once
+    public void seekTo(long frame) {
+        frame = Math.max(0, Math.min(frame, getDurationFrames()));
+        synchronized (mSeekLock) {
+            mSeekGeneration = mRing.clear(frame);
+            mSeekFrame = frame;
+            mSeekLock.notifyAll();
+        }
+    }
+
+    //stop decoding and give the codec back to the pool. blocks until the thread is done
+    public void release() {
+        mReleased = true;
+        mThread.interrupt();
+        try {
+            mThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void decode() {
+        ByteBuffer[] inputBuffers = mCodec.getInputBuffers();
+        ByteBuffer[] outputBuffers = mCodec.getOutputBuffers();
+        MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+        boolean isAac = mFormat.getString(MediaFormat.KEY_MIME).equals("audio/mp4a-latm");
+        short[] decoded = new short[0];
+        int pendingOffset = 0;     //decoded frames not in the ring yet
+        int pendingFrames = 0;
+        long discardUntil = 0;     //drop the frames before this position (after a seek)
+        int generation = mRing.getGeneration();
+        boolean doneReading = false;
+        boolean doneDecoding = false;
+        //only a codec that stopped cleanly goes back to the pool
+        boolean healthy = false;
+        try {
+            while (!mReleased) {
+                long seekFrame;
+                synchronized (mSeekLock) {
+                    seekFrame = mSeekFrame;
+                    mSeekFrame = -1;
+                    if (seekFrame >= 0) {
+                        generation = mSeekGeneration;
+                    }
+                }
+                if (seekFrame >= 0) {
+                    long seekUs = seekFrame * 1000000 / mSampleRate;
+                    mCodec.flush();
+                    //one frame of pre-roll, dropped below with the rest before the target
+                    int frame = Math.max(0, mIndex.findFrame(seekUs) - 1);
+                    mExtractor.seekTo(mIndex.getFrameTimeUs(frame),
+                            MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+                    discardUntil = seekFrame;
+                    pendingFrames = 0;
+                    doneReading = false;
+                    doneDecoding = false;
+                }
+
+                //hand what was decoded over to the ring first
+                if (pendingFrames > 0) {
+                    int written = mRing.write(decoded, pendingOffset, pendingFrames, generation);
+                    pendingOffset += written;
+                    pendingFrames -= written;
+                    if (pendingFrames > 0) {
+                        mRing.waitForSpace(generation, 10);
+                    }
+                    continue;
+                }
+                if (doneDecoding) {
+                    mRing.setEndOfStream(generation);
+                    synchronized (mSeekLock) {
+                        if (mSeekFrame < 0) {
+                            mSeekLock.wait(50);
+                        }
+                    }
+                    continue;
+                }
+
+                if (!doneReading) {
+                    int inputBufferIndex = mCodec.dequeueInputBuffer(TIMEOUT_US);
+                    if (inputBufferIndex >= 0) {
+                        long sampleTime = mExtractor.getSampleTime();
+                        int sampleSize = mExtractor.readSampleData(inputBuffers[inputBufferIndex], 0);
+                        if (isAac && sampleTime == 0 && sampleSize == 2) {
+                            //codec specific data in front of the stream, see SoundFile.ReadFile
+                            mExtractor.advance();
+                            mCodec.queueInputBuffer(inputBufferIndex, 0, 0, 0, 0);
+                        } else if (sampleSize < 0) {
+                            mCodec.queueInputBuffer(inputBufferIndex, 0, 0, 0,
+                                    MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                            doneReading = true;
+                        } else {
+                            mCodec.queueInputBuffer(inputBufferIndex, 0, sampleSize, sampleTime, 0);
+                            mExtractor.advance();
+                        }
+                    }
+                }
+
+                int outputBufferIndex = mCodec.dequeueOutputBuffer(info, TIMEOUT_US);
+                if (outputBufferIndex >= 0) {
+                    int frames = info.size / (2 * mChannels);
+                    if (decoded.length < frames * mChannels) {
+                        decoded = new short[frames * mChannels];
+                    }
+                    ByteBuffer output = outputBuffers[outputBufferIndex];
+                    output.position(info.offset);
+                    output.limit(info.offset + info.size);
+                    output.order(ByteOrder.LITTLE_ENDIAN).asShortBuffer()
+                            .get(decoded, 0, frames * mChannels);
+                    output.clear();
+                    mCodec.releaseOutputBuffer(outputBufferIndex, false);
+                    //drop what comes before the seek target
+                    long start = info.presentationTimeUs * mSampleRate / 1000000;
+                    int skip = (int) Math.max(0, Math.min(frames, discardUntil - start));
+                    pendingOffset = skip;
+                    pendingFrames = frames - skip;
+                    if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                        doneDecoding = true;
+                    }
+                } else if (outputBufferIndex == MediaCodec.INFO_OUTPUT_BUFFERS_CHANGED) {
+                    outputBuffers = mCodec.getOutputBuffers();
+                }
+            }
+            healthy = true;
+        } catch (InterruptedException e) {
+            //released
+            healthy = true;
+        } catch (RuntimeException e) {
+            //e.g. a codec error, or a frame too big for the input buffer
+            Log.e(TAG, "decoding " + mPath + " failed", e);
+            mRing.setEndOfStream(generation);
+        } finally {
+            if (healthy) {
+                CodecPool.get().release(mCodec);
+            } else {
+                CodecPool.get().discard(mCodec);
+            }
+            mExtractor.release();
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.owen.voicememos;
+/*
+Owen Brown - 4838488
+Chang Ding - 5275821
+ */
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioTrack;
+
+import java.nio.ShortBuffer;
+
+/**
+ * plays a decoded recording at any speed from 0.5x to 3x without changing the pitch
+ * a playback thread reads blocks of samples, runs them through a TimeStretcher and writes
+ * the result to an AudioTrack, scaled by the gain if there is one. the buffers are allocated
+ * once, when playback starts
+ */
+public class StretchPlayer {
+    private static final int BLOCK_FRAMES = 1024;
+
+    private final SoundFile mSoundFile;
+    private final TimeStretcher mStretcher;
+    private Thread mThread;
+    private volatile boolean mPlaying = false;
+    private volatile float mGain = 1;   //linear
+    private OnCompletionListener mOnCompletionListener;
+
+    //called from the playback thread once the whole recording has been played
+    public interface OnCompletionListener {
+        void onCompletion(StretchPlayer player);
+    }
+
+    public StretchPlayer(SoundFile soundFile) {
+        mSoundFile = soundFile;
+        mStretcher = new TimeStretcher(
+                soundFile.getSampleRate(), soundFile.getChannels(), BLOCK_FRAMES);
+    }
+
+    public void setOnCompletionListener(OnCompletionListener listener) {
+        mOnCompletionListener = listener;
+    }
+
+    //takes effect within one block, no need to pause
+    public void setRate(float rate) {
+        mStretcher.setRate(rate);
+    }
+
+    //in dB, takes effect within one block too
+    public void setGain(float gainDb) {
+        mGain = (float) Math.pow(10.0, gainDb / 20.0);
+    }
+
+    public boolean isPlaying() {
+        return mPlaying;
+    }
+
+    //play from the beginning
+    public synchronized void start() {
+        stop();
+        mStretcher.reset();
+        mPlaying = true;
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                play();
+            }
+        }, "StretchPlayer");
+        mThread.start();
+    }
+
+    //stop playing, blocks until the playback thread is done
+    public synchronized void stop() {
+        mPlaying = false;
+        if (mThread != null && mThread != Thread.currentThread()) {
+            try {
+                mThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            mThread = null;
+        }
+    }
+
+    private void play() {
+        int channels = mSoundFile.getChannels();
+        int channelConfig = (channels == 1)
+                ? AudioFormat.CHANNEL_OUT_MONO : AudioFormat.CHANNEL_OUT_STEREO;
+        int bufferSize = Math.max(
+                AudioTrack.getMinBufferSize(mSoundFile.getSampleRate(), channelConfig,
+                        AudioFormat.ENCODING_PCM_16BIT),
+                BLOCK_FRAMES * channels * 2 * 2);
+        AudioTrack track = new AudioTrack(AudioManager.STREAM_MUSIC, mSoundFile.getSampleRate(),
+                channelConfig, AudioFormat.ENCODING_PCM_16BIT, bufferSize, AudioTrack.MODE_STREAM);
+        ShortBuffer samples = mSoundFile.getSamples();
+        short[] input = new short[BLOCK_FRAMES * channels];
+        short[] output = new short[BLOCK_FRAMES * channels];
+        track.play();
+        boolean completed = false;
+        while (mPlaying) {
+            int frames = Math.min(BLOCK_FRAMES, mStretcher.getInputSpace());
+            frames = Math.min(frames, samples.remaining() / channels);
+            if (frames <= 0 && !samples.hasRemaining()) {
+                //the last segments need the stretcher to know there is no more input
+                mStretcher.flush();
+                writeStretched(track, output, channels);
+                completed = mPlaying;
+                break;
+            }
+            samples.get(input, 0, frames * channels);
+            mStretcher.putInput(input, frames);
+            writeStretched(track, output, channels);
+        }
+        if (completed) {
+            //let the end of the recording play out before stopping the track
+            track.stop();
+        } else {
+            track.pause();
+            track.flush();
+        }
+        track.release();
+        mPlaying = false;
+        if (completed && mOnCompletionListener != null) {
+            mOnCompletionListener.onCompletion(this);
+        }
+    }
+
+    //write what the stretcher has for the track, scaled by the gain
+    private void writeStretched(AudioTrack track, short[] output, int channels) {
+        int stretched;
+        while (mPlaying && (stretched = mStretcher.getOutput(output, BLOCK_FRAMES)) > 0) {
+            float gain = mGain;
+            if (gain != 1) {
+                PcmUtils.applyGain(output, stretched * channels, gain);
+            }
+            track.write(output, 0, stretched * channels);
+        }
+    }
+}
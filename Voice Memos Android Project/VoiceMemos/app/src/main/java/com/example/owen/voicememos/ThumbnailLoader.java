@@ -0,0 +1,191 @@
+package com.example.owen.voicememos;
+/*
+Owen Brown - 4838488
+Chang Ding - 5275821
+ */
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * waveform thumbnails for the rows of the recording list
+ * load() shows the thumbnail of a recording in an ImageView, from the cache or else rendered
+ * from its WaveformPeaks on a couple of background threads. the bitmaps are kept in an LRU cache
+ * of at most CACHE_BYTES. a view that is reused or scrolled off (cancel()) stops its request, so
+ * a fling through a large library only renders the rows it stops on. main thread only, except
+ * for the rendering
+ */
+public class ThumbnailLoader {
+    private static final String TAG = "ThumbnailLoader";
+    private static final int WORKERS = 2;
+    private static final int CACHE_BYTES = 2 * 1024 * 1024;
+    public static final int WIDTH = WaveformPeaks.NUM_PEAKS * 2;
+    public static final int HEIGHT = 48;
+
+    private final Context mContext;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService mExecutor;
+    private final LruCache<String, Thumbnail> mCache = new LruCache<String, Thumbnail>(CACHE_BYTES) {
+        @Override
+        protected int sizeOf(String path, Thumbnail thumbnail) {
+            return thumbnail.bitmap.getByteCount();
+        }
+    };
+
+    //a rendered thumbnail, and the time of the file it was rendered from
+    private static class Thumbnail {
+        final Bitmap bitmap;
+        final long mtime;
+
+        Thumbnail(Bitmap bitmap, long mtime) {
+            this.bitmap = bitmap;
+            this.mtime = mtime;
+        }
+    }
+
+    //the request of a view, kept in its tag
+    private static class Request {
+        final String path;
+        Future<?> future;
+
+        Request(String path) {
+            this.path = path;
+        }
+    }
+
+    public ThumbnailLoader(Context context) {
+        mContext = context.getApplicationContext();
+        mExecutor = Executors.newFixedThreadPool(WORKERS, new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        r.run();
+                    }
+                }, TAG);
+            }
+        });
+    }
+
+    //show the thumbnail of the recording at path in view, now or once it is rendered
+    public void load(final ImageView view, final String path) {
+        Thumbnail cached = mCache.get(path);
+        Request current = (Request) view.getTag();
+        if (current != null && current.path.equals(path) && cached == null) {
+            //already on its way
+            return;
+        }
+        cancel(view);
+        if (cached != null) {
+            view.setImageBitmap(cached.bitmap);
+            return;
+        }
+        view.setImageDrawable(null);
+        final Request request = new Request(path);
+        view.setTag(request);
+        request.future = mExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                final Thumbnail thumbnail;
+                try {
+                    long mtime = new File(path).lastModified();
+                    thumbnail = new Thumbnail(render(WaveformPeaks.get(mContext, path)), mtime);
+                } catch (InterruptedException e) {
+                    return;
+                } catch (Exception e) {
+                    Log.w(TAG, "no thumbnail for " + path, e);
+                    return;
+                }
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        mCache.put(path, thumbnail);
+                        if (view.getTag() == request) {
+                            view.setTag(null);
+                            view.setImageBitmap(thumbnail.bitmap);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    //stop the request of a view, e.g. once its row scrolled off
+    public void cancel(ImageView view) {
+        Request request = (Request) view.getTag();
+        if (request != null) {
+            request.future.cancel(true);
+            view.setTag(null);
+        }
+    }
+
+    //drop the thumbnails of recordings that changed since they were rendered, then call
+    //onDropped (on the main thread) if there were any
+    public void dropChanged(final Runnable onDropped) {
+        final Map<String, Thumbnail> snapshot = mCache.snapshot();
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<String> changed = new ArrayList<String>();
+                for (Map.Entry<String, Thumbnail> entry : snapshot.entrySet()) {
+                    if (new File(entry.getKey()).lastModified() != entry.getValue().mtime) {
+                        changed.add(entry.getKey());
+                    }
+                }
+                if (changed.isEmpty()) {
+                    return;
+                }
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (String path : changed) {
+                            mCache.remove(path);
+                        }
+                        onDropped.run();
+                    }
+                });
+            }
+        });
+    }
+
+    public void close() {
+        mExecutor.shutdownNow();
+        mCache.evictAll();
+    }
+
+    //a bar per peak, mirrored around the middle
+    private Bitmap render(byte[] peaks) {
+        Bitmap bitmap = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        float barWidth = (float) WIDTH / peaks.length;
+        float middle = HEIGHT / 2f;
+        Paint paint = new Paint();
+        paint.setColor(Color.WHITE);
+        for (int i = 0; i < peaks.length; i++) {
+            //at least a line, so that silence still shows
+            float half = Math.max(0.5f, (peaks[i] & 0xff) / 255f * middle);
+            canvas.drawRect(i * barWidth, middle - half, (i + 1) * barWidth - 0.5f,
+                    middle + half, paint);
+        }
+        return bitmap;
+    }
+}
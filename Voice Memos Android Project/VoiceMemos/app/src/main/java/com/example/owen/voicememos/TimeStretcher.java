@@ -0,0 +1,236 @@
+package com.example.owen.voicememos;
+/*
+Owen Brown - 4838488
+Chang Ding - 5275821
+ */
+
+/**
+ * streaming time-stretch that keeps the pitch (WSOLA)
+ * the output is built from overlapping segments of the input, read faster or slower than they
+ * are written. each segment is picked within a small window around its nominal position so
+ * that it lines up with the end of the previous one, and the two are cross-faded.
+ * all the buffers are allocated up front, nothing is allocated per block. a rate change applies
+ * from the next segment (20ms). the last segments of a stream only come out after flush()
+ */
+public class TimeStretcher {
+    public static final float MIN_RATE = 0.5f;
+    public static final float MAX_RATE = 3.0f;
+    //segments are matched at about this rate, whatever the sample rate
+    private static final int CORRELATION_RATE = 8000;
+
+    private final int mChannels;
+    private final int mSegment;      //length of a segment (and of the cross-fade), in frames
+    private final int mSeek;         //how far from its nominal position a segment can be taken
+    private final int mStep;         //frames between two samples used for matching
+    private final float[] mFadeIn;   //raised cosine, mFadeIn[i] + mFadeOut[i] == 1
+    private final float[] mFadeOut;
+
+    //input, interleaved. mIn[0] is the frame at absolute position mInStart
+    private final float[] mIn;
+    private final int mInCapacity;   //in frames
+    private long mInStart = 0;
+    private int mInFrames = 0;
+
+    //last segment produced, not read yet
+    private final short[] mOut;
+    private int mOutRead = 0;
+    private int mOutFrames = 0;
+
+    private long mPrevious;          //absolute position of the last segment taken
+    private long mEnd;               //absolute end of the input once flushed, -1 until then
+    private double mNominal;         //absolute position the next segment should be taken from
+    private volatile float mRate = 1.0f;
+
+    //maxInputFrames is the largest block putInput() will be given
+    public TimeStretcher(int sampleRate, int channels, int maxInputFrames) {
+        mChannels = channels;
+        mSegment = Math.max(64, sampleRate / 50);
+        mSeek = mSegment / 2;
+        mStep = Math.max(1, sampleRate / CORRELATION_RATE);
+        mFadeIn = new float[mSegment];
+        mFadeOut = new float[mSegment];
+        for (int i = 0; i < mSegment; i++) {
+            mFadeIn[i] = (float) (0.5 - 0.5 * Math.cos(Math.PI * (i + 0.5) / mSegment));
+            mFadeOut[i] = 1.0f - mFadeIn[i];
+        }
+        //enough for the span one segment needs at the max rate, plus one input block
+        mInCapacity = (int) ((3 + MAX_RATE) * mSegment) + 2 * mSeek + maxInputFrames;
+        mIn = new float[mInCapacity * channels];
+        mOut = new short[mSegment * channels];
+        reset();
+    }
+
+    //the rate is clamped to [MIN_RATE, MAX_RATE]. can be called from any thread
+    public void setRate(float rate) {
+        mRate = Math.max(MIN_RATE, Math.min(MAX_RATE, rate));
+    }
+
+    public float getRate() {
+        return mRate;
+    }
+
+    //drop everything buffered, e.g. after a seek
+    public void reset() {
+        mInStart = 0;
+        mInFrames = 0;
+        mOutRead = 0;
+        mOutFrames = 0;
+        mPrevious = -mSegment;
+        mNominal = 0;
+        mEnd = -1;
+    }
+
+    //no more input will come: the segments that need input past its end are taken with silence
+    //after it, so that getOutput() gives the whole stream. putInput() only works again after
+    //a reset()
+    public void flush() {
+        if (mEnd < 0) {
+            mEnd = mInStart + mInFrames;
+        }
+    }
+
+    public boolean isFlushed() {
+        return mEnd >= 0;
+    }
+
+    //input frame (counted from the last reset) the next output frame comes from. roughly: a
+    //segment can be taken up to mSeek frames away from where the rate puts it
+    public long getOutputPosition() {
+        if (mOutRead < mOutFrames) {
+            return mPrevious + mOutRead;
+        }
+        return Math.round(mNominal);
+    }
+
+    //number of frames putInput() can take right now
+    public int getInputSpace() {
+        return mInCapacity - mInFrames;
+    }
+
+    //append numFrames interleaved frames. numFrames must not be more than getInputSpace()
+    public void putInput(short[] src, int numFrames) {
+        if (mEnd >= 0) {
+            throw new IllegalStateException("flushed, reset() first");
+        }
+        if (numFrames > getInputSpace()) {
+            throw new IllegalArgumentException("no room for " + numFrames + " frames");
+        }
+        int offset = mInFrames * mChannels;
+        int count = numFrames * mChannels;
+        for (int i = 0; i < count; i++) {
+            mIn[offset + i] = src[i];
+        }
+        mInFrames += numFrames;
+    }
+
+    //write up to maxFrames stretched frames into dst, return the number of frames written
+    //returns less than maxFrames when more input is needed
+    public int getOutput(short[] dst, int maxFrames) {
+        int written = 0;
+        while (written < maxFrames) {
+            if (mOutRead == mOutFrames && !nextSegment()) {
+                break;
+            }
+            int count = Math.min(maxFrames - written, mOutFrames - mOutRead);
+            System.arraycopy(mOut, mOutRead * mChannels, dst, written * mChannels,
+                    count * mChannels);
+            mOutRead += count;
+            written += count;
+        }
+        return written;
+    }
+
+    //produce the next segment into mOut, return false if there is not enough input for it
+    private boolean nextSegment() {
+        long target = Math.round(mNominal);
+        long continuation = mPrevious + mSegment;
+        long searchStart = Math.max(mInStart, target - mSeek);
+        long searchEnd = target + mSeek;
+        long inEnd = mInStart + mInFrames;
+        long needed = Math.max(continuation, searchEnd) + mSegment;
+        if (needed > inEnd) {
+            discardInput(Math.min(continuation, searchStart));
+            if (mEnd < 0 || target >= mEnd) {
+                return false;
+            }
+            //flushed: the input goes on with silence
+            int offset = mInFrames * mChannels;
+            int count = (int) (needed - inEnd) * mChannels;
+            for (int i = 0; i < count; i++) {
+                mIn[offset + i] = 0;
+            }
+            mInFrames += (int) (needed - inEnd);
+        }
+
+        //find the segment that best continues the previous one: a coarse search every mStep
+        //frames, then a fine one around the best match
+        int ref = (int) (continuation - mInStart) * mChannels;
+        long best = findBest(ref, searchStart, searchEnd, mStep);
+        if (mStep > 1) {
+            best = findBest(ref, Math.max(searchStart, best - mStep + 1),
+                    Math.min(searchEnd, best + mStep - 1), 1);
+        }
+
+        //cross-fade from the end of the previous segment into the new one
+        int pos = (int) (best - mInStart) * mChannels;
+        int o = 0;
+        for (int i = 0; i < mSegment; i++) {
+            for (int c = 0; c < mChannels; c++) {
+                float value = mIn[ref + o] * mFadeOut[i] + mIn[pos + o] * mFadeIn[i];
+                if (value > Short.MAX_VALUE) {
+                    value = Short.MAX_VALUE;
+                } else if (value < Short.MIN_VALUE) {
+                    value = Short.MIN_VALUE;
+                }
+                mOut[o] = (short) value;
+                o++;
+            }
+        }
+        mOutRead = 0;
+        mOutFrames = mSegment;
+        mPrevious = best;
+        mNominal += mSegment * mRate;
+        discardInput(Math.min(mPrevious + mSegment, Math.round(mNominal) - mSeek));
+        return true;
+    }
+
+    //return the position in [from, to] whose segment correlates best with the one at ref. the
+    //correlation is divided by the energy of the candidate, or a loud segment would win over one
+    //with the same shape
+    private long findBest(int ref, long from, long to, int step) {
+        long best = from;
+        float bestScore = Float.NEGATIVE_INFINITY;
+        int stride = 2 * mStep * mChannels;
+        int length = mSegment * mChannels;
+        for (long k = from; k <= to; k += step) {
+            int pos = (int) (k - mInStart) * mChannels;
+            float correlation = 0;
+            float energy = 0;
+            for (int i = 0; i < length; i += stride) {
+                for (int c = 0; c < mChannels; c++) {
+                    float value = mIn[pos + i + c];
+                    correlation += mIn[ref + i + c] * value;
+                    energy += value * value;
+                }
+            }
+            //1 keeps silence from dividing by 0, it is tiny next to 16 bit samples
+            float score = correlation / (float) Math.sqrt(energy + 1);
+            if (score > bestScore) {
+                bestScore = score;
+                best = k;
+            }
+        }
+        return best;
+    }
+
+    //forget the input before the absolute position start
+    private void discardInput(long start) {
+        int drop = (int) Math.min(start - mInStart, mInFrames);
+        if (drop <= 0) {
+            return;
+        }
+        System.arraycopy(mIn, drop * mChannels, mIn, 0, (mInFrames - drop) * mChannels);
+        mInStart += drop;
+        mInFrames -= drop;
+    }
+}
@@ -4,19 +4,18 @@ Owen Brown - 4838488
 Chang Ding - 5275821
  */
 import android.content.Intent;
-import android.media.MediaPlayer;
+import android.database.sqlite.SQLiteDatabase;
 import android.os.Bundle;
-import android.os.Environment;
 import android.support.v7.app.AppCompatActivity;
 import android.util.Log;
 import android.view.View;
 import android.widget.Button;
+import android.widget.CheckBox;
 import android.widget.EditText;
 import android.widget.SeekBar;
 import android.widget.TextView;
 import android.widget.Toast;
 import java.io.File;
-import java.io.IOException;
 
 public class TrimAudio extends AppCompatActivity {
     private int record_id;      //for intent
@@ -29,6 +28,7 @@ public class TrimAudio extends AppCompatActivity {
     private EditText trim_end_text;
     private Button trim_trimButton;
     private Button trim_cancelButton;
+    private CheckBox trim_noise_check;
     private String filePath;
     private SoundFile mSoundFile;
     private File mFile;
@@ -36,8 +36,19 @@ public class TrimAudio extends AppCompatActivity {
     private int mSamplesPerFrame;   //for frame
     private SeekBar seekStart;
     private SeekBar seekEnd;
-    private MediaPlayer rMediaPlayer;  //for seekBar
-    private int mediaDuration;
+    private int startFrame = 0;     //first frame kept
+    private int endFrame = 0;       //frame after the last one kept
+    private TextView trim_silence_text;
+    private Button trim_silence_button;
+    private SilenceDetector.Result mSilence;
+    private SpectrogramView trim_spectrogram;
+    private SpectrogramCache mSpectrogramCache;
+    private Button trim_remove_button;
+    //what is left after the parts removed so far, in samples. the trim keeps it from start to end
+    private EditList mKept;
+    //the edits of the recording, the trim only changes them, the file is left alone
+    private EditDecisionList mEdits;
+    private MyDatabaseHelper dbHelper;
 
 
     @Override
@@ -52,7 +63,7 @@ public class TrimAudio extends AppCompatActivity {
         record_filename = intent.getStringExtra("record_filename");
         record_note = intent.getStringExtra("record_note");
         //set file path
-        filePath = Environment.getExternalStorageDirectory().getAbsolutePath() + "/VoiceMemos/" + record_filename + ".3gp";
+        filePath = RecordingFiles.getPath(record_filename);
         //set filename
         trim_filename = (TextView) findViewById(R.id.trim_filename);
         trim_filename.setText(record_filename);
@@ -66,10 +77,11 @@ public class TrimAudio extends AppCompatActivity {
         trim_end_text.setEnabled(false);
         trim_trimButton = (Button) findViewById(R.id.trim_trimButton);
         trim_cancelButton = (Button) findViewById(R.id.trim_Cancel);
+        trim_noise_check = (CheckBox) findViewById(R.id.trim_noise_check);
         //load the file as SoundFile
         mFile = new File(filePath);
         try {
-            mSoundFile = SoundFile.create(mFile.getAbsolutePath());
+            mSoundFile = SoundFileCache.get().acquire(mFile.getAbsolutePath());
         } catch (final Exception e) {
             Log.d("test1", "exception when reading file");
         }
@@ -77,31 +89,41 @@ public class TrimAudio extends AppCompatActivity {
         mSampleRate = mSoundFile.getSampleRate();
         //get samples per frame
         mSamplesPerFrame = mSoundFile.getSamplesPerFrame();
+        //show the spectrogram, its tiles are computed as they are needed
+        trim_spectrogram = (SpectrogramView) findViewById(R.id.trim_spectrogram);
+        if (mSoundFile != null) {
+            mSpectrogramCache = new SpectrogramCache(this, filePath, mSoundFile, trim_spectrogram);
+            trim_spectrogram.setCache(mSpectrogramCache);
+        }
         //set trim on click listener
         iniTrim();
         //set cancel on click listener
         iniCancel();
         //initialize seekbar
         iniSeekBars();
+        //look for silence to suggest cutting
+        iniSilence();
+        //set remove on click listener
+        iniRemove();
     }
 
 
-    //initialize seekbars
+    //initialize seekbars, one step per frame so that a cut can go anywhere the file can be cut
     private void iniSeekBars() {
         seekStart = (SeekBar) findViewById(R.id.trim_seekStart);
         seekEnd = (SeekBar) findViewById(R.id.trim_seekEnd);
-        prepareMedia();
-        //the length of the audio in seconds
-        mediaDuration = rMediaPlayer.getDuration() / 1000;
-        seekEnd.setMax(mediaDuration);
-        seekStart.setMax(0);
+        //the length of the audio in frames
+        endFrame = mSoundFile.getNumFrames();
+        seekEnd.setMax(endFrame);
+        seekEnd.setProgress(endFrame);
+        seekStart.setMax(endFrame);
+        updateTrimTexts();
         //start time seekbar
         seekStart.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
-            int _progress = 0;
-
             @Override
             public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
-                _progress = progress;
+                startFrame = progress;
+                updateTrimTexts();
             }
 
             @Override
@@ -111,17 +133,19 @@ public class TrimAudio extends AppCompatActivity {
 
             @Override
             public void onStopTrackingTouch(SeekBar seekBar) {
-                trim_start_text.setText(secondsToString(_progress));
+                updateSelection();
             }
         });
 
         //Ends time seekbar
         seekEnd.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
-            int _progress = 0;
-
             @Override
             public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
-                _progress = progress;
+                endFrame = progress;
+                //the start can't go past the end
+                seekStart.setMax(progress);
+                startFrame = seekStart.getProgress();
+                updateTrimTexts();
             }
 
             @Override
@@ -130,34 +154,124 @@ public class TrimAudio extends AppCompatActivity {
 
             @Override
             public void onStopTrackingTouch(SeekBar seekBar) {
-                seekStart.setMax(_progress);
-                if (_progress < stringToSeconds(trim_start_text.getText().toString())) {
-                    trim_start_text.setText(secondsToString(_progress));
+                updateSelection();
+            }
+        });
+    }
+
+    private void updateTrimTexts() {
+        trim_start_text.setText(secondsToString(framesToSeconds(startFrame)));
+        trim_end_text.setText(secondsToString(framesToSeconds(endFrame)));
+    }
+
+    //shade what the trim cuts off in the spectrogram
+    private void updateSelection() {
+        trim_spectrogram.setSelection(getEdits());
+    }
+
+    //what the trim keeps: the parts not removed, between start and end
+    private EditList getEdits() {
+        return new EditList(mKept)
+                .remove(0, (long) startFrame * mSamplesPerFrame)
+                .remove((long) endFrame * mSamplesPerFrame, Long.MAX_VALUE);
+    }
+
+    //initialize remove button, it takes the part between start and end out, and the seekbars go
+    //back to the whole recording so that the next part to remove can be picked. the parts are all
+    //cut in one go by the trim. the parts cut by earlier trims stay cut
+    private void iniRemove() {
+        dbHelper = VoiceMemosApplication.getDatabaseHelper(this);
+        mEdits = EditStore.read(dbHelper.getReadableDatabase(), record_id);
+        mKept = mEdits.getKept();
+        if (mKept == null) {
+            mKept = new EditList().keep(0, mSoundFile.getNumSamples());
+        }
+        trim_noise_check.setChecked(mEdits.getNoiseReduction() > 0);
+        updateSelection();
+        trim_remove_button = (Button) findViewById(R.id.trim_remove_button);
+        trim_remove_button.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                if (endFrame <= startFrame) {
+                    return;
                 }
-                trim_end_text.setText(secondsToString(_progress));
+                mKept.remove((long) startFrame * mSamplesPerFrame,
+                        (long) endFrame * mSamplesPerFrame);
+                Toast.makeText(TrimAudio.this, "Removed " + secondsToString(framesToSeconds(
+                        startFrame)) + " - " + secondsToString(framesToSeconds(endFrame)),
+                        Toast.LENGTH_SHORT).show();
+                seekEnd.setProgress(seekEnd.getMax());
+                seekStart.setProgress(0);
+                updateSelection();
             }
         });
     }
 
+    //find the silence at the start and end in the background, and offer to cut it
+    private void iniSilence() {
+        trim_silence_text = (TextView) findViewById(R.id.trim_silence_text);
+        trim_silence_button = (Button) findViewById(R.id.trim_silence_button);
+        trim_silence_button.setEnabled(false);
+        trim_silence_button.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                //setting the end first, so that the start is not clamped by the old end
+                seekEnd.setProgress(mSilence.getSoundEnd());
+                seekStart.setProgress(mSilence.getSoundStart());
+                updateSelection();
+            }
+        });
+        final SoundFile soundFile = mSoundFile;
+        VoiceMemosApplication.Job<SilenceDetector.Result> detect =
+                new VoiceMemosApplication.Job<SilenceDetector.Result>() {
+            @Override
+            public SilenceDetector.Result run() {
+                return SilenceDetector.detect(soundFile.getSamples(), soundFile.getNumSamples(),
+                        soundFile.getChannels(), mSampleRate, mSamplesPerFrame);
+            }
+
+            @Override
+            public void done(SilenceDetector.Result result) {
+                showSilence(result);
+            }
+        };
+        VoiceMemosApplication.runInBackground(detect);
+    }
+
+    private void showSilence(SilenceDetector.Result result) {
+        if (isFinishing()) {
+            return;
+        }
+        mSilence = result;
+        double leading = framesToSeconds(result.getSoundStart());
+        double trailing = framesToSeconds(result.getNumFrames() - result.getSoundEnd());
+        if (leading <= 0 && trailing <= 0) {
+            trim_silence_text.setText("No silence at the start or end");
+        } else {
+            trim_silence_text.setText(String.format("Silence: %.1fs at start, %.1fs at end",
+                    leading, trailing));
+            trim_silence_button.setEnabled(true);
+        }
+        if (result.getNumPauses() > 0) {
+            trim_silence_text.append(String.format("\n%d pauses over 1s", result.getNumPauses()));
+        }
+    }
+
     //initialize trim button
     private void iniTrim() {
         trim_trimButton.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                //trim and save
-                //get trim time
-                double startTime = stringToSeconds(trim_start_text.getText().toString());
-                double endTime = stringToSeconds(trim_end_text.getText().toString());
-                //convert to frame
-                final int startFrame = secondsToFrames(startTime);
-                final int endFrame = secondsToFrames(endTime);
-                File outFile = new File(filePath);
-                try {
-                    // Write the new file
-                    mSoundFile.WriteFile(outFile, startFrame, endFrame - startFrame);
-                } catch (Exception e) {
-                    Log.d("test1", "exception when create new file");
-                }
+                //save the cuts as edits, playback skips them right away and the file is only
+                //rendered when the edits are exported
+                EditList edits = getEdits();
+                boolean whole = edits.getNumRanges() == 1 && edits.getStart(0) == 0
+                        && edits.getEnd(0) >= mSoundFile.getNumSamples();
+                mEdits.setKept(whole ? null : edits);
+                //turn the background noise down by 12dB on export
+                mEdits.setNoiseReduction(trim_noise_check.isChecked() ? 12 : 0);
+                SQLiteDatabase db = dbHelper.getWritableDatabase();
+                EditStore.write(db, record_id, mEdits);
                 Toast.makeText(TrimAudio.this, "Trimmed", Toast.LENGTH_SHORT).show();
                 finish();
             }
@@ -165,6 +279,21 @@ public class TrimAudio extends AppCompatActivity {
     }
 
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        //stop computing tiles before the decoded audio goes back to the cache
+        if (mSpectrogramCache != null) {
+            mSpectrogramCache.release();
+            mSpectrogramCache = null;
+        }
+        //let the cache evict the decoded audio if it needs to
+        if (mSoundFile != null) {
+            SoundFileCache.get().release(mSoundFile);
+            mSoundFile = null;
+        }
+    }
+
     //initialize cancel button
     private void iniCancel() {
         trim_cancelButton.setOnClickListener(new View.OnClickListener() {
@@ -175,42 +304,18 @@ public class TrimAudio extends AppCompatActivity {
         });
     }
 
-    private int secondsToFrames(double seconds) {
-        return (int) (1.0 * seconds * mSampleRate / mSamplesPerFrame + 0.5);
-    }
-
-
-    //convert string to seconds
-    //00:05 -->5.0
-    private double stringToSeconds(String s) {
-        double savedMin = Double.parseDouble(s.substring(0, 2));
-        double savedSec = Double.parseDouble(s.substring(3, 5));
-        savedMin = savedMin * 60;
-        return savedMin + savedSec;
+    private double framesToSeconds(int frames) {
+        return (double) frames * mSamplesPerFrame / mSampleRate;
     }
 
-    //convert second to String
+    //convert second to String, to the tenth of a second
+    //5.25 -->00:05.2
     private String secondsToString(double d) {
         String timeInString = null;
-        int savedSec = (int) Math.floor(d % 60);
-        int savedMin = (int) Math.floor((d - savedSec) / 60);
-        timeInString = String.format("%02d:%02d", savedMin, savedSec);
+        int tenths = (int) Math.floor(d * 10);
+        int savedSec = (tenths / 10) % 60;
+        int savedMin = tenths / 600;
+        timeInString = String.format("%02d:%02d.%d", savedMin, savedSec, tenths % 10);
         return timeInString;
     }
-
-    //prepare audio
-    private void prepareMedia() {
-        rMediaPlayer = new MediaPlayer();
-        rMediaPlayer.reset();
-        try {
-            rMediaPlayer.setDataSource(filePath);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        try {
-            rMediaPlayer.prepare();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-    }
 }
@@ -0,0 +1,129 @@
+package com.example.owen.voicememos;
+/*
+Owen Brown - 4838488
+Chang Ding - 5275821
+ */
+import android.app.Application;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * app wide state
+ * one database helper for the whole app: two helpers are two connections, and a write on one
+ * fails with "database is locked" while the other one writes. it is never closed.
+ * one pool for the background jobs (loads for the screens, library scans), at background
+ * priority, with the result of a Job handed back on the main thread.
+ * releases the caches that outlive a single activity when the system runs low on memory
+ */
+public class VoiceMemosApplication extends Application {
+    private static final String TAG = "VoiceMemosApplication";
+    //the library scans can hold three of them for minutes, the loads still get one
+    private static final int BACKGROUND_THREADS = 4;
+
+    private static MyDatabaseHelper sDbHelper;
+    private static ThreadPoolExecutor sBackground;
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+    //names of the jobs started with runOnce() that are still running
+    private static final Set<String> sRunning = new HashSet<String>();
+
+    //run() is called on a background thread, done() with its result on the main thread
+    public interface Job<T> {
+        T run();
+        void done(T result);
+    }
+
+    public static synchronized MyDatabaseHelper getDatabaseHelper(Context context) {
+        if (sDbHelper == null) {
+            sDbHelper = new MyDatabaseHelper(context.getApplicationContext(),
+                    MyDatabaseHelper.DB_NAME, null, MyDatabaseHelper.DB_VERSION);
+        }
+        return sDbHelper;
+    }
+
+    public static void runInBackground(Runnable job) {
+        getBackground().execute(job);
+    }
+
+    public static <T> void runInBackground(final Job<T> job) {
+        runInBackground(new Runnable() {
+            @Override
+            public void run() {
+                final T result = job.run();
+                sMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        job.done(result);
+                    }
+                });
+            }
+        });
+    }
+
+    //run job in the background unless the one with the same name is still running, e.g. a
+    //library scan. returns false if it was running
+    public static boolean runOnce(final String name, final Runnable job) {
+        synchronized (sRunning) {
+            if (!sRunning.add(name)) {
+                return false;
+            }
+        }
+        runInBackground(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    job.run();
+                } finally {
+                    synchronized (sRunning) {
+                        sRunning.remove(name);
+                    }
+                }
+            }
+        });
+        return true;
+    }
+
+    private static synchronized ThreadPoolExecutor getBackground() {
+        if (sBackground == null) {
+            sBackground = new ThreadPoolExecutor(BACKGROUND_THREADS, BACKGROUND_THREADS,
+                    30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable r) {
+                    return new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            r.run();
+                        }
+                    }, TAG);
+                }
+            });
+            //no threads kept while the app is idle
+            sBackground.allowCoreThreadTimeOut(true);
+        }
+        return sBackground;
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        CodecPool.get().trimMemory(level);
+        SoundFileCache.get().trimMemory(level);
+    }
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        CodecPool.get().trimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+        SoundFileCache.get().trimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+    }
+}
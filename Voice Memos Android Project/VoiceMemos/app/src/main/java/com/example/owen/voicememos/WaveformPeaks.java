@@ -0,0 +1,137 @@
+package com.example.owen.voicememos;
+/*
+Owen Brown - 4838488
+Chang Ding - 5275821
+ */
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * the outline of a recording for the thumbnails of the list: the peak level of each of
+ * NUM_PEAKS equal parts of it, 0 to 255
+ * computed once by streaming the recording through a StreamDecoder (never all of it in memory),
+ * then saved in the app files with the size and time of the recording, like the SeekIndex
+ */
+public class WaveformPeaks {
+    private static final String TAG = "WaveformPeaks";
+    private static final int VERSION = 1;
+    public static final int NUM_PEAKS = 128;
+    private static final int BLOCK_FRAMES = 4096;
+
+    private WaveformPeaks() {
+    }
+
+    //get the peaks of a recording, from the saved copy if it is still up to date. blocks, and
+    //stops with an InterruptedException if the thread is interrupted
+    public static byte[] get(Context context, String path)
+            throws IOException, InterruptedException {
+        File file = new File(path);
+        File peaksFile = getPeaksFile(context, file);
+        byte[] peaks = load(peaksFile, file);
+        if (peaks == null) {
+            peaks = compute(context, path);
+            try {
+                save(peaks, peaksFile, file);
+            } catch (IOException e) {
+                Log.w(TAG, "could not save " + peaksFile, e);
+            }
+        }
+        return peaks;
+    }
+
+    private static byte[] compute(Context context, String path)
+            throws IOException, InterruptedException {
+        StreamDecoder decoder = new StreamDecoder(SeekIndex.get(context, path), path);
+        try {
+            int channels = decoder.getChannels();
+            long perPeak = Math.max(1, decoder.getDurationFrames() / NUM_PEAKS);
+            int[] max = new int[NUM_PEAKS];
+            short[] block = new short[BLOCK_FRAMES * channels];
+            long position = 0;
+            while (true) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                int frames = decoder.read(block, BLOCK_FRAMES);
+                if (frames == 0) {
+                    if (decoder.isFinished()) {
+                        break;
+                    }
+                    decoder.waitForData(10);
+                    continue;
+                }
+                for (int f = 0; f < frames; f++) {
+                    int peak = (int) Math.min(NUM_PEAKS - 1, (position + f) / perPeak);
+                    for (int c = 0; c < channels; c++) {
+                        max[peak] = Math.max(max[peak], Math.abs(block[f * channels + c]));
+                    }
+                }
+                position += frames;
+            }
+            byte[] peaks = new byte[NUM_PEAKS];
+            for (int i = 0; i < NUM_PEAKS; i++) {
+                peaks[i] = (byte) Math.min(255, max[i] * 255 / 32767);
+            }
+            return peaks;
+        } finally {
+            decoder.release();
+        }
+    }
+
+    //return null if there are no saved peaks, or if the recording changed since they were saved
+    private static byte[] load(File peaksFile, File file) {
+        if (!peaksFile.exists()) {
+            return null;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(peaksFile)));
+            if (in.readInt() != VERSION || in.readLong() != file.length()
+                    || in.readLong() != file.lastModified()) {
+                return null;
+            }
+            byte[] peaks = new byte[in.readInt()];
+            in.readFully(peaks);
+            return peaks;
+        } catch (IOException e) {
+            Log.w(TAG, "could not read " + peaksFile, e);
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    //nothing to do
+                }
+            }
+        }
+    }
+
+    private static void save(byte[] peaks, File peaksFile, File file) throws IOException {
+        peaksFile.getParentFile().mkdirs();
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(peaksFile)));
+        try {
+            out.writeInt(VERSION);
+            out.writeLong(file.length());
+            out.writeLong(file.lastModified());
+            out.writeInt(peaks.length);
+            out.write(peaks);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static File getPeaksFile(Context context, File file) {
+        return new File(new File(context.getFilesDir(), "peaks"), file.getName() + ".pk");
+    }
+}
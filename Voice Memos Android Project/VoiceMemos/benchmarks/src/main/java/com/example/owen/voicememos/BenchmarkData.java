@@ -0,0 +1,58 @@
+package com.example.owen.voicememos;
+/*
+Owen Brown - 4838488
+Chang Ding - 5275821
+ */
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+/**
+ * synthetic PCM for the benchmarks
+ * a voice-like signal: a few harmonics that come and go, plus some background noise
+ */
+final class BenchmarkData {
+
+    private BenchmarkData() {
+    }
+
+    // Number of 1024-sample AAC frames needed to hold numSamples samples per channel.
+    static int numFrames(int numSamples) {
+        return (numSamples + 1023) / 1024;
+    }
+
+    // Return seconds of 16 bit little endian interleaved PCM, the same layout SoundFile decodes to.
+    static ByteBuffer pcm(int seconds, int channels, int sampleRate) {
+        int numSamples = seconds * sampleRate;
+        ByteBuffer bytes = ByteBuffer.allocate(numSamples * channels * 2);
+        bytes.order(ByteOrder.LITTLE_ENDIAN);
+        Random random = new Random(42);
+        for (int i = 0; i < numSamples; i++) {
+            double t = (double) i / sampleRate;
+            // words of ~300ms separated by pauses.
+            double envelope = Math.max(0, Math.sin(2 * Math.PI * 1.5 * t));
+            double voice = Math.sin(2 * Math.PI * 180 * t)
+                    + 0.5 * Math.sin(2 * Math.PI * 360 * t)
+                    + 0.25 * Math.sin(2 * Math.PI * 720 * t);
+            double noise = random.nextGaussian() * 0.01;
+            short value = (short) (8000 * (envelope * voice + noise));
+            for (int c = 0; c < channels; c++) {
+                bytes.putShort(value);
+            }
+        }
+        bytes.rewind();
+        return bytes;
+    }
+
+    // Return plausible AAC frame sizes for a stream of the given length, as WriteFile collects them.
+    static int[] aacFrameSizes(int seconds, int channels, int sampleRate, int bitrate) {
+        int[] frameSizes = new int[1 + numFrames(seconds * sampleRate) + 2];
+        Random random = new Random(42);
+        int average = bitrate / 8 * 1024 / sampleRate;
+        frameSizes[0] = 2;  // first AAC frame only holds the stream configuration.
+        for (int i = 1; i < frameSizes.length; i++) {
+            frameSizes[i] = average / 2 + random.nextInt(average + 1);
+        }
+        return frameSizes;
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.owen.voicememos;
+/*
+Owen Brown - 4838488
+Chang Ding - 5275821
+ */
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * the decoded-bytes buffer growth in SoundFile.ReadFile
+ * replays the decoder output of a whole AMR-NB recording (12.2 kbps) into a buffer that starts at
+ * 1MB and is grown with the same estimate ReadFile uses
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g"})
+public class BufferGrowthBenchmark {
+    @Param({"10", "60", "600"})
+    public int seconds;
+
+    @Param({"1", "2"})
+    public int channels;
+
+    @Param({"8000", "44100"})
+    public int sampleRate;
+
+    private byte[] decoderOutput;
+    private int fileSize;
+    private int numOutputs;
+
+    @Setup
+    public void setUp() {
+        // one decoder output buffer holds one 1024-sample frame.
+        decoderOutput = new byte[1024 * channels * 2];
+        numOutputs = BenchmarkData.numFrames(seconds * sampleRate);
+        fileSize = seconds * 12200 / 8;
+    }
+
+    @Benchmark
+    public ByteBuffer decodeInto() {
+        ByteBuffer decodedBytes = ByteBuffer.allocate(1 << 20);
+        for (int i = 0; i < numOutputs; i++) {
+            if (decodedBytes.remaining() < decoderOutput.length) {
+                int position = decodedBytes.position();
+                int totSizeRead = (int) ((long) fileSize * i / numOutputs) + 1;
+                int newSize = PcmUtils.estimateDecodedSize(
+                        position, fileSize, totSizeRead, decoderOutput.length);
+                decodedBytes = PcmUtils.growBuffer(decodedBytes, newSize);
+            }
+            decodedBytes.put(decoderOutput);
+        }
+        return decodedBytes;
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.owen.voicememos;
+/*
+Owen Brown - 4838488
+Chang Ding - 5275821
+ */
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * reading the kept parts of a recording in 1024-frame blocks, like WriteFile does, with the
+ * fades at the edges of each part. "ranges" parts are kept out of 60 seconds of audio, the
+ * tangents between them (a second each) removed
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class EditListBenchmark {
+    @Param({"1", "2"})
+    public int channels;
+
+    @Param({"8000", "44100"})
+    public int sampleRate;
+
+    @Param({"1", "4", "32"})
+    public int ranges;
+
+    private ShortBuffer samples;
+    private EditList edits;
+    private float[] block;
+
+    @Setup
+    public void setUp() {
+        samples = BenchmarkData.pcm(60, channels, sampleRate)
+                .order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+        long numFrames = samples.remaining() / channels;
+        edits = new EditList().keep(0, numFrames);
+        for (int i = 1; i < ranges; i++) {
+            long start = numFrames * i / ranges;
+            edits.remove(start - sampleRate / 2, start + sampleRate / 2);
+        }
+        block = new float[1024 * channels];
+    }
+
+    @Benchmark
+    public float[] read() {
+        EditList.Reader reader = new EditList.Reader(edits, samples, 0, channels,
+                sampleRate / 200);
+        while (!reader.isFinished()) {
+            reader.read(block, 1024);
+        }
+        return block;
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.owen.voicememos;
+/*
+Owen Brown - 4838488
+Chang Ding - 5275821
+ */
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * the per-frame gain pass SoundFile.ReadFile runs over every decoded file
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FrameGainsBenchmark {
+    @Param({"10", "60", "600"})
+    public int seconds;
+
+    @Param({"1", "2"})
+    public int channels;
+
+    @Param({"8000", "44100"})
+    public int sampleRate;
+
+    private ShortBuffer samples;
+    private int[] frameGains;
+
+    @Setup
+    public void setUp() {
+        samples = BenchmarkData.pcm(seconds, channels, sampleRate)
+                .order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+        frameGains = new int[BenchmarkData.numFrames(seconds * sampleRate)];
+    }
+
+    @Benchmark
+    public int[] computeFrameGains() {
+        samples.rewind();
+        PcmUtils.computeFrameGains(samples, channels, 1024, frameGains);
+        return frameGains;
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.owen.voicememos;
+/*
+Owen Brown - 4838488
+Chang Ding - 5275821
+ */
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * the loudness pass the library scan runs over every recording
+ * each invocation analyses 60 seconds of audio
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LoudnessBenchmark {
+    @Param({"1", "2"})
+    public int channels;
+
+    @Param({"8000", "44100"})
+    public int sampleRate;
+
+    private ShortBuffer samples;
+
+    @Setup
+    public void setUp() {
+        samples = BenchmarkData.pcm(60, channels, sampleRate)
+                .order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+    }
+
+    @Benchmark
+    public LoudnessAnalyzer.Result analyse() {
+        samples.rewind();
+        LoudnessAnalyzer analyzer = new LoudnessAnalyzer(sampleRate, channels);
+        analyzer.process(samples, samples.remaining() / channels);
+        return analyzer.getResult();
+    }
+}
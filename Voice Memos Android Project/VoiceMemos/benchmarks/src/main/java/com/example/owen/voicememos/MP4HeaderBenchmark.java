@@ -0,0 +1,67 @@
+package com.example.owen.voicememos;
+/*
+Owen Brown - 4838488
+Chang Ding - 5275821
+ */
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * building the .m4a header at the end of every export
+ * the stsz atom grows with the number of AAC frames, so the cost follows the recording length
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MP4HeaderBenchmark {
+    @Param({"10", "60", "600", "3600"})
+    public int seconds;
+
+    @Param({"1", "2"})
+    public int channels;
+
+    @Param({"8000", "44100"})
+    public int sampleRate;
+
+    private int[] frameSizes;
+    private int bitrate;
+    private Atom stbl;
+
+    @Setup
+    public void setUp() {
+        bitrate = 64000 * channels;
+        frameSizes = BenchmarkData.aacFrameSizes(seconds, channels, sampleRate, bitrate);
+        // a sample table of the same shape as the one MP4Header builds.
+        stbl = new Atom("stbl");
+        Atom stsz = new Atom("stsz", (byte) 0, 0);
+        stsz.setData(new byte[8 + 4 * frameSizes.length]);
+        Atom stco = new Atom("stco", (byte) 0, 0);
+        stco.setData(new byte[8]);
+        stbl.addChild(stsz);
+        stbl.addChild(stco);
+    }
+
+    @Benchmark
+    public byte[] getMP4Header() {
+        return MP4Header.getMP4Header(sampleRate, channels, frameSizes, bitrate);
+    }
+
+    @Benchmark
+    public byte[] atomGetBytes() {
+        return stbl.getBytes();
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.owen.voicememos;
+/*
+Owen Brown - 4838488
+Chang Ding - 5275821
+ */
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * the noise reduction an export runs: the noise profile, on all the cores, then the gains as the
+ * kept frames are read in 1024-frame blocks, like WriteFile does
+ * each invocation denoises 60 seconds of audio
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class NoiseReducerBenchmark {
+    @Param({"1", "2"})
+    public int channels;
+
+    @Param({"8000", "44100"})
+    public int sampleRate;
+
+    private ShortBuffer samples;
+    private int numFrames;
+    private EditList edits;
+    private NoiseReducer reducer;
+    private float[] block;
+
+    @Setup
+    public void setUp() {
+        samples = BenchmarkData.pcm(60, channels, sampleRate)
+                .order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+        numFrames = samples.remaining() / channels;
+        edits = new EditList().keep(0, numFrames);
+        reducer = new NoiseReducer(sampleRate, channels, 12);
+        block = new float[1024 * channels];
+    }
+
+    @Benchmark
+    public float[][] profile() {
+        return reducer.noiseProfile(samples, numFrames);
+    }
+
+    @Benchmark
+    public float[] reduce() {
+        EditList.Reader reader = new EditList.Reader(edits, samples, 0, channels, 0);
+        reader.setProcessor(reducer.createProcessor(reducer.noiseProfile(samples, numFrames)),
+                reducer.getLatency());
+        while (!reader.isFinished()) {
+            reader.read(block, 1024);
+        }
+        return block;
+    }
+}
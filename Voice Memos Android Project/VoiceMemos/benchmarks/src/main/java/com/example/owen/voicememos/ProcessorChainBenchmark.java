@@ -0,0 +1,71 @@
+package com.example.owen.voicememos;
+/*
+Owen Brown - 4838488
+Chang Ding - 5275821
+ */
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * the effects WriteFile runs on every frame before encoding: high pass, gain, fades, limiter
+ * each invocation renders 60 seconds of audio in 1024-frame blocks, like WriteFile does
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ProcessorChainBenchmark {
+    @Param({"1", "2"})
+    public int channels;
+
+    @Param({"8000", "44100"})
+    public int sampleRate;
+
+    private ShortBuffer samples;
+    private List<AudioProcessor.Factory> factories;
+    private float[] block;
+    private short[] blockSamples;
+
+    @Setup
+    public void setUp() {
+        samples = BenchmarkData.pcm(60, channels, sampleRate)
+                .order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+        factories = new ArrayList<AudioProcessor.Factory>();
+        factories.add(HighPassProcessor.factory(80));
+        factories.add(GainProcessor.factory(6));
+        factories.add(FadeProcessor.factory(0.5f, 0.5f));
+        factories.add(LimiterProcessor.factory(-1, 0.1f));
+        block = new float[1024 * channels];
+        blockSamples = new short[1024 * channels];
+    }
+
+    @Benchmark
+    public short[] render() {
+        samples.rewind();
+        int numFrames = samples.remaining() / channels;
+        ProcessorChain chain = new ProcessorChain(factories, sampleRate, channels, numFrames);
+        for (long position = 0; position < numFrames; position += 1024) {
+            PcmUtils.readFloats(samples, blockSamples, block, block.length);
+            chain.process(block, 1024, position);
+            PcmUtils.toShorts(block, blockSamples, block.length);
+        }
+        return blockSamples;
+    }
+}
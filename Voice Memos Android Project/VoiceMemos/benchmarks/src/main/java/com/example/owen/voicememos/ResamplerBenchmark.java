@@ -0,0 +1,66 @@
+package com.example.owen.voicememos;
+/*
+Owen Brown - 4838488
+Chang Ding - 5275821
+ */
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * resampling an export down to the voice rate, in 1024-frame blocks like WriteFile does
+ * each invocation converts 60 seconds of audio
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ResamplerBenchmark {
+    @Param({"1", "2"})
+    public int channels;
+
+    @Param({"44100", "48000"})
+    public int sampleRate;
+
+    private ShortBuffer samples;
+    private float[] input;
+    private short[] scratch;
+    private float[] output;
+
+    @Setup
+    public void setUp() {
+        samples = BenchmarkData.pcm(60, channels, sampleRate)
+                .order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+        input = new float[1024 * channels];
+        scratch = new short[1024 * channels];
+        output = new float[1024 * channels];
+    }
+
+    @Benchmark
+    public float[] resample() {
+        samples.rewind();
+        Resampler resampler = new Resampler(sampleRate, 16000, channels);
+        while (samples.remaining() > 0) {
+            PcmUtils.readFloats(samples, scratch, input, input.length);
+            resampler.write(input, 1024);
+            while (resampler.read(output, 1024) > 0) {
+                // keep reading until it needs more input.
+            }
+        }
+        return output;
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.owen.voicememos;
+/*
+Owen Brown - 4838488
+Chang Ding - 5275821
+ */
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * computing one spectrogram tile, what the edit screens wait for when a tile is not cached
+ * zoom 0 is one window per column, zoom 6 averages 4 windows per column
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SpectrogramBenchmark {
+    @Param({"1", "2"})
+    public int channels;
+
+    @Param({"0", "6"})
+    public int zoom;
+
+    private Spectrogram spectrogram;
+
+    @Setup
+    public void setUp() {
+        ShortBuffer samples = BenchmarkData.pcm(60, channels, 8000)
+                .order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+        spectrogram = new Spectrogram(samples, samples.remaining() / channels, channels);
+    }
+
+    @Benchmark
+    public byte[] computeTile() {
+        return spectrogram.computeTile(zoom, 0);
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.owen.voicememos;
+/*
+Owen Brown - 4838488
+Chang Ding - 5275821
+ */
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * the WSOLA time-stretch StretchPlayer runs on every block it plays
+ * each invocation stretches 10 seconds of audio in 1024-frame blocks
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TimeStretchBenchmark {
+    @Param({"1", "2"})
+    public int channels;
+
+    @Param({"8000", "44100"})
+    public int sampleRate;
+
+    @Param({"0.5", "1.5", "3.0"})
+    public float rate;
+
+    private ShortBuffer samples;
+    private TimeStretcher stretcher;
+    private short[] input;
+    private short[] output;
+
+    @Setup
+    public void setUp() {
+        samples = BenchmarkData.pcm(10, channels, sampleRate)
+                .order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+        stretcher = new TimeStretcher(sampleRate, channels, 1024);
+        stretcher.setRate(rate);
+        input = new short[1024 * channels];
+        output = new short[1024 * channels];
+    }
+
+    @Benchmark
+    public int stretch() {
+        samples.rewind();
+        stretcher.reset();
+        int produced = 0;
+        while (samples.remaining() >= input.length) {
+            int frames = Math.min(1024, stretcher.getInputSpace());
+            samples.get(input, 0, frames * channels);
+            stretcher.putInput(input, frames);
+            int stretched;
+            while ((stretched = stretcher.getOutput(output, 1024)) > 0) {
+                produced += stretched;
+            }
+        }
+        return produced;
+    }
+}
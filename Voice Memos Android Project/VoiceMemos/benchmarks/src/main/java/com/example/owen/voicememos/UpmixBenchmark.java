@@ -0,0 +1,71 @@
+package com.example.owen.voicememos;
+/*
+Owen Brown - 4838488
+Chang Ding - 5275821
+ */
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * what WriteFile does with every frame it feeds to the encoder
+ * each invocation writes a whole mono recording, one 1024-sample frame at a time, into a direct
+ * buffer like the codec input buffers: either as is (mono export) or duplicated to stereo
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class UpmixBenchmark {
+    @Param({"10", "60", "600"})
+    public int seconds;
+
+    @Param({"8000", "44100"})
+    public int sampleRate;
+
+    private ShortBuffer mono;
+    private ByteBuffer input;
+
+    @Setup
+    public void setUp() {
+        mono = BenchmarkData.pcm(seconds, 1, sampleRate)
+                .order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+        input = ByteBuffer.allocateDirect(1024 * 2 * 2);
+    }
+
+    @Benchmark
+    public ByteBuffer copyMono() {
+        mono.rewind();
+        while (mono.hasRemaining()) {
+            input.clear();
+            PcmUtils.copySamples(mono, input.order(ByteOrder.LITTLE_ENDIAN).asShortBuffer(), 1024);
+        }
+        return input;
+    }
+
+    @Benchmark
+    public ByteBuffer upmixMonoToStereo() {
+        mono.rewind();
+        while (mono.hasRemaining()) {
+            input.clear();
+            PcmUtils.upmixMonoToStereo(
+                    mono, input.order(ByteOrder.LITTLE_ENDIAN).asShortBuffer(), 1024);
+        }
+        return input;
+    }
+}